@@ -0,0 +1,68 @@
+/* Name: Corpus
+ * Description: This class gives the benchmarks the game states of the
+ * corpus and what they need from them.
+ */
+
+package src.bench;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import src.logic.Bitboard;
+import src.model.Board;
+import src.model.Game;
+import src.tools.Positions;
+
+/**
+ * The {@code Corpus} class is the JMH state of the benchmarks: the games of
+ * {@link Positions}, their boards, the tiles of the pieces of the player to
+ * move, and their legal moves. It is built once per benchmark, out of the
+ * measurements, and not changed by them.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+
+	/** The states of the corpus. */
+	Game[] games;
+
+	/** The board of each state. */
+	Board[] boards;
+
+	/** The tiles of the pieces of the player to move, for each state. */
+	int[][] pieces;
+
+	/**
+	 * The legal moves of each state, as in {@link Bitboard#getMoves(int[])}.
+	 */
+	int[][] moves;
+
+	@Setup
+	public void setup() {
+		List<Game> all = Positions.all();
+		int count = all.size();
+		this.games = all.toArray(new Game[count]);
+		this.boards = new Board[count];
+		this.pieces = new int[count][];
+		this.moves = new int[count][];
+		int[] buffer = new int[Bitboard.MAX_MOVES];
+		for (int i = 0; i < count; i ++) {
+			Game game = games[i];
+			boards[i] = game.getBoard();
+			int mask = game.isP2Turn()
+					? boards[i].getMask(Board.BLACK_CHECKER)
+							| boards[i].getMask(Board.BLACK_KING)
+					: boards[i].getMask(Board.WHITE_CHECKER)
+							| boards[i].getMask(Board.WHITE_KING);
+			pieces[i] = new int[Integer.bitCount(mask)];
+			for (int k = 0; mask != 0; k ++, mask &= mask - 1) {
+				pieces[i][k] = Integer.numberOfTrailingZeros(mask);
+			}
+			int n = Bitboard.of(game).getMoves(buffer);
+			moves[i] = Arrays.copyOf(buffer, n);
+		}
+	}
+}
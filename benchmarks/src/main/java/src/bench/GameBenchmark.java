@@ -0,0 +1,73 @@
+/* Name: GameBenchmark
+ * Description: This class measures the copy, the moves and the evaluation
+ * of the game states.
+ */
+
+package src.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import src.logic.Bitboard;
+import src.model.Game;
+
+/**
+ * The {@code GameBenchmark} class measures {@link Game#copy()},
+ * {@link Game#move(int, int)} and {@link Game#goodHeuristic(boolean)}. An
+ * operation goes once through the whole {@link Corpus}. A move is made on a
+ * copy of the state, so {@link #move(Corpus, Blackhole)} also counts a copy
+ * per legal move: the cost of the moves alone is the difference with
+ * {@link #copyPerMove(Corpus, Blackhole)}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GameBenchmark {
+
+	@Benchmark
+	public void copy(Corpus corpus, Blackhole blackhole) {
+		for (Game game : corpus.games) {
+			blackhole.consume(game.copy());
+		}
+	}
+
+	@Benchmark
+	public void copyPerMove(Corpus corpus, Blackhole blackhole) {
+		for (int i = 0; i < corpus.games.length; i ++) {
+			for (int k = 0; k < corpus.moves[i].length; k ++) {
+				blackhole.consume(corpus.games[i].copy());
+			}
+		}
+	}
+
+	@Benchmark
+	public void move(Corpus corpus, Blackhole blackhole) {
+		for (int i = 0; i < corpus.games.length; i ++) {
+			for (int move : corpus.moves[i]) {
+				Game copy = corpus.games[i].copy();
+				blackhole.consume(copy.move(Bitboard.getStart(move),
+						Bitboard.getEnd(move)));
+				blackhole.consume(copy);
+			}
+		}
+	}
+
+	@Benchmark
+	public int goodHeuristic(Corpus corpus) {
+		int sum = 0;
+		for (Game game : corpus.games) {
+			sum += game.goodHeuristic(game.isP2Turn());
+		}
+		return sum;
+	}
+}
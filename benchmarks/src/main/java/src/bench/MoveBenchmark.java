@@ -0,0 +1,116 @@
+/* Name: MoveBenchmark
+ * Description: This class measures the move generation and validation of
+ * the legacy board code.
+ */
+
+package src.bench;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import src.logic.MoveGenerator;
+import src.logic.MoveLogic;
+import src.model.Board;
+import src.model.Game;
+
+/**
+ * The {@code MoveBenchmark} class measures {@link MoveGenerator},
+ * {@link MoveLogic#isValidMove(Game, int, int)} and
+ * {@link Board#find(int)}. An operation goes once through the whole
+ * {@link Corpus}: every piece of the player to move for the generators,
+ * every diagonal step and jump of these pieces, legal or not, for the
+ * validation, and every kind of piece for the search of the board.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MoveBenchmark {
+
+	/** The moves given to the validation, start then end, per state. */
+	private int[][] candidates;
+
+	@Setup
+	public void setup(Corpus corpus) {
+		this.candidates = new int[corpus.games.length][];
+		for (int i = 0; i < candidates.length; i ++) {
+			int[] list = new int[corpus.pieces[i].length * 16];
+			int n = 0;
+			for (int start : corpus.pieces[i]) {
+				Point p = Board.toPoint(start);
+				for (int delta = 1; delta <= 2; delta ++) {
+					for (int dx = -delta; dx <= delta; dx += 2 * delta) {
+						for (int dy = -delta; dy <= delta; dy += 2 * delta) {
+							int end = Board.toIndex(p.x + dx, p.y + dy);
+							if (end >= 0) {
+								list[n ++] = start;
+								list[n ++] = end;
+							}
+						}
+					}
+				}
+			}
+			candidates[i] = Arrays.copyOf(list, n);
+		}
+	}
+
+	@Benchmark
+	public void getMoves(Corpus corpus, Blackhole blackhole) {
+		for (int i = 0; i < corpus.boards.length; i ++) {
+			for (int index : corpus.pieces[i]) {
+				blackhole.consume(MoveGenerator.getMoves(corpus.boards[i],
+						index));
+			}
+		}
+	}
+
+	@Benchmark
+	public void getSkips(Corpus corpus, Blackhole blackhole) {
+		for (int i = 0; i < corpus.boards.length; i ++) {
+			for (int index : corpus.pieces[i]) {
+				blackhole.consume(MoveGenerator.getSkips(corpus.boards[i],
+						index));
+			}
+		}
+	}
+
+	@Benchmark
+	public int isValidMove(Corpus corpus) {
+		int valid = 0;
+		for (int i = 0; i < corpus.games.length; i ++) {
+			int[] list = candidates[i];
+			for (int k = 0; k < list.length; k += 2) {
+				if (MoveLogic.isValidMove(corpus.games[i], list[k],
+						list[k + 1])) {
+					valid ++;
+				}
+			}
+		}
+		return valid;
+	}
+
+	@Benchmark
+	public void find(Corpus corpus, Blackhole blackhole) {
+		for (Board board : corpus.boards) {
+			blackhole.consume(board.find(Board.BLACK_CHECKER));
+			blackhole.consume(board.find(Board.BLACK_KING));
+			blackhole.consume(board.find(Board.WHITE_CHECKER));
+			blackhole.consume(board.find(Board.WHITE_KING));
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/* Name: SearchBenchmark
+ * Description: This class measures the searches of the AI players to a
+ * fixed depth.
+ */
+
+package src.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import src.model.AlphaBetaPlayer;
+import src.model.Game;
+import src.model.MinMaxPlayer;
+import src.model.Move;
+
+/**
+ * The {@code SearchBenchmark} class measures the searches of
+ * {@link MinMaxPlayer} and {@link AlphaBetaPlayer} to a fixed depth, without
+ * any node budget, opening book, tablebase nor noise. An operation is one search of
+ * a state of the {@link Corpus}, every 8th of them in turn so that each
+ * phase of the game is measured. The tables of the players are cleared
+ * before each search, out of the measurement, so that a search never reuses
+ * the work of another.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark {
+
+	/** The states searched are every this many of the corpus. */
+	private static final int STRIDE = 8;
+
+	@Param("4")
+	private int minMaxDepth;
+
+	@Param("6")
+	private int alphaBetaDepth;
+
+	/** The players of each colour, white first. */
+	private FixedDepth[] minMax;
+	private AlphaBetaPlayer[] alphaBeta;
+
+	/** The next state to search, and the one being searched. */
+	private int next;
+	private Game game;
+
+	@Setup
+	public void setup() {
+		this.minMax = new FixedDepth[] {new FixedDepth(false),
+				new FixedDepth(true)};
+		this.alphaBeta = new AlphaBetaPlayer[] {new AlphaBetaPlayer(false),
+				new AlphaBetaPlayer(true)};
+		for (int i = 0; i < 2; i ++) {
+			prepare(minMax[i]);
+			minMax[i].setMaxDepth(minMaxDepth);
+			prepare(alphaBeta[i]);
+		}
+	}
+
+	private static void prepare(MinMaxPlayer player) {
+		player.setOpeningBook(null);
+		player.setTablebase(null);
+		player.setNodeBudget(0);
+		player.setEvalNoise(0);
+	}
+
+	@Setup(Level.Invocation)
+	public void nextState(Corpus corpus) {
+		this.game = corpus.games[next];
+		this.next = (next + STRIDE) % corpus.games.length;
+		for (int i = 0; i < 2; i ++) {
+			minMax[i].clearTables();
+			alphaBeta[i].clearTables();
+		}
+	}
+
+	@Benchmark
+	public Move minMax() {
+		return minMax[game.isP2Turn()? 1 : 0].search(game);
+	}
+
+	@Benchmark
+	public Move alphaBeta() {
+		return alphaBeta[game.isP2Turn()? 1 : 0].analyse(game,
+				alphaBetaDepth, 1).getBestMove();
+	}
+
+	/**
+	 * A MinMaxPlayer whose search can be called directly, to the depth it
+	 * is given.
+	 */
+	private static final class FixedDepth extends MinMaxPlayer {
+
+		FixedDepth(boolean player) {
+			super(player);
+		}
+
+		@Override
+		public Move search(Game game) {
+			return super.search(game);
+		}
+	}
+}
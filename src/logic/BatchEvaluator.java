@@ -0,0 +1,294 @@
+/* Name: BatchEvaluator
+ * Description: This class scores many game states at once from their
+ * bitboards, to order the moves of the search.
+ */
+
+package src.logic;
+
+import java.util.Arrays;
+
+import src.model.EvalParams;
+import src.model.Game;
+
+/**
+ * The {@code BatchEvaluator} class holds the bitboards of a number of game
+ * states in structure-of-arrays form, one array per kind of piece, and scores
+ * them all in one call with the terms of
+ * {@link Game#goodHeuristic(boolean, EvalParams)}, giving the same scores:
+ * <ul>
+ * <li>the material, {@link EvalParams#piece_val} per checker and
+ * {@link EvalParams#king_val} per king, scaled by the ratio of the
+ * materials;</li>
+ * <li>the advance of the checkers, {@link EvalParams#piece_row_advance} per
+ * row, and their squares: the middle, the goalies and the double corner;</li>
+ * <li>the checkers no piece of the opponent stands between and their king
+ * row, {@link EvalParams#is_home_free} each;</li>
+ * <li>the mobility, {@link EvalParams#jumps} per skip, or
+ * {@link EvalParams#move_val} per move for a player without skips;</li>
+ * <li>in the endgame, the distance from the kings to the checkers they
+ * chase, {@link EvalParams#dist_factor} per square.</li>
+ * </ul>
+ * Everything but the endgame distance is computed on the 32-bit boards with
+ * bit tricks (SWAR): the rows by counting the pieces under three masks, the
+ * squares under a mask each, and the moves in each direction by shifting all
+ * the pieces at once, so that there is no loop over the pieces nor any branch
+ * on them.
+ * <p>
+ * The search scores the states after each of its moves with one batch, to try
+ * the best ones first. With all the terms, the moves come in the order the
+ * evaluation of the leaves would give them, which keeps the cut-offs of the
+ * alpha-beta search.
+ */
+public final class BatchEvaluator {
+
+	/**
+	 * The pieces which can step in each direction (down right, down left, up
+	 * right, up left) by each of the two shifts of that direction: the shift
+	 * depends on the parity of the row.
+	 */
+	private static final int[][] STEP_MASKS = new int[4][2];
+
+	/** The shift of the index of a step, for each mask of STEP_MASKS. */
+	private static final int[][] STEP_SHIFTS = new int[4][2];
+
+	/** The pieces which can skip in each direction. */
+	private static final int[] JUMP_MASKS = new int[4];
+
+	/** The tiles 13, 14, 17 and 18, in the middle of the board. */
+	private static final int MIDDLE_CENTER = 0x66000;
+
+	/** The tiles 12, 15, 16 and 19, on the sides of the middle. */
+	private static final int MIDDLE_SIDE = 0x99000;
+
+	/** The tiles of the black goalies, in the corners and the center. */
+	private static final int BLACK_SIDE_GOALIES = 0x9, BLACK_CENTER_GOALIES = 0x6;
+
+	/** The tiles of the white goalies, in the corners and the center. */
+	private static final int WHITE_SIDE_GOALIES = 0x90000000,
+			WHITE_CENTER_GOALIES = 0x60000000;
+
+	/** The tiles of the double corner of each player. */
+	private static final int BLACK_DOUBLE_CORNER = 0x11,
+			WHITE_DOUBLE_CORNER = 0x88000000;
+
+	static {
+		for (int d = 0; d < 4; d ++) {
+			STEP_SHIFTS[d][0] = Integer.MIN_VALUE;
+			for (int i = 0; i < 32; i ++) {
+				int step = Bitboard.getStep(i, d);
+				if (step < 0) {
+					continue;
+				}
+				int k = (STEP_SHIFTS[d][0] == Integer.MIN_VALUE
+						|| STEP_SHIFTS[d][0] == step - i)? 0 : 1;
+				STEP_SHIFTS[d][k] = step - i;
+				STEP_MASKS[d][k] |= 1 << i;
+				if (Bitboard.getStep(step, d) >= 0) {
+					JUMP_MASKS[d] |= 1 << i;
+				}
+			}
+		}
+	}
+
+	/** The number of states in the batch. */
+	private int size;
+
+	/** The tiles of each kind of piece, for each state. */
+	private int[] blackCheckers, blackKings, whiteCheckers, whiteKings;
+
+	/**
+	 * Creates an empty batch.
+	 *
+	 * @param capacity	the number of states it holds before growing.
+	 */
+	public BatchEvaluator(int capacity) {
+		capacity = Math.max(1, capacity);
+		this.blackCheckers = new int[capacity];
+		this.blackKings = new int[capacity];
+		this.whiteCheckers = new int[capacity];
+		this.whiteKings = new int[capacity];
+	}
+
+	/**
+	 * Removes all the states.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a state to the batch.
+	 *
+	 * @param state	the state, which is not kept.
+	 * @return the index of the state in the batch.
+	 */
+	public int add(Bitboard state) {
+		if (size == blackCheckers.length) {
+			int capacity = 2 * size;
+			this.blackCheckers = Arrays.copyOf(blackCheckers, capacity);
+			this.blackKings = Arrays.copyOf(blackKings, capacity);
+			this.whiteCheckers = Arrays.copyOf(whiteCheckers, capacity);
+			this.whiteKings = Arrays.copyOf(whiteKings, capacity);
+		}
+		blackCheckers[size] = state.getBlackCheckers();
+		blackKings[size] = state.getBlackKings();
+		whiteCheckers[size] = state.getWhiteCheckers();
+		whiteKings[size] = state.getWhiteKings();
+		return size ++;
+	}
+
+	/**
+	 * Scores all the states of the batch.
+	 *
+	 * @param params	the weights of the terms.
+	 * @param player	the player the scores are for, true for black.
+	 * @param scores	receives the score of each state, must hold
+	 * {@link #size()}.
+	 */
+	public void evaluate(EvalParams params, boolean player, int[] scores) {
+		int pieceValue = params.piece_val, kingValue = params.king_val;
+		int advance = params.piece_row_advance;
+		int skipValue = params.jumps, moveValue = params.move_val;
+		int sign = player? 1 : -1;
+		for (int i = 0; i < size; i ++) {
+			int bc = blackCheckers[i], bk = blackKings[i];
+			int wc = whiteCheckers[i], wk = whiteKings[i];
+			int black = bc | bk, white = wc | wk, empty = ~(black | white);
+			int blackCount = Integer.bitCount(bc);
+			int whiteCount = Integer.bitCount(wc);
+			int blackKingCount = Integer.bitCount(bk);
+			int whiteKingCount = Integer.bitCount(wk);
+
+			// Advance and squares of the checkers, for black
+			int score = advance * (rowSum(bc) - 7 * whiteCount + rowSum(wc))
+					+ params.piece_middle_center_squares
+					* (Integer.bitCount(bc & MIDDLE_CENTER)
+					- Integer.bitCount(wc & MIDDLE_CENTER))
+					+ params.piece_middle_side_squares
+					* (Integer.bitCount(bc & MIDDLE_SIDE)
+					- Integer.bitCount(wc & MIDDLE_SIDE))
+					+ params.piece_side_goalies
+					* (Integer.bitCount(bc & BLACK_SIDE_GOALIES)
+					- Integer.bitCount(wc & WHITE_SIDE_GOALIES))
+					+ params.piece_center_goalies
+					* (Integer.bitCount(bc & BLACK_CENTER_GOALIES)
+					- Integer.bitCount(wc & WHITE_CENTER_GOALIES))
+					+ params.piece_double_corner
+					* (Integer.bitCount(bc & BLACK_DOUBLE_CORNER)
+					- Integer.bitCount(wc & WHITE_DOUBLE_CORNER));
+
+			// The checkers on or past the last row of the opponent's pieces
+			int whiteRow = (white == 0)? 0
+					: (31 - Integer.numberOfLeadingZeros(white)) >> 2;
+			int blackRow = (black == 0)? 7
+					: Integer.numberOfTrailingZeros(black) >> 2;
+			score += params.is_home_free * (Integer.bitCount(bc
+					& (-1 << 4 * whiteRow)) - Integer.bitCount(wc
+					& (int) ((1L << 4 * (blackRow + 1)) - 1)));
+
+			// Material, scaled up for the side ahead
+			int blackMaterial = blackCount * pieceValue
+					+ blackKingCount * kingValue;
+			int whiteMaterial = whiteCount * pieceValue
+					+ whiteKingCount * kingValue;
+			int max = Math.max(blackMaterial, whiteMaterial);
+			int min = Math.min(blackMaterial, whiteMaterial);
+			if (min == 0) {
+				min = 1;
+			}
+			score += (int) ((blackMaterial - whiteMaterial)
+					* (((float) max) / min));
+
+			// Mobility, for black: black checkers go down, white ones up
+			score += mobility(bc, bk, white, empty, 0, skipValue, moveValue)
+					- mobility(wc, wk, black, empty, 2, skipValue, moveValue);
+
+			// The side with more kings chases the checkers in the endgame
+			int outnumber = blackKingCount - whiteKingCount;
+			if (outnumber > 0 && whiteCount < 5) {
+				score -= distance(wc, bk) * params.dist_factor;
+			} else if (outnumber < 0 && blackCount < 5) {
+				score += distance(bc, wk) * params.dist_factor;
+			}
+			scores[i] = sign * score;
+		}
+	}
+
+	/**
+	 * Sums the distances from each checker to each king, on the board, as
+	 * {@link java.awt.Point#distance(java.awt.Point)} and in the same order
+	 * as the heuristic, so that the rounding is the same.
+	 */
+	private static int distance(int checkers, int kings) {
+		float dist = 0;
+		for (int c = checkers; c != 0; c &= c - 1) {
+			int from = Integer.numberOfTrailingZeros(c);
+			for (int k = kings; k != 0; k &= k - 1) {
+				int to = Integer.numberOfTrailingZeros(k);
+				int dx = x(to) - x(from), dy = (to >> 2) - (from >> 2);
+				dist += Math.sqrt(dx * dx + dy * dy);
+			}
+		}
+		return (int) dist;
+	}
+
+	/**
+	 * @return the column of a tile, as {@code Board.toPoint(int)}.
+	 */
+	private static int x(int index) {
+		return 2 * (index & 3) + ((index >> 2) + 1) % 2;
+	}
+
+	/**
+	 * Sums the rows of the pieces: row {@code y} holds the tiles
+	 * {@code 4y} to {@code 4y + 3}, so each bit of {@code y} is a bit of the
+	 * index.
+	 */
+	static int rowSum(int pieces) {
+		return 4 * Integer.bitCount(pieces & 0xFFFF0000)
+				+ 2 * Integer.bitCount(pieces & 0xFF00FF00)
+				+ Integer.bitCount(pieces & 0xF0F0F0F0);
+	}
+
+	/**
+	 * Scores the mobility of a player: a value per skip if it has any, and
+	 * per simple move otherwise.
+	 *
+	 * @param checkers	the player's checkers.
+	 * @param kings		the player's kings.
+	 * @param opponent	the opponent's pieces.
+	 * @param empty		the empty tiles.
+	 * @param forward	the first direction of the checkers, 0 for down and
+	 * 2 for up.
+	 * @param skipValue	the value of a skip.
+	 * @param moveValue	the value of a simple move.
+	 */
+	static int mobility(int checkers, int kings, int opponent, int empty,
+			int forward, int skipValue, int moveValue) {
+		int moves = 0, skips = 0;
+		for (int d = 0; d < 4; d ++) {
+			int pieces = (d >> 1 == forward >> 1)? checkers | kings : kings;
+			for (int k = 0; k < 2; k ++) {
+				int shift = STEP_SHIFTS[d][k];
+				moves += Integer.bitCount(shift(pieces & STEP_MASKS[d][k],
+						shift) & empty);
+
+				// A skip steps onto an opponent, then on in the same direction
+				int middle = shift(pieces & STEP_MASKS[d][k] & JUMP_MASKS[d],
+						shift) & opponent;
+				int land = shift(middle & STEP_MASKS[d][0], STEP_SHIFTS[d][0])
+						| shift(middle & STEP_MASKS[d][1], STEP_SHIFTS[d][1]);
+				skips += Integer.bitCount(land & empty);
+			}
+		}
+		return (skips > 0)? skips * skipValue : moves * moveValue;
+	}
+
+	private static int shift(int bits, int shift) {
+		return (shift >= 0)? bits << shift : bits >>> -shift;
+	}
+}
@@ -0,0 +1,456 @@
+/* Name: Bitboard
+ * Description: This class is a game state held in four integers, with a fast
+ * move generator for the tools going through millions of states.
+ */
+
+package src.logic;
+
+import java.awt.Point;
+import java.util.function.Consumer;
+
+import src.model.Board;
+import src.model.Game;
+import src.model.Move;
+
+/**
+ * The {@code Bitboard} class represents a game state as one bit per black
+ * tile for each kind of piece, so that moves are found with a few bit
+ * operations instead of the lists of points of {@link MoveGenerator}. It
+ * follows the rules of {@link MoveLogic} and {@link Game#move(int, int)}
+ * exactly: skips must be taken, a checker that skipped goes on skipping while
+ * it can, and a checker that becomes a king ends the turn. As in {@code Game},
+ * each skip is a move of its own, see {@link #forEachTurn(Consumer)} for whole
+ * turns.
+ * <p>
+ * A move is encoded in an {@code int} as its start index plus its end index
+ * times 32, see {@link #getStart(int)} and {@link #getEnd(int)}.
+ */
+public final class Bitboard {
+
+	/** The most moves a state can have, 4 for each of 12 pieces. */
+	public static final int MAX_MOVES = 48;
+
+	/** The tiles where a black checker becomes a king, the last row. */
+	public static final int BLACK_CROWN = 0xF0000000;
+
+	/** The tiles where a white checker becomes a king, the first row. */
+	public static final int WHITE_CROWN = 0x0000000F;
+
+	/**
+	 * The neighbour of each tile in each direction (down right, down left,
+	 * up right, up left), or -1. Black checkers move down, white ones up.
+	 */
+	private static final int[][] STEPS = new int[32][4];
+
+	/** The tile two tiles away in each direction, where a skip lands, or -1. */
+	private static final int[][] JUMPS = new int[32][4];
+
+	static {
+		for (int i = 0; i < 32; i ++) {
+			Point p = Board.toPoint(i);
+			for (int d = 0; d < 4; d ++) {
+				int dx = (d % 2 == 0)? 1 : -1, dy = (d < 2)? 1 : -1;
+				STEPS[i][d] = Board.toIndex(p.x + dx, p.y + dy);
+				JUMPS[i][d] = Board.toIndex(p.x + 2 * dx, p.y + 2 * dy);
+			}
+		}
+	}
+
+	/** The tiles of each kind of piece. */
+	private int blackCheckers, blackKings, whiteCheckers, whiteKings;
+
+	/** Whether black (player 2) is to move. */
+	private boolean isP2Turn;
+
+	/** The tile of the checker that must skip again, or -1. */
+	private int skipIndex;
+
+	public Bitboard(int blackCheckers, int blackKings, int whiteCheckers,
+			int whiteKings, boolean isP2Turn, int skipIndex) {
+		this.blackCheckers = blackCheckers;
+		this.blackKings = blackKings;
+		this.whiteCheckers = whiteCheckers;
+		this.whiteKings = whiteKings;
+		this.isP2Turn = isP2Turn;
+		this.skipIndex = skipIndex;
+	}
+
+	/**
+	 * Creates the bitboard of a game state.
+	 *
+	 * @param game	the game state.
+	 * @return the same state as a bitboard.
+	 */
+	public static Bitboard of(Game game) {
+		Board board = game.getBoard();
+		return new Bitboard(board.getMask(Board.BLACK_CHECKER),
+				board.getMask(Board.BLACK_KING),
+				board.getMask(Board.WHITE_CHECKER),
+				board.getMask(Board.WHITE_KING), game.isP2Turn(),
+				game.getSkipIndex());
+	}
+
+	/**
+	 * Creates a game in the state of this bitboard, with no history.
+	 *
+	 * @return the new game.
+	 */
+	public Game toGame() {
+		Board board = new Board();
+		for (int i = 0; i < 32; i ++) {
+			board.set(i, get(i));
+		}
+		return new Game(board, isP2Turn, skipIndex);
+	}
+
+	public Bitboard copy() {
+		return new Bitboard(blackCheckers, blackKings, whiteCheckers,
+				whiteKings, isP2Turn, skipIndex);
+	}
+
+	/**
+	 * Makes this bitboard the same state as another. A search keeping a
+	 * bitboard per ply copies into it before each move, and so undoes the
+	 * move without creating a bitboard per node.
+	 *
+	 * @param state	the state to copy.
+	 */
+	public void set(Bitboard state) {
+		this.blackCheckers = state.blackCheckers;
+		this.blackKings = state.blackKings;
+		this.whiteCheckers = state.whiteCheckers;
+		this.whiteKings = state.whiteKings;
+		this.isP2Turn = state.isP2Turn;
+		this.skipIndex = state.skipIndex;
+	}
+
+	/**
+	 * Gets the ID of a tile, as {@link Board#get(int)} does.
+	 *
+	 * @param index	the index of the black tile (from 0 to 31 inclusive).
+	 * @return the ID of the piece on the tile, or {@link Board#EMPTY}.
+	 */
+	public int get(int index) {
+		int bit = 1 << index;
+		if ((blackCheckers & bit) != 0) {
+			return Board.BLACK_CHECKER;
+		} else if ((blackKings & bit) != 0) {
+			return Board.BLACK_KING;
+		} else if ((whiteCheckers & bit) != 0) {
+			return Board.WHITE_CHECKER;
+		} else if ((whiteKings & bit) != 0) {
+			return Board.WHITE_KING;
+		}
+		return Board.EMPTY;
+	}
+
+	/**
+	 * Finds the moves of the player to move: the skips if there are any,
+	 * only those of the checker that skipped last if it must skip again, and
+	 * the simple moves otherwise.
+	 *
+	 * @param moves	receives the moves, must hold {@link #MAX_MOVES}.
+	 * @return the number of moves found.
+	 */
+	public int getMoves(int[] moves) {
+		int own = isP2Turn? blackCheckers | blackKings : whiteCheckers | whiteKings;
+		int opponent = isP2Turn? whiteCheckers | whiteKings
+				: blackCheckers | blackKings;
+		int empty = ~(own | opponent);
+		int kings = blackKings | whiteKings;
+
+		// Skips first, they must be taken
+		int count = 0;
+		int from = (skipIndex >= 0)? own & (1 << skipIndex) : own;
+		for (int pieces = from; pieces != 0; pieces &= pieces - 1) {
+			int i = Integer.numberOfTrailingZeros(pieces);
+			int first = firstDirection(i, kings), last = lastDirection(i, kings);
+			for (int d = first; d <= last; d ++) {
+				int end = JUMPS[i][d];
+				if (end >= 0 && (empty & (1 << end)) != 0
+						&& (opponent & (1 << STEPS[i][d])) != 0) {
+					moves[count ++] = i | end << 5;
+				}
+			}
+		}
+		if (count > 0 || skipIndex >= 0) {
+			return count;
+		}
+
+		// Then simple moves
+		for (int pieces = own; pieces != 0; pieces &= pieces - 1) {
+			int i = Integer.numberOfTrailingZeros(pieces);
+			int first = firstDirection(i, kings), last = lastDirection(i, kings);
+			for (int d = first; d <= last; d ++) {
+				int end = STEPS[i][d];
+				if (end >= 0 && (empty & (1 << end)) != 0) {
+					moves[count ++] = i | end << 5;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Makes a move found by {@link #getMoves(int[])}, as
+	 * {@link Game#move(int, int)} does. The move is not validated.
+	 *
+	 * @param move	the move to make.
+	 */
+	public void play(int move) {
+		int start = getStart(move), end = getEnd(move);
+		int startBit = 1 << start, endBit = 1 << end;
+
+		// Move the piece
+		boolean king = ((blackKings | whiteKings) & startBit) != 0;
+		if ((blackCheckers & startBit) != 0) {
+			this.blackCheckers ^= startBit | endBit;
+		} else if ((blackKings & startBit) != 0) {
+			this.blackKings ^= startBit | endBit;
+		} else if ((whiteCheckers & startBit) != 0) {
+			this.whiteCheckers ^= startBit | endBit;
+		} else {
+			this.whiteKings ^= startBit | endBit;
+		}
+
+		// Remove the skipped piece
+		int middle = middle(start, end);
+		if (middle >= 0) {
+			int cleared = ~(1 << middle);
+			this.blackCheckers &= cleared;
+			this.blackKings &= cleared;
+			this.whiteCheckers &= cleared;
+			this.whiteKings &= cleared;
+		}
+
+		// Make the checker a king if necessary, which ends the turn
+		boolean crowned = false;
+		if ((blackCheckers & endBit & BLACK_CROWN) != 0) {
+			this.blackCheckers ^= endBit;
+			this.blackKings |= endBit;
+			crowned = true;
+		} else if ((whiteCheckers & endBit & WHITE_CROWN) != 0) {
+			this.whiteCheckers ^= endBit;
+			this.whiteKings |= endBit;
+			crowned = true;
+		}
+
+		// Skip again if possible
+		if (middle >= 0 && !crowned && canSkip(end, king)) {
+			this.skipIndex = end;
+		} else {
+			this.isP2Turn = !isP2Turn;
+			this.skipIndex = -1;
+		}
+	}
+
+	/**
+	 * Calls the action with the state after each possible turn of the player
+	 * to move: each simple move, and each complete sequence of skips.
+	 *
+	 * @param action	receives the states, which it may keep.
+	 */
+	public void forEachTurn(Consumer<Bitboard> action) {
+		int[] moves = new int[MAX_MOVES];
+		int count = getMoves(moves);
+		for (int i = 0; i < count; i ++) {
+			Bitboard next = copy();
+			next.play(moves[i]);
+			if (next.skipIndex >= 0) {
+				next.forEachTurn(action);
+			} else {
+				action.accept(next);
+			}
+		}
+	}
+
+	/**
+	 * Calls the action with each state from which a simple move of the
+	 * player who just moved, that does not make a king, leads to this one.
+	 * Whether that player had a skip to take instead is not checked.
+	 *
+	 * @param action	receives the states, which it may keep.
+	 */
+	public void forEachUnmove(Consumer<Bitboard> action) {
+		if (skipIndex >= 0) {
+			return;
+		}
+		boolean black = !isP2Turn;
+		int empty = ~(blackCheckers | blackKings | whiteCheckers | whiteKings);
+		int pieces = black? blackCheckers | blackKings
+				: whiteCheckers | whiteKings;
+		int kings = blackKings | whiteKings;
+		for (; pieces != 0; pieces &= pieces - 1) {
+			int i = Integer.numberOfTrailingZeros(pieces);
+			int bit = 1 << i;
+
+			// Checkers come from behind, kings from anywhere
+			int first = 0, last = 3;
+			if ((kings & bit) == 0) {
+				first = black? 2 : 0;
+				last = first + 1;
+			}
+			for (int d = first; d <= last; d ++) {
+				int from = STEPS[i][d];
+				if (from < 0 || (empty & (1 << from)) == 0) {
+					continue;
+				}
+				Bitboard previous = copy();
+				int moved = bit | 1 << from;
+				if ((blackCheckers & bit) != 0) {
+					previous.blackCheckers ^= moved;
+				} else if ((blackKings & bit) != 0) {
+					previous.blackKings ^= moved;
+				} else if ((whiteCheckers & bit) != 0) {
+					previous.whiteCheckers ^= moved;
+				} else {
+					previous.whiteKings ^= moved;
+				}
+				previous.isP2Turn = black;
+				action.accept(previous);
+			}
+		}
+	}
+
+	/**
+	 * Checks if the game is over, ignoring draws: a player has no pieces
+	 * left, or the player to move can't move.
+	 *
+	 * @return true if the game is over.
+	 */
+	public boolean isGameOver() {
+		if ((blackCheckers | blackKings) == 0
+				|| (whiteCheckers | whiteKings) == 0) {
+			return true;
+		}
+		return getMoves(new int[MAX_MOVES]) == 0;
+	}
+
+	/**
+	 * Checks if a piece could skip from a tile.
+	 */
+	private boolean canSkip(int i, boolean king) {
+		int bit = 1 << i;
+		boolean black = ((blackCheckers | blackKings) & bit) != 0;
+		int opponent = black? whiteCheckers | whiteKings
+				: blackCheckers | blackKings;
+		int empty = ~(blackCheckers | blackKings | whiteCheckers | whiteKings);
+		int first = king? 0 : black? 0 : 2, last = king? 3 : first + 1;
+		for (int d = first; d <= last; d ++) {
+			int end = JUMPS[i][d];
+			if (end >= 0 && (empty & (1 << end)) != 0
+					&& (opponent & (1 << STEPS[i][d])) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the first direction a piece moves in: down for black checkers and
+	 * kings, up for white checkers.
+	 */
+	private int firstDirection(int i, int kings) {
+		return ((kings | blackCheckers) & (1 << i)) != 0? 0 : 2;
+	}
+
+	private int lastDirection(int i, int kings) {
+		return ((kings | whiteCheckers) & (1 << i)) != 0? 3 : 1;
+	}
+
+	/**
+	 * Gets the tile between the start and end of a skip.
+	 *
+	 * @return the index of the skipped tile, or -1 if the move is not a skip.
+	 */
+	private static int middle(int start, int end) {
+		for (int d = 0; d < 4; d ++) {
+			if (JUMPS[start][d] == end) {
+				return STEPS[start][d];
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the neighbour of a tile in a direction (0 to 3: down right, down
+	 * left, up right, up left), or -1 if it is off the board.
+	 */
+	public static int getStep(int index, int direction) {
+		return STEPS[index][direction];
+	}
+
+	public static int getStart(int move) {
+		return move & 31;
+	}
+
+	public static int getEnd(int move) {
+		return (move >>> 5) & 31;
+	}
+
+	/**
+	 * @return true if the move is a skip.
+	 */
+	public static boolean isSkip(int move) {
+		return middle(getStart(move), getEnd(move)) >= 0;
+	}
+
+	public static Move toMove(int move) {
+		return new Move(getStart(move), getEnd(move), 0);
+	}
+
+	public int getBlackCheckers() {
+		return blackCheckers;
+	}
+
+	public int getBlackKings() {
+		return blackKings;
+	}
+
+	public int getWhiteCheckers() {
+		return whiteCheckers;
+	}
+
+	public int getWhiteKings() {
+		return whiteKings;
+	}
+
+	public boolean isP2Turn() {
+		return isP2Turn;
+	}
+
+	public int getSkipIndex() {
+		return skipIndex;
+	}
+
+	public int getPieceCount() {
+		return Integer.bitCount(blackCheckers | blackKings | whiteCheckers
+				| whiteKings);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof Bitboard)) {
+			return false;
+		}
+		Bitboard b = (Bitboard) o;
+		return blackCheckers == b.blackCheckers && blackKings == b.blackKings
+				&& whiteCheckers == b.whiteCheckers
+				&& whiteKings == b.whiteKings && isP2Turn == b.isP2Turn
+				&& skipIndex == b.skipIndex;
+	}
+
+	@Override
+	public int hashCode() {
+		int h = blackCheckers;
+		h = 31 * h + blackKings;
+		h = 31 * h + whiteCheckers;
+		h = 31 * h + whiteKings;
+		return 31 * h + (isP2Turn? 1 : 0) + 2 * skipIndex;
+	}
+
+	@Override
+	public String toString() {
+		return toGame().getGameState();
+	}
+}
@@ -6,6 +6,7 @@
 
 package src.model;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -16,6 +17,16 @@ public class AlphaBetaPlayer extends MinMaxPlayer {
 
     //public boolean player;
 
+    /** The deepest ply the principal variations are recorded to. */
+    private static final int MAX_PLY = MAX_DEPTH;
+
+    /**
+     * The best line found from each ply of the current search : pv_table[ply] holds
+     * the moves from ply to pv_length[ply] ( the usual triangular table ).
+     */
+    private final Move[][] pv_table = new Move[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pv_length = new int[MAX_PLY + 1];
+
     public AlphaBetaPlayer(boolean joueur) {
         super(joueur);
     }
@@ -30,29 +41,8 @@ public class AlphaBetaPlayer extends MinMaxPlayer {
     }
 
     @Override
-    public void updateGame(Game game) {
-
-        // Nothing to do
-        if (game == null || game.isGameOver()) {
-            return;
-        }
-        /**
-         * This variable {@depth} is changed whenever we change selection on the JComboBox for difficulty Level
-         */
-        int depth;
-        switch (level) {
-            case 1:
-                depth = 9;
-                break;
-            case 2:
-                depth = 12;
-                break;
-            default:
-                depth = 3;
-                break;
-        }
-        Move best_move = minimax_alpha_beta(game, depth);
-        game.move(best_move);
+    protected Move search(Game game) {
+        return minimax_alpha_beta(game, getDepth());
     }
 
     /**
@@ -62,76 +52,207 @@ public class AlphaBetaPlayer extends MinMaxPlayer {
      */
 
     private Move minimax_alpha_beta(Game game, int depth) {
+        return analyse(game, depth, 1, getNodeBudget()).getBestMove();
+    }
+
+    /**
+     * Searches the best {@code lines} root moves with their scores and principal variations.
+     * The search deepens one ply at a time up to {@code depth}, each iteration trying first
+     * the best moves of the previous one. The transposition tables are shared by all the
+     * lines and iterations. A line may stop short of the full depth when it reaches a
+     * position taken from the transposition tables.
+     *
+     * @param game  : The actual state of Game Board
+     * @param depth : The maximum depth to search in
+     * @param lines : The number of lines wanted ( 1 for a normal search )
+     * @return The lines of the deepest completed iteration, best first
+     */
+    public Analysis analyse(Game game, int depth, int lines) {
+        return analyse(game, depth, lines, Long.MAX_VALUE);
+    }
+
+    /**
+     * Same as {@link #analyse(Game, int, int)}, stopping after {@code nodes} nodes.
+     *
+     * @param game  : The actual state of Game Board
+     * @param depth : The maximum depth to search in
+     * @param lines : The number of lines wanted ( 1 for a normal search )
+     * @param nodes : The number of nodes the analysis may visit
+     * @return The lines of the deepest completed iteration, best first
+     */
+    public Analysis analyse(Game game, int depth, int lines, long nodes) {
         // Backup our state
         Game temp_game = game.copy();
+        getEvaluator().attach(temp_game);
         // Get all available Moves
         List<Move> moves = getMoves(temp_game);
+        depth = Math.max(1, Math.min(depth, MAX_PLY));
+        lines = Math.max(1, lines);
+
+        startSearch(depth, nodes);
+
+        List<Variation> best_lines = new ArrayList<>();
+        int completed = 0;
+        for (int d = 1; d <= depth && !moves.isEmpty(); d++) {
+            this.searchDepth = d;
+            List<Variation> found = searchRoot(temp_game, moves, d, lines);
+            // An interrupted iteration is only better than nothing
+            if (isStopped() && completed > 0) {
+                break;
+            }
+            best_lines = found;
+            completed = d;
+            if (isStopped()) {
+                break;
+            }
+            completeIteration();
+            moves = orderMoves(moves, found);
+        }
 
-        int best_score;
-        int high_score = Integer.MIN_VALUE;
-        int low_score = Integer.MAX_VALUE;
-        Move best_move = null;
+        // Stopped before any move was searched
+        if (best_lines.isEmpty() && !moves.isEmpty()) {
+            List<Move> line = new ArrayList<>();
+            line.add(moves.get(0));
+            best_lines.add(new Variation(evaluate(temp_game), line));
+        }
+        report();
+        return new Analysis(best_lines, completed, getNodes(), elapsedNanos());
+    }
 
-        this.transpositionTableMax = new StateSet();
-        this.transpositionTableMin = new StateSet();
+    /**
+     * @param game  : The actual state of Game Board
+     * @param moves : The root moves, in the order to search them
+     * @param depth : The maximum depth to search in
+     * @param lines : The number of lines wanted
+     * @return The best lines found, best first
+     */
+    private List<Variation> searchRoot(Game game, List<Move> moves, int depth, int lines) {
+        List<Variation> found = new ArrayList<>();
 
         /**
-         * Here we need to get the best available {@model.Move} based on scores
+         * Scores are from our point of view, so we keep the highest ones. Once we have enough
+         * lines, a move only has to be searched exactly if it beats the worst of them, which
+         * gives the window of its search
          */
         for (Move move : moves) {
-            // We test whatever we are with max or min player and get the corresponding evaluation
-            best_score = player ? maxValue(temp_game, depth, high_score, low_score) :
-                    minValue(temp_game, depth, high_score, low_score);
-
-            // If we are handling a Max Player so we need to take the argmax !
-            if (player && best_score > high_score) {
-                high_score = best_score;
-                best_move = move;
-            } // If we are handling a Min Player so we need to take the argmin !
-            else if (!player && best_score < low_score) {
-                low_score = best_score;
-                best_move = move;
+            if (isStopped()) {
+                break;
+            }
+            int alpha = found.size() == lines ? found.get(lines - 1).getScore() : Integer.MIN_VALUE;
+            int beta = Integer.MAX_VALUE;
+
+            Game temp_game = game.copy();
+            temp_game.move(move);
+            int score = temp_game.isP2Turn() == player ? maxValue(temp_game, depth - 1, 1, alpha, beta) :
+                    minValue(temp_game, depth - 1, 1, alpha, beta);
+            if (isStopped() || score <= alpha) {
+                continue;
+            }
+
+            // Insert the new line at its rank
+            List<Move> line = new ArrayList<>();
+            line.add(move);
+            for (int i = 1; i < pv_length[1]; i++) {
+                line.add(pv_table[1][i]);
+            }
+            int rank = 0;
+            while (rank < found.size() && found.get(rank).getScore() >= score) {
+                rank++;
+            }
+            found.add(rank, new Variation(score, line));
+            if (found.size() > lines) {
+                found.remove(lines);
+            }
+            if (rank == 0) {
+                updateBest(line, score);
             }
         }
-        return best_move;
+        return found;
+    }
+
+    /**
+     * @param moves : The root moves of the previous iteration
+     * @param lines : The lines found by the previous iteration
+     * @return The moves of the lines first, in their order, then the other ones
+     */
+    private static List<Move> orderMoves(List<Move> moves, List<Variation> lines) {
+        List<Move> ordered = new ArrayList<>();
+        for (Variation variation : lines) {
+            ordered.add(variation.getMove());
+        }
+        for (Move move : moves) {
+            if (!ordered.contains(move)) {
+                ordered.add(move);
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Records the line made of {@code move} followed by the best line of the next ply.
+     */
+    private void updatePv(int ply, Move move) {
+        pv_table[ply][ply] = move;
+        int length = Math.max(ply + 1, pv_length[ply + 1]);
+        for (int i = ply + 1; i < length; i++) {
+            pv_table[ply][i] = pv_table[ply + 1][i];
+        }
+        pv_length[ply] = length;
     }
 
 
     /**
      * @param game  : The actual state of Game Board
      * @param depth : The maximum depth to search in
+     * @param ply   : The distance from the root
      * @return The max_score ( evaluation for the actual game if we go for depth = depth
      */
-    private int maxValue(Game game, int depth, int alpha, int beta) {
+    private int maxValue(Game game, int depth, int ply, int alpha, int beta) {
+        if (!countNode()) {
+            return 0;
+        }
+        pv_length[ply] = ply;
+        if (isDraw(game)) {
+            return DRAW_SCORE;
+        }
+        // If our actual state has been seen before at this depth no need to go further !
+        Integer known = probe(game, depth);
+        if (known != null) {
+            return known;
+        }
         // If We are in the last level of depth or the game is in it end
-        // Or If our actual state has been seen before no need to go further !
-        if (game.isGameOver() || depth == 0 || transpositionTableMax.getValue(game) != null) {
-            if (transpositionTableMax.getValue(game) != null) {
-                return transpositionTableMax.getValue(game);
-            }
-            return game.goodHeuristic(true);
+        if (game.isGameOver() || depth == 0 || isStopped()) {
+            return evaluate(game);
         }
-        // Make Backup for Game instance
-        Game temp_game = game;
+        int alpha_orig = alpha;
+        long draws = historyDraws;
 
-        List<Move> moves = getMoves(temp_game);
+        List<Move> moves = getMoves(game);
         int best_score = Integer.MIN_VALUE;
         int res_score;
 
         for (Move move : moves) {
-            temp_game = temp_game.copy();
+            Game temp_game = game.copy();
             temp_game.move(move);
             // In case the player is about to make multiple moves ( if he can )
-            res_score = temp_game.isP2Turn() == player ? maxValue(temp_game, depth - 1, alpha, beta) :
-                    minValue(temp_game, depth - 1, alpha, beta);
+            res_score = temp_game.isP2Turn() == player ? maxValue(temp_game, depth - 1, ply + 1, alpha, beta) :
+                    minValue(temp_game, depth - 1, ply + 1, alpha, beta);
 
-            best_score = Math.max(best_score, res_score);
+            if (res_score > best_score) {
+                best_score = res_score;
+                if (best_score > alpha) {
+                    updatePv(ply, move);
+                }
+            }
             if (best_score >= beta) return best_score;
             alpha = Math.max(alpha, best_score);
         }
         // Make sure to add our new state in The Transposition table
-        transpositionTableMax = new StateSet();
-        transpositionTableMax.add(temp_game, best_score);
+        // ( only exact scores, a fail-low is just an upper bound, and only if no draw by
+        // repetition below made the score depend on the path )
+        if (!isStopped() && best_score > alpha_orig && historyDraws == draws) {
+            store(game, depth, best_score);
+        }
 
         return best_score;
     }
@@ -139,37 +260,52 @@ public class AlphaBetaPlayer extends MinMaxPlayer {
     /**
      * @param game  : The actual state of Game Board
      * @param depth : The maximum depth to search in
-     * @return The max_score ( evaluation for the actual game if we go for depth = depth
+     * @param ply   : The distance from the root
+     * @return The min_score ( evaluation for the actual game if we go for depth = depth
      */
-    private int minValue(Game game, int depth, int alpha, int beta) {
-        if (game.isGameOver() || depth == 0 || transpositionTableMin.getValue(game) != null) {
-            if (transpositionTableMin.getValue(game) != null) {
-                return transpositionTableMin.getValue(game);
-            }
-            return game.goodHeuristic(false);
+    private int minValue(Game game, int depth, int ply, int alpha, int beta) {
+        if (!countNode()) {
+            return 0;
+        }
+        pv_length[ply] = ply;
+        if (isDraw(game)) {
+            return DRAW_SCORE;
+        }
+        Integer known = probe(game, depth);
+        if (known != null) {
+            return known;
         }
-        // Make Backup to the game
-        Game temp_game = game;
+        if (game.isGameOver() || depth == 0 || isStopped()) {
+            return evaluate(game);
+        }
+        int beta_orig = beta;
+        long draws = historyDraws;
 
-        List<Move> moves = getMoves(temp_game);
+        List<Move> moves = getMoves(game);
         int best_score = Integer.MAX_VALUE;
         int res_score;
 
 
         for (Move move : moves) {
-            temp_game = temp_game.copy();
+            Game temp_game = game.copy();
             temp_game.move(move);
 
-            res_score = temp_game.isP2Turn() == player ? maxValue(temp_game, depth - 1, alpha, beta) :
-                    minValue(temp_game, depth - 1, alpha, beta);
+            res_score = temp_game.isP2Turn() == player ? maxValue(temp_game, depth - 1, ply + 1, alpha, beta) :
+                    minValue(temp_game, depth - 1, ply + 1, alpha, beta);
 
-            best_score = Math.min(best_score, res_score);
+            if (res_score < best_score) {
+                best_score = res_score;
+                if (best_score < beta) {
+                    updatePv(ply, move);
+                }
+            }
             if (best_score <= alpha) return best_score;
             beta = Math.min(beta, best_score);
         }
 
-        transpositionTableMin = new StateSet();
-        transpositionTableMin.add(temp_game, best_score);
+        if (!isStopped() && best_score < beta_orig && historyDraws == draws) {
+            store(game, depth, best_score);
+        }
 
         return best_score;
     }
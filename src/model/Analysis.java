@@ -0,0 +1,73 @@
+/* Name: Analysis
+ * Description: This class is the result of a multi-line analysis of a game
+ * state.
+ */
+
+package src.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code Analysis} class holds the best lines found for a game state, best
+ * first, along with the depth they were searched to and the cost of the
+ * search.
+ * 
+ * @see {@link AlphaBetaPlayer#analyse(Game, int, int)}
+ */
+public class Analysis {
+
+	/** The best lines found, best first. */
+	private final List<Variation> lines;
+	
+	/** The depth of the last completed iteration. */
+	private final int depth;
+	
+	/** The number of nodes visited by the whole analysis. */
+	private final long nodes;
+	
+	/** The time the analysis took, in nanoseconds. */
+	private final long elapsed;
+	
+	public Analysis(List<Variation> lines, int depth, long nodes, long elapsed) {
+		this.lines = Collections.unmodifiableList(lines);
+		this.depth = depth;
+		this.nodes = nodes;
+		this.elapsed = elapsed;
+	}
+	
+	public List<Variation> getLines() {
+		return lines;
+	}
+	
+	/**
+	 * Gets the move of the best line.
+	 * 
+	 * @return the best move found, or null if there are no moves.
+	 */
+	public Move getBestMove() {
+		return lines.isEmpty()? null : lines.get(0).getMove();
+	}
+	
+	public int getDepth() {
+		return depth;
+	}
+	
+	public long getNodes() {
+		return nodes;
+	}
+	
+	public long getElapsedMillis() {
+		return elapsed / 1_000_000;
+	}
+	
+	@Override
+	public String toString() {
+		String s = "depth " + depth + ", " + nodes + " nodes, "
+				+ getElapsedMillis() + " ms";
+		for (int i = 0; i < lines.size(); i ++) {
+			s += "\n" + (i + 1) + ". " + lines.get(i);
+		}
+		return s;
+	}
+}
@@ -108,6 +108,32 @@ public class Board {
 		return points;
 	}
 	
+	/**
+	 * Gets the black tiles that match the specified ID, as the bits of an
+	 * integer: bit i is set if the tile of index i matches.
+	 * 
+	 * @param id	the ID to search for.
+	 * @return the mask of the black tiles with the specified ID.
+	 * @see {@link #find(int)}
+	 */
+	public int getMask(int id) {
+		if (id < 0 || id > 7) {
+			return 0;
+		}
+		return ((id & 4) != 0? state[0] : ~state[0])
+				& ((id & 2) != 0? state[1] : ~state[1])
+				& ((id & 1) != 0? state[2] : ~state[2]);
+	}
+
+	/**
+	 * Counts the checkers and kings on the board.
+	 * 
+	 * @return the number of pieces of both players.
+	 */
+	public int getPieceCount() {
+		return Integer.bitCount(state[0]);
+	}
+
 	/**
 	 * Sets the ID of a black tile on the board at the specified location.
 	 * If the location is not a black tile, nothing is updated. If the ID is
@@ -9,6 +9,8 @@ package src.model;
 import java.awt.Point;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 import src.logic.MoveGenerator;
 import src.logic.MoveLogic;
@@ -19,6 +21,10 @@ import src.logic.MoveLogic;
  */
 public class ComputerPlayer extends Player {
 	
+	/** The time left to a search to return its move before the deadline of
+	 * {@link #chooseMove(GameSnapshot, Deadline)}, in milliseconds. */
+	protected static final long DEADLINE_MARGIN_MILLIS = 20;
+	
 	/* ----- WEIGHTS ----- */
 	/** The weight of being able to skip. */
 	private static final double WEIGHT_SKIP = 25;
@@ -50,6 +56,9 @@ public class ComputerPlayer extends Player {
 	/* ------------ */
 
 	protected int level = -1;
+	
+	/** The weights of the evaluation of this player. */
+	private EvalParams evalParams = EvalParams.getDefault();
 
 	@Override
 	public boolean isHuman() {
@@ -63,6 +72,52 @@ public class ComputerPlayer extends Player {
 		if (game == null || game.isGameOver()) {
 			return;
 		}
+		
+		Move move = selectMove(game, Deadline.none());
+		if (move != null) {
+			game.move(move);
+		}
+	}
+	
+	/**
+	 * Chooses the move on the {@link SearchExecutor}. The search is given
+	 * until a little before the deadline, and is interrupted if the future is
+	 * cancelled or the deadline expires anyway.
+	 */
+	@Override
+	public CompletableFuture<Move> chooseMove(final GameSnapshot snapshot,
+			final Deadline deadline) {
+		
+		final CompletableFuture<Move> result = new CompletableFuture<>();
+		final Future<?> task = SearchExecutor.get().submit(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Game game = snapshot.toGame();
+					result.complete(game.isGameOver()? null :
+						selectMove(game, deadline.earlier(DEADLINE_MARGIN_MILLIS)));
+				} catch (Throwable t) {
+					result.completeExceptionally(t);
+				}
+			}
+		});
+		result.whenComplete((move, error) -> {
+			if (error != null) {
+				task.cancel(true);
+			}
+		});
+		return enforce(result, deadline);
+	}
+	
+	/**
+	 * Chooses the move to play without modifying the game.
+	 * 
+	 * @param game		the current game state, which is not over.
+	 * @param deadline	the time by which the move should be chosen.
+	 * @return the move chosen.
+	 */
+	protected Move selectMove(Game game, Deadline deadline) {
 			
 		// Get the available moves
 		Game copy = game.copy();
@@ -88,12 +143,13 @@ public class ComputerPlayer extends Player {
 			Move m = moves.get(i);
 			if (bestWeight == m.getWeight()) {
 				if (move == 0) {
-					game.move(m.getStartIndex(), m.getEndIndex());
+					return m;
 				} else {
 					move --;
 				}
 			}
 		}
+		return null;
 	}
 	
 	/**
@@ -114,7 +170,7 @@ public class ComputerPlayer extends Player {
 				Game copy = game.copy();
 				int startIndex = game.getSkipIndex(), endIndex = Board.toIndex(end);
 				copy.move(startIndex,endIndex);
-				moves.add(new Move(startIndex, endIndex, copy.goodHeuristic(!copy.isP2Turn())));
+				moves.add(new Move(startIndex, endIndex, copy.goodHeuristic(!copy.isP2Turn(), evalParams)));
 			}
 			
 			return moves;
@@ -140,7 +196,7 @@ public class ComputerPlayer extends Player {
 				Game copy = game.copy();
 				int endIndex = Board.toIndex(end);
 				copy.move(index,endIndex);
-				Move m = new Move(index, endIndex, copy.goodHeuristic(!copy.isP2Turn()));
+				Move m = new Move(index, endIndex, copy.goodHeuristic(!copy.isP2Turn(), evalParams));
 				m.changeWeight(WEIGHT_SKIP);
 				moves.add(m);
 			}
@@ -155,7 +211,8 @@ public class ComputerPlayer extends Player {
 					Game copy = game.copy();
 					int endIndex = Board.toIndex(end);
 					copy.move(index,endIndex);
-					Move m = new Move(index, endIndex, copy.goodHeuristic(!copy.isP2Turn()));
+					Move m = new Move(index, endIndex, copy.goodHeuristic(!copy.isP2Turn(), evalParams));
+					moves.add(m);
 				}
 			}
 		}
@@ -297,4 +354,18 @@ public class ComputerPlayer extends Player {
 	public void setLevel(int level) {
 		this.level = level;
 	}
+	
+	/**
+	 * Sets the weights of the evaluation of this player, so that players
+	 * with different weights can play each other.
+	 * 
+	 * @param evalParams	the weights, see {@link EvalParams#getDefault()}.
+	 */
+	public void setEvalParams(EvalParams evalParams) {
+		this.evalParams = evalParams;
+	}
+	
+	public EvalParams getEvalParams() {
+		return evalParams;
+	}
 }
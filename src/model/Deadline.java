@@ -0,0 +1,121 @@
+/* Name: Deadline
+ * Description: This class represents the point in time by which a player has
+ * to choose its move.
+ */
+
+package src.model;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@code Deadline} class is an immutable point in time, measured with
+ * {@link System#nanoTime()}, by which a move has to be chosen. A deadline can
+ * be {@link #none()}, in which case it never expires.
+ */
+public final class Deadline {
+	
+	/** The value of {@link #time} for a deadline that never expires. */
+	private static final long NEVER = Long.MAX_VALUE;
+	
+	/** The deadline that never expires. */
+	private static final Deadline NONE = new Deadline(NEVER);
+	
+	/** The thread completing futures whose deadline expired. */
+	private static final ScheduledExecutorService TIMER =
+			Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "deadline-timer");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	/** The expiry time, from {@link System#nanoTime()}. */
+	private final long time;
+	
+	private Deadline(long time) {
+		this.time = time;
+	}
+	
+	/**
+	 * Gets a deadline that never expires.
+	 * 
+	 * @return the deadline without a time limit.
+	 */
+	public static Deadline none() {
+		return NONE;
+	}
+	
+	/**
+	 * Creates a deadline some time from now.
+	 * 
+	 * @param millis	the number of milliseconds from now.
+	 * @return the deadline expiring after the given time.
+	 */
+	public static Deadline in(long millis) {
+		return new Deadline(System.nanoTime()
+				+ TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis)));
+	}
+	
+	/**
+	 * Creates a deadline expiring a little before this one, e.g. to leave a
+	 * search some time to return its move.
+	 * 
+	 * @param millis	the number of milliseconds to take off.
+	 * @return the earlier deadline, or this one if it never expires.
+	 */
+	public Deadline earlier(long millis) {
+		return isNone()? this :
+			new Deadline(time - TimeUnit.MILLISECONDS.toNanos(millis));
+	}
+	
+	public boolean isNone() {
+		return time == NEVER;
+	}
+	
+	public boolean isExpired() {
+		return !isNone() && System.nanoTime() - time >= 0;
+	}
+	
+	/**
+	 * Gets the time left before this deadline expires.
+	 * 
+	 * @return the number of nanoseconds left (negative once expired), or
+	 * {@link Long#MAX_VALUE} if there is no deadline.
+	 */
+	public long remainingNanos() {
+		return isNone()? Long.MAX_VALUE : time - System.nanoTime();
+	}
+	
+	/**
+	 * Enforces this deadline on a future: if the future is not done when the
+	 * deadline expires, it is completed with a
+	 * {@link DeadlineExceededException}.
+	 * 
+	 * @param future	the future to complete in time.
+	 * @return the same future.
+	 */
+	public <T> CompletableFuture<T> enforce(final CompletableFuture<T> future) {
+		if (isNone() || future.isDone()) {
+			return future;
+		}
+		final ScheduledFuture<?> timeout = TIMER.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				future.completeExceptionally(
+						new DeadlineExceededException(Deadline.this));
+			}
+		}, Math.max(0, remainingNanos()), TimeUnit.NANOSECONDS);
+		future.whenComplete((result, error) -> timeout.cancel(false));
+		return future;
+	}
+	
+	@Override
+	public String toString() {
+		return isNone()? "Deadline[none]" : "Deadline[remaining="
+				+ TimeUnit.NANOSECONDS.toMillis(remainingNanos()) + "ms]";
+	}
+}
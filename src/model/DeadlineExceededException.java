@@ -0,0 +1,28 @@
+/* Name: DeadlineExceededException
+ * Description: This exception is raised when a player did not choose its move
+ * before its deadline.
+ */
+
+package src.model;
+
+/**
+ * The {@code DeadlineExceededException} class completes the future returned by
+ * {@link Player#chooseMove(GameSnapshot, Deadline)} when no move was chosen
+ * before the deadline expired.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+	private static final long serialVersionUID = 4209617155360924877L;
+	
+	/** The deadline that expired. */
+	private final Deadline deadline;
+	
+	public DeadlineExceededException(Deadline deadline) {
+		super("No move was chosen before the deadline");
+		this.deadline = deadline;
+	}
+	
+	public Deadline getDeadline() {
+		return deadline;
+	}
+}
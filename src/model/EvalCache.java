@@ -0,0 +1,140 @@
+/* Name: EvalCache
+ * Description: This class caches the evaluation of game states.
+ */
+
+package src.model;
+
+import java.util.Arrays;
+
+/**
+ * The {@code EvalCache} class is a fixed-size cache of static evaluations,
+ * indexed by state key. Each key has a single slot, which a new entry simply
+ * overwrites: evaluations are cheap enough to compute again, so the cache
+ * only needs to catch the states that come back often, such as transpositions
+ * between the iterations of a search.
+ * <p>
+ * The {@link MemoryBudget} may resize the cache, which then starts empty at
+ * its next {@link #newSearch()}.
+ */
+public class EvalCache implements MemoryBudget.Cache {
+	
+	/** The number of bytes of a slot. */
+	private static final int SLOT_BYTES = 12;
+	
+	/** The fewest slots of a cache, as a power of 2. */
+	private static final int MIN_BITS = 8;
+	
+	/** The keys of the cached states. */
+	private long[] keys;
+	
+	/** The evaluations of the cached states. */
+	private int[] values;
+	
+	/** The number of slots minus one, to turn a key into a slot index. */
+	private int mask;
+	
+	/** The number of slots the cache was created with, as a power of 2. */
+	private final int wantedBits;
+	
+	/** The number of slots to change to at the next search, or -1. */
+	private volatile int pendingBits = -1;
+	
+	/** The memory of the arrays, in bytes. */
+	private volatile long bytes;
+	
+	/** The number of lookups, and how many of them found an entry. */
+	private long probes, hits;
+	
+	/**
+	 * Creates an empty cache.
+	 * 
+	 * @param bits	the number of slots is 2 to the power of bits.
+	 */
+	public EvalCache(int bits) {
+		this.wantedBits = bits;
+		allocate(bits);
+	}
+	
+	/**
+	 * Checks if the evaluation of a state is cached. If so, it can be read
+	 * with {@link #getValue(long)} until the next {@link #add(long, int)}.
+	 * 
+	 * @param key	the key of the state.
+	 * @return true if the evaluation of the state is cached.
+	 */
+	public boolean contains(long key) {
+		probes ++;
+		// Key 0 is the empty board, which is never evaluated
+		if (key != 0 && keys[slot(key)] == key) {
+			hits ++;
+			return true;
+		}
+		return false;
+	}
+	
+	public int getValue(long key) {
+		return values[slot(key)];
+	}
+	
+	public void add(long key, int value) {
+		int slot = slot(key);
+		keys[slot] = key;
+		values[slot] = value;
+	}
+	
+	/**
+	 * Forgets all the evaluations, keeping the size of the cache.
+	 */
+	public void clear() {
+		Arrays.fill(keys, 0);
+	}
+	
+	public long getProbes() {
+		return probes;
+	}
+	
+	public long getHits() {
+		return hits;
+	}
+	
+	/**
+	 * Applies the size asked for by {@link #resize(long)}, if any. It must
+	 * be called by the thread using the cache, between two searches.
+	 */
+	public void newSearch() {
+		int pending = pendingBits;
+		if (pending >= 0) {
+			this.pendingBits = -1;
+			if (pending != Integer.numberOfTrailingZeros(keys.length)) {
+				allocate(pending);
+			}
+		}
+	}
+	
+	@Override
+	public long getBytes() {
+		return bytes;
+	}
+	
+	@Override
+	public long getWantedBytes() {
+		return (long) SLOT_BYTES << wantedBits;
+	}
+	
+	@Override
+	public void resize(long bytes) {
+		int bits = 63 - Long.numberOfLeadingZeros(Math.max(1, bytes / SLOT_BYTES));
+		this.pendingBits = Math.max(MIN_BITS, Math.min(wantedBits, bits));
+	}
+	
+	private void allocate(int bits) {
+		this.keys = new long[1 << bits];
+		this.values = new int[1 << bits];
+		this.mask = (1 << bits) - 1;
+		this.bytes = (long) SLOT_BYTES << bits;
+	}
+	
+	private int slot(long key) {
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+}
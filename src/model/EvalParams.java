@@ -0,0 +1,256 @@
+/* Name: EvalParams
+ * Description: This class holds the weights of the handcrafted evaluation
+ * of a player, and reads and writes them so that tuned weights can be given
+ * to the game.
+ */
+
+package src.model;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Properties;
+
+/**
+ * The {@code EvalParams} class holds the weights of
+ * {@link Game#goodHeuristic(boolean, EvalParams)}. It can't be changed, so the
+ * players, their search threads and a tuner can share or each have their
+ * own without any synchronisation: two players with different weights can
+ * play each other in the same process. As an {@link Evaluator}, it scores
+ * the states with goodHeuristic and its weights.
+ * <p>
+ * The weights are also given as an array in the order of their names. A
+ * weights file is a properties file with a line {@code name = value} per
+ * weight, the weights it leaves out keeping their value in
+ * {@link #HANDPICKED}. The file named by {@link #WEIGHTS_PROPERTY} gives the
+ * weights of {@link #getDefault()}.
+ */
+public final class EvalParams implements Evaluator {
+
+	/** The system property naming the weights file of the players. */
+	public static final String WEIGHTS_PROPERTY = "checkers.weights";
+
+	/** The names of the weights. */
+	private static final String[] NAMES = {"piece_val", "king_val",
+			"move_val", "jumps", "piece_row_advance",
+			"piece_middle_center_squares", "piece_middle_side_squares",
+			"piece_center_goalies", "piece_side_goalies",
+			"piece_double_corner", "is_home_free", "dist_factor"};
+
+	/** The number of weights. */
+	public static final int COUNT = NAMES.length;
+
+	/** The weights picked by hand. */
+	public static final EvalParams HANDPICKED = new EvalParams(
+			new int[] {30, 80, 2, 6, 1, 4, -2, 10, 8, 4, 15, 5});
+
+	/** The value of a checker, and of a king. */
+	public final int piece_val, king_val;
+
+	/**
+	 * The value of a simple move when a player has no skip, and of a skip
+	 * otherwise.
+	 */
+	public final int move_val, jumps;
+
+	/** The value of each row a checker has advanced. */
+	public final int piece_row_advance;
+
+	/** The value of a checker in the middle of the board. */
+	public final int piece_middle_center_squares, piece_middle_side_squares;
+
+	/** The value of a checker kept on its home row. */
+	public final int piece_center_goalies, piece_side_goalies,
+			piece_double_corner;
+
+	/** The value of a checker past all the opponent's pieces. */
+	public final int is_home_free;
+
+	/**
+	 * The penalty per unit of distance from the kings of the side with more
+	 * kings to the other's checkers, in the endgame.
+	 */
+	public final int dist_factor;
+
+	private EvalParams(int[] weights) {
+		this.piece_val = weights[0];
+		this.king_val = weights[1];
+		this.move_val = weights[2];
+		this.jumps = weights[3];
+		this.piece_row_advance = weights[4];
+		this.piece_middle_center_squares = weights[5];
+		this.piece_middle_side_squares = weights[6];
+		this.piece_center_goalies = weights[7];
+		this.piece_side_goalies = weights[8];
+		this.piece_double_corner = weights[9];
+		this.is_home_free = weights[10];
+		this.dist_factor = weights[11];
+	}
+
+	/**
+	 * Creates the parameters of an array of weights.
+	 *
+	 * @param weights	the {@link #COUNT} weights, which are copied.
+	 * @return the parameters.
+	 */
+	public static EvalParams of(int[] weights) {
+		if (weights.length != COUNT) {
+			throw new IllegalArgumentException(weights.length + " weights");
+		}
+		return new EvalParams(weights);
+	}
+
+	/**
+	 * Gets the parameters of the players: those of the file named by
+	 * {@link #WEIGHTS_PROPERTY}, read the first time, or {@link #HANDPICKED}.
+	 * An error is reported once on the standard error stream.
+	 *
+	 * @return the default parameters.
+	 */
+	public static EvalParams getDefault() {
+		return Default.PARAMS;
+	}
+
+	/**
+	 * @return the name of a weight.
+	 */
+	public static String getName(int weight) {
+		return NAMES[weight];
+	}
+
+	/**
+	 * @return a new array of the {@link #COUNT} weights.
+	 */
+	public int[] toArray() {
+		return new int[] {piece_val, king_val, move_val, jumps,
+				piece_row_advance, piece_middle_center_squares,
+				piece_middle_side_squares, piece_center_goalies,
+				piece_side_goalies, piece_double_corner, is_home_free,
+				dist_factor};
+	}
+
+	@Override
+	public int evaluate(Game game, boolean player) {
+		return game.goodHeuristic(player, this);
+	}
+
+	@Override
+	public long getFingerprint() {
+		long hash = COUNT;
+		for (int weight : toArray()) {
+			hash = Zobrist.combine(hash, weight);
+		}
+		return hash;
+	}
+
+	/**
+	 * Reads a weights file.
+	 *
+	 * @param file	the file.
+	 * @return the weights of the file, and those of {@link #HANDPICKED} it
+	 * leaves out.
+	 * @throws IOException if the file could not be read, or names an unknown
+	 * weight or a value which is not an integer.
+	 */
+	public static EvalParams read(Path file) throws IOException {
+		Properties properties = new Properties();
+		try (Reader reader = Files.newBufferedReader(file,
+				StandardCharsets.UTF_8)) {
+			properties.load(reader);
+		}
+		int[] weights = HANDPICKED.toArray();
+		for (String name : properties.stringPropertyNames()) {
+			int weight = indexOf(name);
+			if (weight < 0) {
+				throw new IOException(file + ": unknown weight " + name);
+			}
+			try {
+				weights[weight] = Integer.parseInt(
+						properties.getProperty(name).trim());
+			} catch (NumberFormatException e) {
+				throw new IOException(file + ": " + name + " is not an"
+						+ " integer");
+			}
+		}
+		return new EvalParams(weights);
+	}
+
+	/**
+	 * Writes the weights to a file, replacing it at once when it is
+	 * complete.
+	 *
+	 * @param file		the file.
+	 * @param comment	the first line of the file, or null.
+	 * @throws IOException if the file could not be written.
+	 */
+	public void write(Path file, String comment) throws IOException {
+		int[] weights = toArray();
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temp,
+				StandardCharsets.UTF_8)) {
+			if (comment != null) {
+				writer.write("# " + comment);
+				writer.newLine();
+			}
+			for (int i = 0; i < COUNT; i ++) {
+				writer.write(NAMES[i] + " = " + weights[i]);
+				writer.newLine();
+			}
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static int indexOf(String name) {
+		for (int i = 0; i < COUNT; i ++) {
+			if (NAMES[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof EvalParams
+				&& Arrays.equals(toArray(), ((EvalParams) o).toArray());
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(toArray());
+	}
+
+	/**
+	 * The default parameters, read when first used. A holder class rather
+	 * than a synchronized getter, as every evaluation without parameters of
+	 * its own asks for them.
+	 */
+	private static final class Default {
+
+		static final EvalParams PARAMS = load();
+
+		private static EvalParams load() {
+			String name = System.getProperty(WEIGHTS_PROPERTY);
+			if (name != null && !name.isEmpty()) {
+				try {
+					return read(Paths.get(name));
+				} catch (IOException e) {
+					System.err.println("Weights not read: " + e.getMessage());
+				}
+			}
+			return HANDPICKED;
+		}
+	}
+}
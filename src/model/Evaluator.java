@@ -0,0 +1,59 @@
+/* Name: Evaluator
+ * Description: This interface represents the static evaluation of the game
+ * states at the leaves of a search.
+ */
+
+package src.model;
+
+/**
+ * The {@code Evaluator} interface scores a game state for a player without
+ * searching, the higher the better for the player. The search players use
+ * the handcrafted evaluation with their {@link EvalParams}, unless a
+ * {@link Network} is given with {@code -Dcheckers.network=path}.
+ */
+public interface Evaluator {
+
+	/** The system property naming the network file of the search players. */
+	String NETWORK_PROPERTY = "checkers.network";
+
+	/**
+	 * Scores a game state.
+	 *
+	 * @param game		the state to score.
+	 * @param player	the player the score is for, true for black.
+	 * @return the score of the state for the player.
+	 */
+	int evaluate(Game game, boolean player);
+
+	/**
+	 * Prepares the state at the root of a search, before the moves are made
+	 * on copies of it. An evaluator can keep in the state what it updates
+	 * from one move to the next.
+	 *
+	 * @param game	the root state, a copy owned by the search.
+	 */
+	default void attach(Game game) {
+	}
+
+	/**
+	 * Gets a hash of what the evaluator computes, its weights, so that the
+	 * scores it gave are not mixed with those of another one, e.g. in a
+	 * {@link TableFile}.
+	 *
+	 * @return the same value for evaluators scoring the same, most likely
+	 * another one otherwise.
+	 */
+	long getFingerprint();
+
+	/**
+	 * Gets the evaluator of the search players: the network of
+	 * {@code -Dcheckers.network} if it is set and can be read, the
+	 * handcrafted evaluation with the default weights otherwise.
+	 *
+	 * @return the default evaluator.
+	 */
+	static Evaluator getDefault() {
+		return Network.getDefault() != null? Network.getDefault()
+				: EvalParams.getDefault();
+	}
+}
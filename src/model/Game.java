@@ -18,18 +18,12 @@ import src.logic.MoveLogic;
  */
 public class Game {
 	
-	public static int piece_val = 30;
-	public static int king_val = 80;
-	public static int move_val = 2;
-	public static int jumps = 6;
-	public static int piece_row_advance = 1;
-	public static int piece_middle_center_squares = 4;
-	public static int piece_middle_side_squares = -2;
-	public static int piece_center_goalies = 10;
-	public static int piece_side_goalies = 8;
-	public static int piece_double_corner = 4;
-	public static int is_home_free = 15;
-	public static int dist_factor = 5;
+	/** The number of plies without a capture or a checker (non-king) move
+	 * after which the game is a draw. */
+	public static final int NO_PROGRESS_LIMIT = 80;
+	
+	/** The number of times a state has to occur for the game to be a draw. */
+	public static final int REPETITION_LIMIT = 3;
 
 	/** The current state of the checker board. */
 	private Board board;
@@ -40,6 +34,18 @@ public class Game {
 	/** The index of the last skip, to allow for multiple skips in a turn. */
 	private int skipIndex;
 	
+	/** The Zobrist key of the current state. */
+	private long key;
+	
+	/** The Zobrist key of the mirror of the current state. */
+	private long mirrorKey;
+	
+	/** The keys of the states reached since the last irreversible move. */
+	private History history;
+	
+	/** The first layer of the network evaluating the state, may be null. */
+	private Network.Accumulator accumulator;
+	
 	public Game() {
 		restart();
 	}
@@ -52,6 +58,7 @@ public class Game {
 		this.board = (board == null)? new Board() : board;
 		this.isP2Turn = isP1Turn;
 		this.skipIndex = skipIndex;
+		resetHistory();
 	}
 	
 	/**
@@ -61,11 +68,18 @@ public class Game {
 	 * @return an exact copy of this game.
 	 */
 	public Game copy() {
-		Game g = new Game();
-		g.board = board.copy();
-		g.isP2Turn = isP2Turn;
-		g.skipIndex = skipIndex;
-		return g;
+		return new Game(this);
+	}
+	
+	private Game(Game game) {
+		this.board = game.board.copy();
+		this.isP2Turn = game.isP2Turn;
+		this.skipIndex = game.skipIndex;
+		this.key = game.key;
+		this.mirrorKey = game.mirrorKey;
+		this.history = game.history;
+		this.accumulator = (game.accumulator == null)? null
+				: game.accumulator.copy();
 	}
 	
 	/**
@@ -75,6 +89,18 @@ public class Game {
 		this.board = new Board();
 		this.isP2Turn = false;
 		this.skipIndex = -1;
+		resetHistory();
+	}
+	
+	/**
+	 * Forgets the states reached so far and makes the current state the first
+	 * one of the game.
+	 */
+	private void resetHistory() {
+		this.key = Zobrist.hash(board, isP2Turn, skipIndex);
+		this.mirrorKey = Zobrist.mirrorHash(board, isP2Turn, skipIndex);
+		this.history = new History(key, 0, null);
+		this.accumulator = null;
 	}
 	
 	/**
@@ -116,6 +142,9 @@ public class Game {
 		// Make the move
 		Point middle = Board.middle(startIndex, endIndex);
 		int midIndex = Board.toIndex(middle);
+		int startId = board.get(startIndex), midId = board.get(midIndex);
+		boolean wasP2Turn = isP2Turn;
+		int lastSkip = skipIndex;
 		this.board.set(endIndex, board.get(startIndex));
 		this.board.set(midIndex, Board.EMPTY);
 		this.board.set(startIndex, Board.EMPTY);
@@ -146,6 +175,28 @@ public class Game {
 			this.skipIndex = -1;
 		}
 		
+		// Update the key and remember the new state. Captures and checker
+		// moves can't be undone, so no earlier state can occur again.
+		int endId = board.get(endIndex);
+		this.key ^= Zobrist.piece(startId, startIndex)
+				^ Zobrist.piece(midId, midIndex)
+				^ Zobrist.piece(endId, endIndex)
+				^ Zobrist.side(wasP2Turn) ^ Zobrist.side(isP2Turn)
+				^ Zobrist.skip(lastSkip) ^ Zobrist.skip(skipIndex);
+		this.mirrorKey ^= Zobrist.mirrorPiece(startId, startIndex)
+				^ Zobrist.mirrorPiece(midId, midIndex)
+				^ Zobrist.mirrorPiece(endId, endIndex)
+				^ Zobrist.mirrorSide(wasP2Turn) ^ Zobrist.mirrorSide(isP2Turn)
+				^ Zobrist.mirrorSkip(lastSkip) ^ Zobrist.mirrorSkip(skipIndex);
+		if (accumulator != null) {
+			accumulator.move(startId, startIndex, midId, midIndex, endId,
+					endIndex);
+		}
+		boolean progress = midValid || startId == Board.BLACK_CHECKER
+				|| startId == Board.WHITE_CHECKER;
+		this.history = progress? new History(key, 0, null) :
+			new History(key, history.noProgress + 1, history);
+		
 		return true;
 	}
 	
@@ -160,11 +211,16 @@ public class Game {
 	
 	/**
 	 * Determines if the game is over. The game is over if one or both players
-	 * cannot make a single move during their turn.
+	 * cannot make a single move during their turn, or if it is a draw.
 	 * 
 	 * @return true if the game is over.
 	 */
 	public boolean isGameOver() {
+		
+		// Draws end the game too
+		if (isDraw()) {
+			return true;
+		}
 
 		// Ensure there is at least one of each checker
 		List<Point> black = board.find(Board.BLACK_CHECKER);
@@ -192,6 +248,78 @@ public class Game {
 		return true;
 	}
 	
+	/**
+	 * Determines if the game is a draw. The game is a draw if the current
+	 * state occurred {@link #REPETITION_LIMIT} times, or if no capture or
+	 * checker move was made in the last {@link #NO_PROGRESS_LIMIT} plies.
+	 * 
+	 * @return true if the game is a draw.
+	 * @see #getRepetitions()
+	 */
+	public boolean isDraw() {
+		return history.noProgress >= NO_PROGRESS_LIMIT
+				|| getRepetitions() + 1 >= REPETITION_LIMIT;
+	}
+	
+	/**
+	 * Counts how many times the current state occurred before in this game.
+	 * Only the states since the last capture or checker move are kept, as
+	 * the earlier ones can't occur again.
+	 * 
+	 * @return the number of earlier occurrences of the current state.
+	 */
+	public int getRepetitions() {
+		int count = 0;
+		for (History h = history.previous; h != null; h = h.previous) {
+			if (h.key == key) {
+				count ++;
+			}
+		}
+		return count;
+	}
+	
+	/**
+	 * Gets the number of plies made since the last capture or checker move.
+	 * 
+	 * @return the number of plies without progress.
+	 */
+	public int getNoProgressCount() {
+		return history.noProgress;
+	}
+	
+	/**
+	 * Gets the Zobrist key of the current state. Two games in the same state
+	 * have the same key, whatever moves led to it.
+	 * 
+	 * @return the 64-bit key of the current state.
+	 * @see Zobrist
+	 */
+	public long getKey() {
+		return key;
+	}
+	
+	/**
+	 * Gets the key shared by the current state and its mirror, the same state
+	 * rotated by 180 degrees with the colours and the turn swapped. The score
+	 * of one state for a player is the score of the other for the opponent.
+	 * 
+	 * @return the canonical key of the current state.
+	 * @see #isMirrored()
+	 */
+	public long getCanonicalKey() {
+		return Zobrist.canonical(key, mirrorKey);
+	}
+	
+	/**
+	 * Checks if the {@link #getCanonicalKey() canonical key} is the key of
+	 * the mirrored state rather than of the current one.
+	 * 
+	 * @return true if the canonical key is the key of the mirrored state.
+	 */
+	public boolean isMirrored() {
+		return mirrorKey < key;
+	}
+	
 	public int baciscHeuristic(boolean player) {
 		int value = 0;
 		
@@ -210,7 +338,27 @@ public class Game {
 		return value;
 	}
 	
+	/**
+	 * Scores the state for a player with the default weights.
+	 * 
+	 * @param player	the player the score is for, true for black.
+	 * @return the score, the higher the better for the player.
+	 * @see EvalParams#getDefault()
+	 */
 	public int goodHeuristic(boolean player) {
+		return goodHeuristic(player, EvalParams.getDefault());
+	}
+	
+	/**
+	 * Scores the state for a player: the material, the position of the
+	 * checkers, the mobility and, in the endgame, the distance from the kings
+	 * to the checkers they chase.
+	 * 
+	 * @param player	the player the score is for, true for black.
+	 * @param params	the weights of the terms.
+	 * @return the score, the higher the better for the player.
+	 */
+	public int goodHeuristic(boolean player, EvalParams params) {
 		int score = 0;
 		  int min_material, max_material;
 		  int max_red_row = -1;
@@ -228,16 +376,16 @@ public class Game {
 			  Point point = checkers1.get(i);
 			  int index = Board.toIndex(point);
 			  if (index == 13 || index == 14 || index == 17 || index == 18)
-				  tscore += piece_middle_center_squares;
+				  tscore += params.piece_middle_center_squares;
 				else if (index == 12 || index == 16 || index == 15 || index == 19)
-			          tscore += piece_middle_side_squares;
+			          tscore += params.piece_middle_side_squares;
 				else if (index == 0 || index == 3)
-				    tscore += piece_side_goalies;
+				    tscore += params.piece_side_goalies;
 				  else if (index == 1 || index == 2)
-				    tscore += piece_center_goalies;
+				    tscore += params.piece_center_goalies;
 				  if (index == 0 || index == 4)
-				    tscore += piece_double_corner;
-				  tscore += point.y * piece_row_advance;
+				    tscore += params.piece_double_corner;
+				  tscore += point.y * params.piece_row_advance;
 				  if (point.y < min_black_row)
 				      min_black_row = point.y;
 				  if(player)
@@ -259,16 +407,16 @@ public class Game {
 			  Point point = checkers2.get(i);
 			  int index = Board.toIndex(point);
 			  if (index == 13 || index == 14 || index == 17 || index == 18)
-				  tscore += piece_middle_center_squares;
+				  tscore += params.piece_middle_center_squares;
 				else if (index == 12 || index == 16 || index == 15 || index == 19)
-			          tscore += piece_middle_side_squares;
+			          tscore += params.piece_middle_side_squares;
 				else if (index == 28 || index == 31)
-				    tscore += piece_side_goalies;
+				    tscore += params.piece_side_goalies;
 				  else if (index == 29 || index == 30)
-				    tscore += piece_center_goalies;
+				    tscore += params.piece_center_goalies;
 				  if (index == 27 || index == 31)
-				    tscore += piece_double_corner;
-				  tscore += (7 - point.y) * piece_row_advance;
+				    tscore += params.piece_double_corner;
+				  tscore += (7 - point.y) * params.piece_row_advance;
 				  if (point.y > max_red_row)
 				      max_red_row = point.y;
 				  if(player)
@@ -288,22 +436,22 @@ public class Game {
 			  Point point = checkers1.get(i);
 			  if (point.y >= max_red_row) { 
 				  if(player)
-					  score += is_home_free;
+					  score += params.is_home_free;
 				  else
-					  score -= is_home_free;
+					  score -= params.is_home_free;
 			  }
 		  }
 		  for(int i = 0; i < checkers2.size(); i++) {
 			  Point point = checkers2.get(i);
 			  if (point.y <= min_black_row) {
 				  if(player)
-					  score -= is_home_free;
+					  score -= params.is_home_free;
 				  else
-					  score += is_home_free;
+					  score += params.is_home_free;
 			  }
 		  }
 		  
-		  int black_material = black_pieces * piece_val + black_kings * king_val, red_material = red_pieces * piece_val + red_kings * king_val;
+		  int black_material = black_pieces * params.piece_val + black_kings * params.king_val, red_material = red_pieces * params.piece_val + red_kings * params.king_val;
 
 		  if (red_material > black_material) {
 		    max_material = red_material;
@@ -325,28 +473,34 @@ public class Game {
 		    possible legal moves.
 		    */
 		  
-		  int moves = Move.getMovesStats(this, true, true);
+		  boolean own = isP2Turn == player;
+		  int moves = Move.getMovesStats(this, own, true);
 		  if(moves == 0) 
-			  score += Move.getMovesStats(this, true, false) * move_val;
+			  score += Move.getMovesStats(this, own, false) * params.move_val;
 		  else
-			  score += moves * jumps;
+			  score += moves * params.jumps;
 
-		  moves = Move.getMovesStats(this, false, true);
+		  moves = Move.getMovesStats(this, !own, true);
 		  if(moves == 0) 
-			  score -= Move.getMovesStats(this, false, false) * move_val;
+			  score -= Move.getMovesStats(this, !own, false) * params.move_val;
 		  else
-			  score -= moves * jumps;
+			  score -= moves * params.jumps;
 		  
 		  /* bonus for each man who has a free shot at becoming king, penalty
 		     for each opponent who has a free path.
 		     */
 		  
-		  int outnumber = player? black_kings - red_kings: red_kings - black_kings;
-		  boolean end = player? red_pieces < 5: black_pieces < 5;
+		  /* penalty for the side with more kings, growing with the distance
+		     from its kings to the opponent's checkers, to make it chase them
+		     down in the endgame. The other side gets the same as a bonus so
+		     that the score stays the same seen from either side.
+		     */
+		  int outnumber = black_kings - red_kings;
+		  boolean end = outnumber > 0? red_pieces < 5: black_pieces < 5;
 
-		  if (outnumber > 0 && end) {
+		  if (outnumber != 0 && end) {
 			  float dist = 0;
-			  if(player) {
+			  if(outnumber > 0) {
 				  for(int i = 0; i < checkers2.size(); i++) {
 					  Point point = checkers2.get(i);
 					  for(int j = 0; j < kings1.size(); j++) {
@@ -364,7 +518,10 @@ public class Game {
 					  }
 				  }
 			  }
-			  score -= ((int) dist) * dist_factor;
+			  if(player == outnumber > 0)
+				  score -= ((int) dist) * params.dist_factor;
+			  else
+				  score += ((int) dist) * params.dist_factor;
 		  }
 		  return score;
 	}
@@ -375,12 +532,37 @@ public class Game {
 	
 	public void setP1Turn(boolean isP1Turn) {
 		this.isP2Turn = isP1Turn;
+		resetHistory();
 	}
 	
 	public int getSkipIndex() {
 		return skipIndex;
 	}
 	
+	/**
+	 * Gets the first layer of the network evaluating this state, which the
+	 * moves keep up to date.
+	 * 
+	 * @return the accumulator, or null if none was attached.
+	 * @see Network#attach(Game)
+	 */
+	Network.Accumulator getAccumulator() {
+		return accumulator;
+	}
+	
+	void setAccumulator(Network.Accumulator accumulator) {
+		this.accumulator = accumulator;
+	}
+	
+	/**
+	 * Counts the checkers and kings left on the board.
+	 * 
+	 * @return the number of pieces of both players.
+	 */
+	public int getPieceCount() {
+		return board.getPieceCount();
+	}
+	
 	/**
 	 * Gets the current game state as a string of data that can be parsed by
 	 * {@link #setGameState(String)}.
@@ -439,9 +621,32 @@ public class Game {
 				this.skipIndex = -1;
 			}
 		}
+		resetHistory();
 	}
 	
 	public String toString() {
 		return (this.isP2Turn?"1":"0") + this.board.toString();
 	}
+	
+	/**
+	 * The {@code History} class is a node of the stack of states reached in a
+	 * game. Nodes are never modified, so copies of a game share them.
+	 */
+	private static final class History {
+		
+		/** The key of the state. */
+		private final long key;
+		
+		/** The number of plies made since the last irreversible move. */
+		private final int noProgress;
+		
+		/** The previous state, or null if it can't occur again. */
+		private final History previous;
+		
+		private History(long key, int noProgress, History previous) {
+			this.key = key;
+			this.noProgress = noProgress;
+			this.previous = previous;
+		}
+	}
 }
@@ -0,0 +1,77 @@
+/* Name: GameSnapshot
+ * Description: This class is an immutable copy of a game state, handed to the
+ * players choosing a move.
+ */
+
+package src.model;
+
+/**
+ * The {@code GameSnapshot} class is an immutable game state. Players are given
+ * a snapshot instead of the live game so that they can think about it on any
+ * thread, for as long as they want, without affecting the game being played.
+ */
+public final class GameSnapshot {
+
+	/** The game state, in the format of {@link Game#getGameState()}. */
+	private final String state;
+	
+	/** A private copy of the game, which also holds the states reached so
+	 * far for the draw rules. It is never modified. */
+	private final Game game;
+	
+	private GameSnapshot(Game game) {
+		this.state = game.getGameState();
+		this.game = game;
+	}
+	
+	/**
+	 * Takes a snapshot of a game.
+	 * 
+	 * @param game	the game to copy.
+	 * @return the snapshot of the current state of the game.
+	 */
+	public static GameSnapshot of(Game game) {
+		return new GameSnapshot(game.copy());
+	}
+	
+	/**
+	 * Creates a new game from this snapshot, including the states reached
+	 * before it so that repetitions are still detected. Any modifications
+	 * made to the game do not affect the snapshot.
+	 * 
+	 * @return a game in the state of this snapshot.
+	 */
+	public Game toGame() {
+		return game.copy();
+	}
+	
+	/**
+	 * Checks if a move can be played from this snapshot.
+	 * 
+	 * @param move	the move to check.
+	 * @return true if and only if the move is legal in this state.
+	 */
+	public boolean isValidMove(Move move) {
+		return move != null && toGame().move(move);
+	}
+	
+	public String getState() {
+		return state;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof GameSnapshot
+				&& ((GameSnapshot) o).state.equals(state);
+	}
+	
+	@Override
+	public int hashCode() {
+		return state.hashCode();
+	}
+	
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[state=" + state + "]";
+	}
+}
@@ -6,12 +6,17 @@
 
 package src.model;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The {@code HumanPlayer} class represents a user of the checkers game that
  * can update the game by clicking on tiles on the board.
  */
 public class HumanPlayer extends Player {
 
+	/** The move this player was asked for, if any. */
+	private final MoveRequest request = new MoveRequest();
+
 	@Override
 	public boolean isHuman() {
 		return true;
@@ -24,4 +29,24 @@ public class HumanPlayer extends Player {
 	@Override
 	public void updateGame(Game game) {}
 
+	/**
+	 * Returns a move that is supplied by the user interface through
+	 * {@link #submitMove(Move)}.
+	 */
+	@Override
+	public CompletableFuture<Move> chooseMove(GameSnapshot snapshot,
+			Deadline deadline) {
+		return enforce(request.request(snapshot), deadline);
+	}
+	
+	/**
+	 * Supplies the move asked for by the last call to
+	 * {@link #chooseMove(GameSnapshot, Deadline)}.
+	 * 
+	 * @param move	the move chosen.
+	 * @return true if and only if a move was pending and this one is legal.
+	 */
+	public boolean submitMove(Move move) {
+		return request.complete(move);
+	}
 }
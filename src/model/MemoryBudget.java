@@ -0,0 +1,234 @@
+/* Name: MemoryBudget
+ * Description: This class shares the memory of the process between the caches
+ * of the search players.
+ */
+
+package src.model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.NotificationEmitter;
+
+/**
+ * The {@code MemoryBudget} class keeps the caches of all the search players
+ * of the process (transposition tables, evaluation caches) within a memory
+ * budget. Every second, and as soon as the garbage collector reports that
+ * the heap is nearly full, it compares the memory in use with two thresholds:
+ * <ul>
+ * <li>above {@link #HIGH_USAGE} of the heap, or above the budget, the caches
+ * are asked to shrink to half their size;</li>
+ * <li>below {@link #LOW_USAGE}, they are asked to grow back towards the size
+ * they were created with, within the budget.</li>
+ * </ul>
+ * The memory is shared in proportion to the size each cache wants.
+ * <p>
+ * A cache is only asked to resize: it applies the new size itself at its next
+ * safe point, usually the start of its next search (see
+ * {@link TranspositionTable#newSearch()}), so a running search is never
+ * stopped and never sees its cache change under it.
+ * <p>
+ * The budget is {@code -Dcheckers.memory.mb} megabytes, or half of the
+ * maximum heap by default. Caches are held weakly, so the caches of players
+ * no longer used simply drop out.
+ */
+public final class MemoryBudget {
+
+	/** The system property giving the budget, in MB. */
+	public static final String BUDGET_PROPERTY = "checkers.memory.mb";
+
+	/** The share of the heap held by long-lived objects above which caches shrink. */
+	public static final double HIGH_USAGE = 0.85;
+
+	/** The share of the heap held by long-lived objects below which caches grow. */
+	public static final double LOW_USAGE = 0.6;
+
+	/** The smallest size a cache is asked to shrink to. */
+	private static final long MIN_BYTES = 64 << 10;
+
+	/** The time between two checks, in milliseconds. */
+	private static final long CHECK_INTERVAL = 1000;
+
+	/**
+	 * The {@code Cache} interface is implemented by the caches whose memory
+	 * can be managed by the budget.
+	 */
+	public interface Cache {
+
+		/**
+		 * @return the memory the cache may use at its current size, in
+		 * bytes.
+		 */
+		long getBytes();
+
+		/**
+		 * @return the memory the cache would use if there were enough.
+		 */
+		long getWantedBytes();
+
+		/**
+		 * Asks the cache to resize, the next time it is safe to. It can be
+		 * called from any thread.
+		 *
+		 * @param bytes	the memory the cache may use.
+		 */
+		void resize(long bytes);
+	}
+
+	/** The budget of the process. */
+	private static final MemoryBudget INSTANCE = new MemoryBudget();
+
+	/** The registered caches. */
+	private final List<WeakReference<Cache>> caches = new ArrayList<>();
+
+	/** The maximum memory of all the caches, in bytes. */
+	private final long budget;
+
+	/** The heap pools holding long-lived objects, whose usage is checked. */
+	private final List<MemoryPoolMXBean> pools = new ArrayList<>();
+
+	/** Runs the checks, once the first cache registers. */
+	private ScheduledExecutorService checker;
+
+	private MemoryBudget() {
+		long max = Runtime.getRuntime().maxMemory();
+		String mb = System.getProperty(BUDGET_PROPERTY);
+		this.budget = mb != null? Long.parseLong(mb.trim()) << 20 : max / 2;
+
+		// Have the collector tell when a pool stays nearly full
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			// The young pools are emptied by every collection, so they do
+			// not tell how full the heap is
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()
+					&& pool.isUsageThresholdSupported()) {
+				pools.add(pool);
+				long poolMax = pool.getUsage().getMax();
+				if (pool.isCollectionUsageThresholdSupported() && poolMax > 0) {
+					pool.setCollectionUsageThreshold(
+							(long) (poolMax * HIGH_USAGE));
+				}
+			}
+		}
+		((NotificationEmitter) ManagementFactory.getMemoryMXBean())
+				.addNotificationListener((notification, handback) -> {
+					if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED
+							.equals(notification.getType())) {
+						check();
+					}
+				}, null, null);
+	}
+
+	/**
+	 * @return the memory budget of the process.
+	 */
+	public static MemoryBudget get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Adds a cache to the budget. It is asked to resize right away if the
+	 * budget is already used up.
+	 *
+	 * @param cache	the cache to manage.
+	 */
+	public synchronized void register(Cache cache) {
+		caches.add(new WeakReference<>(cache));
+		if (checker == null) {
+			this.checker = Executors.newSingleThreadScheduledExecutor(r -> {
+				Thread thread = new Thread(r, "memory-budget");
+				thread.setDaemon(true);
+				return thread;
+			});
+			checker.scheduleWithFixedDelay(this::check, CHECK_INTERVAL,
+					CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+		}
+		check();
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return the memory used by the registered caches, in bytes.
+	 */
+	public synchronized long getBytes() {
+		long bytes = 0;
+		for (Cache cache : live()) {
+			bytes += cache.getBytes();
+		}
+		return bytes;
+	}
+
+	/**
+	 * Compares the memory in use with the thresholds and the budget, and asks
+	 * the caches to resize if needed.
+	 */
+	public synchronized void check() {
+		List<Cache> live = live();
+		long used = 0, wanted = 0;
+		for (Cache cache : live) {
+			used += cache.getBytes();
+			wanted += cache.getWantedBytes();
+		}
+		if (live.isEmpty() || wanted <= 0) {
+			return;
+		}
+
+		// Pick the total the caches should use
+		double usage = heapUsage();
+		long target;
+		if (usage > HIGH_USAGE || used > budget) {
+			target = Math.min(budget, used / 2);
+		} else if (usage < LOW_USAGE && used < Math.min(budget, wanted)) {
+			target = Math.min(budget, Math.min(wanted, used * 2));
+		} else {
+			return;
+		}
+
+		// Share it in proportion to what each cache wants
+		for (Cache cache : live) {
+			long share = (long) ((double) target * cache.getWantedBytes()
+					/ wanted);
+			cache.resize(Math.max(MIN_BYTES, share));
+		}
+	}
+
+	/**
+	 * Gets the share of the space for long-lived objects that is used.
+	 */
+	private double heapUsage() {
+		long used = 0, max = 0;
+		for (MemoryPoolMXBean pool : pools) {
+			used += pool.getUsage().getUsed();
+			max += Math.max(0, pool.getUsage().getMax());
+		}
+		return (double) used / (max > 0? max : Runtime.getRuntime().maxMemory());
+	}
+
+	/**
+	 * Gets the caches still in use, forgetting the others.
+	 */
+	private List<Cache> live() {
+		List<Cache> live = new ArrayList<>();
+		for (Iterator<WeakReference<Cache>> it = caches.iterator();
+				it.hasNext();) {
+			Cache cache = it.next().get();
+			if (cache == null) {
+				it.remove();
+			} else {
+				live.add(cache);
+			}
+		}
+		return live;
+	}
+}
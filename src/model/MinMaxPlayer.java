@@ -6,12 +6,18 @@
 
 package src.model;
 
-import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import src.logic.MoveGenerator;
+import src.logic.BatchEvaluator;
+import src.logic.Bitboard;
+import src.logic.MoveLogic;
 
 /**
  * The {@code ComputerPlayer} class represents a computer player and updates
@@ -22,19 +28,325 @@ public class MinMaxPlayer extends ComputerPlayer {
     protected boolean player;
 
 
-    protected StateSet transpositionTableMax, transpositionTableMin;
+    /**
+     * The scores of the searched states. They are stored for black, under the canonical key of the
+     * state ( see {@link #tableScore(Game, int)} ), so that a state and its mirror share an entry.
+     */
+    protected TranspositionTable transpositionTable;
+
+    /** The static evaluations of the states, in the same frame as the transposition table. */
+    protected EvalCache evalCache;
+
+    /**
+     * The tables are kept from one move to the next (and between pondering and
+     * the real search). Past this number of entries, the entries not used
+     * recently make room for the new ones.
+     */
+    protected static final int TABLE_LIMIT = 3 << 19;
+
+    /** The evaluation cache has 2 to the power of this number of slots. */
+    protected static final int EVAL_CACHE_BITS = 16;
+
+    /**
+     * The difficulty levels ( Easy, Medium, Hard ) are the number of nodes a search may visit,
+     * so that every move costs about the same whatever the position.
+     */
+    protected static final long[] LEVEL_NODES = {2_000, 20_000, 200_000};
+
+    /** The score of a drawn state, neither player is better off. */
+    protected static final int DRAW_SCORE = 0;
+
+    /**
+     * The score of an endgame won according to the tablebase, less the number of turns to the
+     * win. It is far above any evaluation, so that a proven win is always preferred.
+     */
+    protected static final int TABLEBASE_WIN = 100_000;
+
+    /** The amplitude of the random noise added to the evaluation at each difficulty level. */
+    protected static final int[] LEVEL_NOISE = {25, 0, 0};
+
+    /** The deepest iteration of a search. */
+    protected static final int MAX_DEPTH = 64;
+
+    /** The number of nodes between two checks of the deadline and the progress report. */
+    private static final int CHECK_NODES = 1 << 8;
+
+    /** The minimum time between two progress reports, in nanoseconds. */
+    private static final long REPORT_INTERVAL = 250_000_000L;
+
+    /** The background search started by {@link #ponder(Game)}, if any. */
+    private Thread ponderThread;
+
+    /** The game state given to {@link #ponder(Game)}. */
+    private String ponderSource;
+
+    /** The predicted game state the ponder search is working on. */
+    private String ponderState;
+
+    /** The best move found by the ponder search. */
+    private volatile Move ponderMove;
+
+    /** Receives the progress of the searches, may be null. */
+    private volatile SearchListener searchListener;
+
+    /** The number of nodes visited by the current search. */
+    protected long nodes;
+
+    /** The number of draws found by {@link #isDraw(Game)}, whose score depends on the path. */
+    protected long historyDraws;
+
+    /** The depth, best line and score of the current search so far. */
+    protected int searchDepth, bestScore;
+    protected List<Move> bestLine;
+
+    /** When the current search started and last reported, from {@link System#nanoTime()}. */
+    private long searchStart, lastReport;
+
+    /** Held for reading by the searches of the games, and for writing by {@link #pauseSearches()}. */
+    private final ReadWriteLock searchLock = new ReentrantReadWriteLock();
+
+    /** Whether {@link #pauseSearches()} is stopping the running searches. */
+    private volatile boolean pausing;
+
+    /** The deadline of the current search, and whether it expired or the nodes ran out. */
+    private Deadline deadline = Deadline.none();
+    private boolean outOfBudget;
+
+    /** The number of nodes a search may visit, and the limit of the current search. */
+    private long nodeBudget, nodeLimit;
+
+    /** The amplitude of the noise added to the evaluation, 0 for none. */
+    private int evalNoise;
+
+    /** Picks the noise of each position, so that it does not change between visits. */
+    private final int noiseSeed = new Random().nextInt();
+
+    /** The fingerprint of the evaluation the scores of the transposition table come from. */
+    private long tableFingerprint;
+
+    /** The maximum depth of a search. */
+    private int maxDepth = MAX_DEPTH;
+
+    /** Whether a state and its mirror share their table entries. */
+    private boolean canonicalKeys = true;
+
+    /** The moves played without searching at the start of a game, may be null. */
+    private OpeningBook openingBook = OpeningBook.getDefault();
+
+    /** Picks among the moves of the book. */
+    private final Random bookRandom = new Random();
+
+    /** The exact values of the endgames with few pieces, may be null. */
+    private Tablebase tablebase = Tablebase.getDefault();
+
+    /** Scores the states at the leaves and orders the moves. */
+    private Evaluator evaluator = Evaluator.getDefault();
+
+    /** Whether the table was loaded from the file of {@link TableFile#FILE_PROPERTY}, or needs not be. */
+    private boolean warmStarted;
+
+    /**
+     * The moves of a state and the scores of the states after them, reused by {@link
+     * #getMoves(Game)}, which is done with them before the search goes deeper.
+     */
+    private final int[] moveEnds = new int[Bitboard.MAX_MOVES], moveScores = new int[Bitboard.MAX_MOVES];
+    private final BatchEvaluator moveBatch = new BatchEvaluator(Bitboard.MAX_MOVES);
 
     public MinMaxPlayer(boolean joueur) {
-        this.player = joueur;
-        this.transpositionTableMax = new StateSet();
-        this.transpositionTableMin = new StateSet();
+        this(joueur, -1);
     }
 
     public MinMaxPlayer(boolean joueur, int level) {
         this.player = joueur;
-        this.transpositionTableMax = new StateSet();
-        this.transpositionTableMin = new StateSet();
-        this.level = level;
+        this.transpositionTable = TranspositionTable.create(TABLE_LIMIT);
+        this.evalCache = new EvalCache(EVAL_CACHE_BITS);
+        registerCaches();
+        setLevel(level);
+    }
+
+    /**
+     * Sets the node budget and evaluation noise of a difficulty level ( Easy by default ).
+     */
+    @Override
+    public void setLevel(int level) {
+        super.setLevel(level);
+        int i = Math.max(0, Math.min(level, LEVEL_NODES.length - 1));
+        this.nodeBudget = LEVEL_NODES[i];
+        this.evalNoise = LEVEL_NOISE[i];
+        evaluationChanged();
+    }
+
+    /**
+     * @param nodes : The number of nodes a search may visit, 0 or less for no limit
+     */
+    public void setNodeBudget(long nodes) {
+        this.nodeBudget = nodes <= 0 ? Long.MAX_VALUE : nodes;
+    }
+
+    public long getNodeBudget() {
+        return nodeBudget;
+    }
+
+    /**
+     * @param noise : The amplitude of the random noise added to the evaluation, 0 for none
+     */
+    public void setEvalNoise(int noise) {
+        this.evalNoise = Math.max(0, noise);
+        evaluationChanged();
+    }
+
+    public int getEvalNoise() {
+        return evalNoise;
+    }
+
+    /**
+     * @return A hash of the evaluator and the noise, the same for the players which find the same
+     *         scores. A player with noise has its own, as its noise differs from that of the others
+     */
+    public long getEvalFingerprint() {
+        long fingerprint = Zobrist.combine(evaluator.getFingerprint(), evalNoise);
+        return evalNoise > 0 ? Zobrist.combine(fingerprint, noiseSeed) : fingerprint;
+    }
+
+    /**
+     * Forgets the scores of the transposition table if the evaluator or the noise changed them. A
+     * shared table is told the new evaluation instead, see {@link SharedTable}.
+     */
+    private void evaluationChanged() {
+        long fingerprint = getEvalFingerprint();
+        if (fingerprint != tableFingerprint) {
+            this.tableFingerprint = fingerprint;
+            transpositionTable.clear();
+            transpositionTable.setEvaluation(fingerprint);
+        }
+    }
+
+    /**
+     * @param canonical : Whether a state and its mirror ( see {@link Game#getCanonicalKey()} ) share
+     *                  their entries in the transposition table and the evaluation cache
+     */
+    public void setCanonicalKeys(boolean canonical) {
+        if (canonical != canonicalKeys) {
+            this.canonicalKeys = canonical;
+            this.transpositionTable.clear();
+            this.evalCache = new EvalCache(EVAL_CACHE_BITS);
+            MemoryBudget.get().register(evalCache);
+        }
+    }
+
+    public boolean isCanonicalKeys() {
+        return canonicalKeys;
+    }
+
+    public TranspositionTable getTranspositionTable() {
+        return transpositionTable;
+    }
+
+    /**
+     * Saves the deepest entries of the transposition table, e.g. to checkpoint a long analysis.
+     *
+     * @param file : The file to write, see {@link TableFile}
+     * @return The number of entries saved
+     * @throws IOException If the file could not be written
+     */
+    public long saveTable(Path file) throws IOException {
+        return TableFile.save(file, canonicalKeys, getEvalFingerprint(), TABLE_LIMIT,
+                transpositionTable);
+    }
+
+    /**
+     * Adds the entries saved by {@link #saveTable(Path)} to the transposition table.
+     *
+     * @param file : The file to read, see {@link TableFile}
+     * @return The number of entries loaded
+     * @throws IOException If the file could not be read, or was saved by a table of other keys or
+     *                     another evaluation
+     */
+    public long loadTable(Path file) throws IOException {
+        return TableFile.load(file, canonicalKeys, getEvalFingerprint(), transpositionTable);
+    }
+
+    public EvalCache getEvalCache() {
+        return evalCache;
+    }
+
+    /**
+     * Forgets the scores of the previous searches, so that the next one does the same work as the
+     * first search of a new player. The benchmarks measure searches this way, so the file of
+     * {@link TableFile#FILE_PROPERTY} is no longer loaded either.
+     */
+    public void clearTables() {
+        this.warmStarted = true;
+        transpositionTable.clear();
+        evalCache.clear();
+    }
+
+    /**
+     * @param book : The moves played without searching while the game is in the book, null for none.
+     *             The book of {@code -Dcheckers.book} by default, see {@link OpeningBook}
+     */
+    public void setOpeningBook(OpeningBook book) {
+        this.openingBook = book;
+    }
+
+    public OpeningBook getOpeningBook() {
+        return openingBook;
+    }
+
+    /**
+     * @param tablebase : The exact values of the endgames, which end the search of the states in it,
+     *                  null for none. The tablebase of {@code -Dcheckers.tablebase} by default
+     */
+    public void setTablebase(Tablebase tablebase) {
+        this.tablebase = tablebase;
+    }
+
+    public Tablebase getTablebase() {
+        return tablebase;
+    }
+
+    /**
+     * @param evaluator : The static evaluation of the states, see {@link Evaluator#getDefault()}. The scores
+     *                  already stored are forgotten, as they came from the previous one. A shared table keeps
+     *                  them for the other players of the previous one, but this player no longer finds them
+     */
+    public void setEvaluator(Evaluator evaluator) {
+        if (evaluator != this.evaluator) {
+            this.evaluator = evaluator;
+            this.evalCache = new EvalCache(EVAL_CACHE_BITS);
+            MemoryBudget.get().register(evalCache);
+            evaluationChanged();
+        }
+    }
+
+    public Evaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * @param evalParams : The weights of the move ordering and of the handcrafted evaluation. They become
+     *                   the evaluator too, unless it is a network
+     */
+    @Override
+    public void setEvalParams(EvalParams evalParams) {
+        super.setEvalParams(evalParams);
+        if (evaluator instanceof EvalParams) {
+            setEvaluator(evalParams);
+        }
+    }
+
+    /**
+     * @param depth : The maximum depth of a search, it stops earlier when it runs out of nodes
+     */
+    public void setMaxDepth(int depth) {
+        this.maxDepth = Math.max(1, Math.min(depth, MAX_DEPTH));
+    }
+
+    /**
+     * @return The number of nodes visited by the last search
+     */
+    public long getNodes() {
+        return nodes;
     }
 
     @Override
@@ -43,66 +355,460 @@ public class MinMaxPlayer extends ComputerPlayer {
     }
 
     @Override
-    public void updateGame(Game game) {
+    protected Move selectMove(Game game, Deadline deadline) {
+        Move book_move = bookMove(game);
+        if (book_move != null) {
+            stopPondering();
+            return book_move;
+        }
+        Move best_move = takePonderMove(game, deadline);
+        if (best_move == null) {
+            best_move = search(game, deadline);
+        }
+        return best_move;
+    }
+
+    /**
+     * @param game : The actual state of Game Board
+     * @return A move of the opening book for the state, or null if it is not in the book
+     */
+    protected Move bookMove(Game game) {
+        OpeningBook book = openingBook;
+        if (book == null) {
+            return null;
+        }
+        Move move = book.choose(game, bookRandom);
+
+        // A book made for another variant of the rules could hold an illegal move
+        if (move == null || !MoveLogic.isValidMove(game, move.getStartIndex(), move.getEndIndex())) {
+            return null;
+        }
+        return move;
+    }
+
+    /**
+     * @return The maximum depth to search in, the node budget usually stops the search before
+     */
+    protected int getDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @param game : The actual state of Game Board
+     * @return The best {@model.Move move} found by this player's search
+     */
+    protected Move search(Game game) {
+        return minimax(game, getDepth());
+    }
+
+    /**
+     * @param game     : The actual state of Game Board
+     * @param deadline : The time at which the search stops and returns its best move so far. It only
+     *                 holds for this search: the analyses and ponder searches after it have none
+     * @return The best {@model.Move move} found by this player's search
+     */
+    private Move search(Game game, Deadline deadline) {
+        searchLock.readLock().lock();
+        this.deadline = deadline;
+        try {
+            return search(game);
+        } finally {
+            this.deadline = Deadline.none();
+            searchLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops the searches of the games and the ponder search of this player, waits for them to
+     * unwind, then keeps new ones from starting until {@link #resumeSearches()}. Meanwhile no
+     * search writes to the tables, which can be read e.g. to save them ( see {@link TableFile} ).
+     * The two must be called from the same thread, which must not be searching itself.
+     */
+    public void pauseSearches() {
+        this.pausing = true;
+        try {
+            stopPondering();
+            searchLock.writeLock().lock();
+        } finally {
+            this.pausing = false;
+        }
+    }
+
+    /**
+     * Lets the searches stopped by {@link #pauseSearches()} start again.
+     */
+    public void resumeSearches() {
+        searchLock.writeLock().unlock();
+    }
+
+    /**
+     * Starts searching, in the background, the position we expect after the
+     * opponent's most likely reply. If the opponent plays it, the result is
+     * used straight away by {@link #selectMove(Game, Deadline)}. Otherwise the search is
+     * stopped and the next one still benefits from the filled tables.
+     *
+     * @param game : a copy of the game, with the opponent to move
+     */
+    @Override
+    public synchronized void ponder(Game game) {
 
-        // Nothing to do
-        if (game == null || game.isGameOver()) {
+        // Already thinking about this position
+        if (game == null || game.getGameState().equals(ponderSource)) {
+            return;
+        }
+        stopPondering();
+        if (game.isGameOver() || game.isP2Turn() == player) {
             return;
         }
 
-        /**
-         * This variable {@depth} is changed whenever we change selection on the JComboBox for difficulty Level
-         */
-        int depth;
-        switch (level) {
-            case 1:
-                depth = 6;
-                break;
-            case 2:
-                depth = 9;
-                break;
-            default:
-                depth = 3;
-                break;
+        // Play the reply with the best score, and the skips that follow it
+        Game predicted = game.copy();
+        while (!predicted.isGameOver() && predicted.isP2Turn() != player) {
+            predicted.move(getMoves(predicted).get(0));
+        }
+        if (predicted.isGameOver()) {
+            return;
+        }
+
+        this.ponderSource = game.getGameState();
+        this.ponderState = predicted.getGameState();
+        this.ponderMove = null;
+        this.ponderThread = new Thread(() -> ponderMove = search(predicted, Deadline.none()),
+                "ponder-" + getClass().getSimpleName());
+        this.ponderThread.setDaemon(true);
+        this.ponderThread.start();
+    }
+
+    @Override
+    public synchronized void stopPondering() {
+        if (ponderThread != null) {
+            ponderThread.interrupt();
+            boolean interrupted = Thread.interrupted();
+            while (ponderThread.isAlive()) {
+                try {
+                    ponderThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        this.ponderThread = null;
+        this.ponderSource = null;
+        this.ponderState = null;
+    }
+
+    /**
+     * @param game     : The actual state of Game Board
+     * @param deadline : The time at which the ponder search is stopped if it is still running
+     * @return The move found while pondering if the prediction was right, null otherwise
+     */
+    private synchronized Move takePonderMove(Game game, Deadline deadline) {
+        if (ponderThread == null || !game.getGameState().equals(ponderState)) {
+            stopPondering();
+            return null;
+        }
+        try {
+            long remaining = deadline.remainingNanos();
+            if (deadline.isNone()) {
+                ponderThread.join();
+            } else if (remaining > 0) {
+                ponderThread.join(remaining / 1_000_000, (int) (remaining % 1_000_000));
+            }
+            // Out of time, the best move of the ponder search so far will do
+            if (ponderThread.isAlive()) {
+                stopPondering();
+            }
+        } catch (InterruptedException e) {
+            // We have been cancelled, the ponder search has to stop as well
+            stopPondering();
+            return null;
+        }
+        Move move = ponderMove;
+        this.ponderThread = null;
+        this.ponderSource = null;
+        this.ponderState = null;
+        return move;
+    }
+
+    /**
+     * The search stops when it runs out of nodes, when its deadline expires, when the thread running it is
+     * interrupted, e.g. by {@link java.util.concurrent.Future#cancel(boolean)} or
+     * {@link #stopPondering()}, or when the searches are paused by {@link #pauseSearches()}.
+     *
+     * @return true if the current search should unwind without storing anything
+     */
+    protected boolean isStopped() {
+        return outOfBudget || pausing || Thread.currentThread().isInterrupted();
+    }
+
+    @Override
+    public void setSearchListener(SearchListener listener) {
+        this.searchListener = listener;
+    }
+
+    /**
+     * Resets the statistics at the start of a search.
+     *
+     * @param depth : The maximum depth to search in
+     * @param limit : The number of nodes the search may visit
+     */
+    protected void startSearch(int depth, long limit) {
+        this.nodes = 0;
+        this.nodeLimit = limit;
+        this.searchDepth = depth;
+        this.bestLine = null;
+        this.bestScore = 0;
+        this.searchStart = this.lastReport = System.nanoTime();
+        this.outOfBudget = false;
+        if (!warmStarted) {
+            this.warmStarted = true;
+            TableFile.warmStart(this);
+        }
+        transpositionTable.newSearch();
+        evalCache.newSearch();
+    }
+
+    /**
+     * Puts the caches on the heap under the {@link MemoryBudget} of the process.
+     */
+    private void registerCaches() {
+        if (transpositionTable instanceof MemoryBudget.Cache) {
+            MemoryBudget.get().register((MemoryBudget.Cache) transpositionTable);
+        }
+        MemoryBudget.get().register(evalCache);
+    }
+
+    /**
+     * @return The time spent on the current search, in nanoseconds
+     */
+    protected long elapsedNanos() {
+        return System.nanoTime() - searchStart;
+    }
+
+    /**
+     * Counts a visited node, and now and then reports the progress. Once the node budget is
+     * spent the search is stopped, so it never visits more nodes than its budget.
+     *
+     * @return false if the node may not be visited, its value is then ignored
+     */
+    protected boolean countNode() {
+        if (nodes >= nodeLimit) {
+            this.outOfBudget = true;
+            return false;
+        }
+        if ((++nodes & (CHECK_NODES - 1)) == 0) {
+            this.outOfBudget = deadline.isExpired();
+            if (System.nanoTime() - lastReport >= REPORT_INTERVAL) {
+                report();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A state already reached earlier in the game or in the searched line is scored as a draw
+     * straight away: if going back to it was good for one side, the other one would avoid it.
+     * This keeps king endgames from spending whole searches on cycles.
+     * <p>
+     * Such a draw depends on the path to the state, not only on the state, so it is counted in
+     * {@link #historyDraws}: a node whose subtree met one does not store its score in the tables,
+     * which may be shared with other games or saved for later sessions.
+     *
+     * @param game : A game state in the search
+     * @return true if the state is to be scored as a draw ( {@link #DRAW_SCORE} )
+     */
+    protected boolean isDraw(Game game) {
+        if (game.getRepetitions() > 0 || game.getNoProgressCount() >= Game.NO_PROGRESS_LIMIT) {
+            historyDraws++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param game : The game state at a leaf of the search
+     * @return The evaluation of the state for this player, with some noise on the easier levels
+     */
+    protected int evaluate(Game game) {
+        long key = tableKey(game);
+        int score;
+        if (evalCache.contains(key)) {
+            score = evalCache.getValue(key);
+        } else {
+            score = tableScore(game, evaluator.evaluate(game, player));
+            evalCache.add(key, score);
+        }
+        if (evalNoise > 0) {
+            int h = ((int) (key ^ (key >>> 32)) ^ noiseSeed) * 0x9E3779B9;
+            score += Math.floorMod(h ^ (h >>> 16), 2 * evalNoise + 1) - evalNoise;
+        }
+        return tableScore(game, score);
+    }
+
+    /**
+     * @param game : A game state in the search
+     * @return The key of the state in the transposition table and the evaluation cache
+     */
+    protected long tableKey(Game game) {
+        return canonicalKeys ? game.getCanonicalKey() : game.getKey();
+    }
+
+    /**
+     * Converts a score for this player into the frame of the tables, or back: the tables store
+     * scores for black, in the state of the canonical key. The score of a mirrored state for black
+     * is the score of the state for white, so the sign flips once for white and once more if the
+     * canonical key is the mirror's. The conversion is its own inverse.
+     *
+     * @param game  : The game state the score is for
+     * @param score : The score to convert
+     * @return The converted score
+     */
+    protected int tableScore(Game game, int score) {
+        boolean flip = !player ^ (canonicalKeys && game.isMirrored());
+        return flip ? -score : score;
+    }
+
+    /**
+     * @param game  : A game state in the search
+     * @param depth : The depth the state is to be searched to
+     * @return The score for this player of the state, if it was already searched deep enough, null otherwise
+     */
+    protected Integer probe(Game game, int depth) {
+        Integer exact = probeTablebase(game);
+        if (exact != null) {
+            return exact;
+        }
+        int known = transpositionTable.probe(tableKey(game), depth);
+        return known == TranspositionTable.MISSING ? null : tableScore(game, known);
+    }
+
+    /**
+     * @param game : A game state in the search
+     * @return The score for this player of the state if it is in the tablebase, null otherwise
+     */
+    protected Integer probeTablebase(Game game) {
+        Tablebase base = tablebase;
+        if (base == null || game.getPieceCount() > base.getMaxPieces()) {
+            return null;
+        }
+        Integer value = base.probe(game);
+        if (value == null) {
+            return null;
+        }
+        // Wins sooner and losses later are better
+        int score = value > 0 ? TABLEBASE_WIN - value : value < 0 ? -TABLEBASE_WIN - value - 1 : DRAW_SCORE;
+        return game.isP2Turn() == player ? score : -score;
+    }
+
+    /**
+     * @param game  : A searched game state
+     * @param depth : The depth the state was searched to
+     * @param score : The exact score of the state for this player
+     */
+    protected void store(Game game, int depth, int score) {
+        transpositionTable.add(tableKey(game), depth, tableScore(game, score));
+    }
+
+    /**
+     * Records a new best root move and reports it.
+     */
+    protected void updateBest(Move move, int score) {
+        updateBest(Collections.singletonList(move), score);
+    }
+
+    /**
+     * Records a new best line, starting with the root move, and reports it.
+     */
+    protected void updateBest(List<Move> line, int score) {
+        this.bestLine = line;
+        this.bestScore = score;
+        report();
+    }
+
+    /**
+     * Tells the listener, if any, that the iteration of the current depth is completed.
+     */
+    protected void completeIteration() {
+        SearchListener listener = searchListener;
+        if (listener == null) {
+            return;
+        }
+        listener.iterationCompleted(new SearchInfo(this, searchDepth, bestScore, bestLine,
+                nodes, elapsedNanos(), Thread.currentThread() == ponderThread));
+    }
+
+    /**
+     * Sends the progress of the current search to the listener, if any.
+     */
+    protected void report() {
+        SearchListener listener = searchListener;
+        this.lastReport = System.nanoTime();
+        if (listener == null || bestLine == null) {
+            return;
         }
-        Move best_move = minimax(game, depth);
-        game.move(best_move);
+        listener.searchProgress(new SearchInfo(this, searchDepth, bestScore, bestLine,
+                nodes, lastReport - searchStart,
+                Thread.currentThread() == ponderThread));
     }
 
     /**
+     * Searches one ply deeper at each iteration until the node budget, the deadline or the
+     * maximum depth is reached, then plays the best move of the last completed iteration.
+     *
      * @param game  : The actual state of Game Board
      * @param depth : The maximum depth to search in
-     * @return The best {@model.Move move } move available for the current player ( With max value if it is Player Max and Min otherwise )
+     * @return The best {@model.Move move } move available for the current player ( the one with max value )
      */
     private Move minimax(Game game, int depth) {
         Game temp_game = game.copy();
+        evaluator.attach(temp_game);
         List<Move> moves = getMoves(temp_game);
-        int best_score;
-        int high_score = Integer.MIN_VALUE;
-        int low_score = Integer.MAX_VALUE;
         Move best_move = null;
 
-        this.transpositionTableMax = new StateSet();
-        this.transpositionTableMin = new StateSet();
+        startSearch(depth, nodeBudget);
 
-        /**
-         * Here we need to get the best available {@model.Move} based on scores
-         */
-        for (Move move : moves) {
-            // We test whatever we are with max or min player and get the corresponding evaluation
-            best_score = player ? maxValue(temp_game, depth) : minValue(temp_game, depth);
-
-            // If we are handling a Max Player so we need to take the argmax !
-            if (player && best_score > high_score) {
-                high_score = best_score;
-                best_move = move;
-            }// If we are handling a Min Player so we need to take the argmin !
-            else if (!player && best_score < low_score) {
-                low_score = best_score;
-                best_move = move;
+        for (int d = 1; d <= depth && !moves.isEmpty(); d++) {
+            this.searchDepth = d;
+            int high_score = Integer.MIN_VALUE;
+            Move iteration_move = null;
+
+            /**
+             * Here we need to get the best available {@model.Move} based on scores
+             * ( scores are from our point of view so we take the argmax ! )
+             */
+            for (Move move : moves) {
+                if (isStopped()) {
+                    break;
+                }
+                Game child = temp_game.copy();
+                child.move(move);
+                // We test whatever the next player is max or min and get the corresponding evaluation
+                int best_score = child.isP2Turn() == player ? maxValue(child, d - 1) : minValue(child, d - 1);
+
+                if (!isStopped() && best_score > high_score) {
+                    high_score = best_score;
+                    iteration_move = move;
+                    updateBest(move, best_score);
+                }
+            }
+
+            // An interrupted iteration is only better than nothing
+            if (iteration_move != null && (best_move == null || !isStopped())) {
+                best_move = iteration_move;
+            }
+            if (isStopped()) {
+                break;
             }
+            completeIteration();
+            // Try the best move first in the next iteration
+            moves.remove(best_move);
+            moves.add(0, best_move);
         }
-        return best_move;
+        report();
+        return best_move == null && !moves.isEmpty() ? moves.get(0) : best_move;
     }
 
 
@@ -112,24 +818,29 @@ public class MinMaxPlayer extends ComputerPlayer {
      * @return The max_score ( evaluation for the actual game if we go for depth = depth
      */
     private int maxValue(Game game, int depth) {
+        if (!countNode()) {
+            return 0;
+        }
+        if (isDraw(game)) {
+            return DRAW_SCORE;
+        }
+        // If our actual state has been seen before at this depth no need to go further !
+        Integer known = probe(game, depth);
+        if (known != null) {
+            return known;
+        }
         // If We are in the last level of depth or the game is in it end
-        // Or If our actual state has been seen before no need to go further !
-        if (game.isGameOver() || depth == 0 || transpositionTableMax.getValue(game) != null) {
-            if (transpositionTableMax.getValue(game) != null) {
-                return transpositionTableMax.getValue(game);
-            }
-            return game.goodHeuristic(true);
+        if (game.isGameOver() || depth == 0 || isStopped()) {
+            return evaluate(game);
         }
-        // Make Backup for Game instance
-        Game temp_game = game;
-
+        long draws = historyDraws;
         // Get all available moves
-        List<Move> moves = getMoves(temp_game);
+        List<Move> moves = getMoves(game);
         int best_score = Integer.MIN_VALUE;
         int res_score;
 
         for (Move move : moves) {
-            temp_game = temp_game.copy();
+            Game temp_game = game.copy();
             temp_game.move(move);
             // In case the player is about to make multiple moves ( if he can )
             res_score = temp_game.isP2Turn() == player ? maxValue(temp_game, depth - 1) :
@@ -138,8 +849,10 @@ public class MinMaxPlayer extends ComputerPlayer {
             best_score = Math.max(best_score, res_score);
         }
         // Make sure to add our new state in The Transposition table
-        transpositionTableMax = new StateSet();
-        transpositionTableMax.add(temp_game, best_score);
+        // ( unless a draw by repetition below it made the score depend on the path )
+        if (!isStopped() && historyDraws == draws) {
+            store(game, depth, best_score);
+        }
 
         return best_score;
     }
@@ -150,22 +863,27 @@ public class MinMaxPlayer extends ComputerPlayer {
      * @return The min_score ( evaluation for the actual game if we go for depth = depth
      */
     private int minValue(Game game, int depth) {
-        if (game.isGameOver() || depth == 0 || transpositionTableMin.getValue(game) != null) {
-            if (transpositionTableMin.getValue(game) != null) {
-                return transpositionTableMin.getValue(game);
-            }
-            return game.goodHeuristic(false);
+        if (!countNode()) {
+            return 0;
         }
-        // Make Backup to the game
-        Game temp_game = game;
-
-        List<Move> moves = getMoves(temp_game);
+        if (isDraw(game)) {
+            return DRAW_SCORE;
+        }
+        Integer known = probe(game, depth);
+        if (known != null) {
+            return known;
+        }
+        if (game.isGameOver() || depth == 0 || isStopped()) {
+            return evaluate(game);
+        }
+        long draws = historyDraws;
+        List<Move> moves = getMoves(game);
         int best_score = Integer.MAX_VALUE;
         int res_score;
 
 
         for (Move move : moves) {
-            temp_game = temp_game.copy();
+            Game temp_game = game.copy();
             temp_game.move(move);
 
             res_score = temp_game.isP2Turn() == player ? maxValue(temp_game, depth - 1) :
@@ -174,74 +892,41 @@ public class MinMaxPlayer extends ComputerPlayer {
             best_score = Math.min(best_score, res_score);
         }
 
-        transpositionTableMin = new StateSet();
-        transpositionTableMin.add(temp_game, best_score);
+        if (!isStopped() && historyDraws == draws) {
+            store(game, depth, best_score);
+        }
 
         return best_score;
     }
 
 
     /**
-     * Gets all the available moves and skips for the current player.
+     * Gets all the available moves and skips for the current player, the most promising first: the
+     * states after the moves are scored together by a {@link BatchEvaluator}, with the same terms as
+     * the handcrafted evaluation, so that the alpha-beta search cuts off as early as when each state
+     * was evaluated on its own.
      *
      * @param game the current game state.
      * @return a list of valid moves that the player can make.
      */
     protected List<Move> getMoves(Game game) {
-
-        // The next move needs to be a skip
-        if (game.getSkipIndex() >= 0) {
-
-            List<Move> moves = new ArrayList<>();
-            List<Point> skips = MoveGenerator.getSkips(game.getBoard(),
-                    game.getSkipIndex());
-            for (Point end : skips) {
-                Game copy = game.copy();
-                int startIndex = game.getSkipIndex(), endIndex = Board.toIndex(end);
-                copy.move(startIndex, endIndex);
-                moves.add(new Move(startIndex, endIndex, copy.goodHeuristic(!copy.isP2Turn())));
-            }
-            Collections.sort(moves);
-            return moves;
+        Bitboard state = Bitboard.of(game);
+        int[] ends = moveEnds;
+        int count = state.getMoves(ends);
+
+        BatchEvaluator batch = moveBatch;
+        batch.clear();
+        for (int i = 0; i < count; i++) {
+            Bitboard child = state.copy();
+            child.play(ends[i]);
+            batch.add(child);
         }
+        int[] scores = moveScores;
+        batch.evaluate(getEvalParams(), game.isP2Turn(), scores);
 
-        // Get the checkers
-        List<Point> checkers = new ArrayList<>();
-        Board b = game.getBoard();
-        if (game.isP2Turn()) {
-            checkers.addAll(b.find(Board.BLACK_CHECKER));
-            checkers.addAll(b.find(Board.BLACK_KING));
-        } else {
-            checkers.addAll(b.find(Board.WHITE_CHECKER));
-            checkers.addAll(b.find(Board.WHITE_KING));
-        }
-
-        // Determine if there are any skips
-        List<Move> moves = new ArrayList<>();
-        for (Point checker : checkers) {
-            int index = Board.toIndex(checker);
-            List<Point> skips = MoveGenerator.getSkips(b, index);
-            for (Point end : skips) {
-                Game copy = game.copy();
-                int endIndex = Board.toIndex(end);
-                copy.move(index, endIndex);
-                Move m = new Move(index, endIndex, copy.goodHeuristic(!copy.isP2Turn()));
-                moves.add(m);
-            }
-        }
-
-        // If there are no skips, add the regular moves
-        if (moves.isEmpty()) {
-            for (Point checker : checkers) {
-                int index = Board.toIndex(checker);
-                List<Point> movesEnds = MoveGenerator.getMoves(b, index);
-                for (Point end : movesEnds) {
-                    Game copy = game.copy();
-                    int endIndex = Board.toIndex(end);
-                    copy.move(index, endIndex);
-                    moves.add(new Move(index, endIndex, copy.goodHeuristic(!copy.isP2Turn())));
-                }
-            }
+        List<Move> moves = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            moves.add(new Move(Bitboard.getStart(ends[i]), Bitboard.getEnd(ends[i]), scores[i]));
         }
         Collections.sort(moves);
         return moves;
@@ -0,0 +1,56 @@
+/* Name: MoveRequest
+ * Description: This class holds a move that a player was asked for and that
+ * is supplied from outside the player, by a user clicking on the board.
+ */
+
+package src.model;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The {@code MoveRequest} class is used by players that do not compute their
+ * moves themselves. It keeps the pending future returned by
+ * {@link Player#chooseMove(GameSnapshot, Deadline)} until the move is
+ * supplied through {@link #complete(Move)}.
+ */
+class MoveRequest {
+
+	/** The state the move was asked for, null if there is no request. */
+	private GameSnapshot snapshot;
+	
+	/** The future to complete with the move. */
+	private CompletableFuture<Move> future;
+	
+	/**
+	 * Starts a new request, abandoning the previous one if it is still
+	 * pending.
+	 * 
+	 * @param snapshot	the state to choose a move for.
+	 * @return the future completed by {@link #complete(Move)}.
+	 */
+	synchronized CompletableFuture<Move> request(GameSnapshot snapshot) {
+		if (future != null) {
+			future.cancel(false);
+		}
+		this.snapshot = snapshot;
+		this.future = new CompletableFuture<>();
+		return future;
+	}
+	
+	/**
+	 * Supplies the move for the pending request.
+	 * 
+	 * @param move	the move chosen.
+	 * @return true if and only if a request was pending and the move is legal
+	 * in its state.
+	 */
+	synchronized boolean complete(Move move) {
+		if (future == null || future.isDone() || !snapshot.isValidMove(move)) {
+			return false;
+		}
+		boolean completed = future.complete(move);
+		this.future = null;
+		this.snapshot = null;
+		return completed;
+	}
+}
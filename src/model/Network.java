@@ -0,0 +1,459 @@
+/* Name: Network
+ * Description: This class is a small neural network evaluating the game
+ * states, with a first layer updated incrementally as the moves are made.
+ */
+
+package src.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The {@code Network} class is an {@link Evaluator} in the manner of NNUE:
+ * <ul>
+ * <li>the inputs are the pieces on the tiles, 4 kinds on 32 tiles, seen by
+ * each player: its own checkers and kings, then the opponent's, with the
+ * board turned around for white so that both share the weights;</li>
+ * <li>the first layer sums the weights of the pieces on the board for each
+ * player, in an {@link Accumulator} kept in the {@link Game} and updated by
+ * each move, as only two or three tiles change;</li>
+ * <li>the sums of the player to move then of the other one, clipped to
+ * [0, 1], go through a dense layer clipped the same way, then to the output,
+ * the score for the player to move.</li>
+ * </ul>
+ * All the arithmetic is on integers: the first layer in {@code short}s where
+ * 1 is {@link #ONE}, the dense layer with {@code byte} weights where 1 is
+ * {@code 1 << }{@link #WEIGHT_SHIFT} over {@code byte} inputs, and the output
+ * with {@code short} weights where 1 is {@link #OUTPUT_ONE}. The loops are
+ * plain ones over arrays, which the JIT compiler turns into vector
+ * instructions.
+ * <p>
+ * A file holds a header:
+ * <pre>
+ * int  magic ("CKNN")      int  version
+ * int  inputs              int  size of the first layer
+ * int  size of the dense layer
+ * int  reserved x 3
+ * </pre>
+ * followed by the weights of the first layer ({@code short}, the weights of
+ * each input together) and its biases ({@code short}), the weights of the
+ * dense layer ({@code byte}, those of each neuron together) and its biases
+ * ({@code int}), and the weights ({@code short}) and bias ({@code int}) of
+ * the output.
+ */
+public final class Network implements Evaluator {
+
+	/** The first bytes of a file, "CKNN". */
+	public static final int MAGIC = 0x434B4E4E;
+
+	/** The version of the format. */
+	public static final int VERSION = 1;
+
+	/** The number of inputs, a kind of piece on a tile each. */
+	public static final int INPUTS = 4 * 32;
+
+	/** The value of 1 in the first layer, and the most of its outputs. */
+	public static final int ONE = 127;
+
+	/** The weights of the dense layer are in 1 / 2^shift. */
+	public static final int WEIGHT_SHIFT = 6;
+
+	/** The value of 1 in the weights of the output. */
+	public static final int OUTPUT_ONE = 16;
+
+	/** The bytes of the header of a file. */
+	private static final int HEADER_BYTES = 32;
+
+	/** The network of the search players, once read. */
+	private static Network defaultNetwork;
+
+	/** True once the default network was looked for. */
+	private static boolean defaultOpened;
+
+	/** The size of the first layer, for each player. */
+	private final int hidden;
+
+	/** The size of the dense layer. */
+	private final int dense;
+
+	/** The weights of the first layer, the {@link #hidden} of each input. */
+	private final short[] inputWeights;
+
+	private final short[] inputBiases;
+
+	/** The weights of the dense layer, the 2 {@link #hidden} of each neuron. */
+	private final byte[] denseWeights;
+
+	private final int[] denseBiases;
+
+	private final short[] outputWeights;
+
+	private final int outputBias;
+
+	/** The hash of the sizes and the weights. */
+	private final long fingerprint;
+
+	/**
+	 * The inputs of the second layer, kept by each thread as a network is
+	 * shared by all the players, so that a leaf allocates nothing.
+	 */
+	private final ThreadLocal<byte[]> inputs;
+
+	public Network(int hidden, int dense, short[] inputWeights,
+			short[] inputBiases, byte[] denseWeights, int[] denseBiases,
+			short[] outputWeights, int outputBias) {
+		if (hidden < 1 || dense < 1 || inputWeights.length != INPUTS * hidden
+				|| inputBiases.length != hidden
+				|| denseWeights.length != 2 * hidden * dense
+				|| denseBiases.length != dense
+				|| outputWeights.length != dense) {
+			throw new IllegalArgumentException("Wrong sizes of the layers");
+		}
+		this.hidden = hidden;
+		this.dense = dense;
+		this.inputWeights = inputWeights;
+		this.inputBiases = inputBiases;
+		this.denseWeights = denseWeights;
+		this.denseBiases = denseBiases;
+		this.outputWeights = outputWeights;
+		this.outputBias = outputBias;
+		this.fingerprint = hash();
+		this.inputs = ThreadLocal.withInitial(() -> new byte[2 * hidden]);
+	}
+
+	/**
+	 * Creates a network from weights trained as real numbers, for inputs of 0
+	 * or 1 and layers clipped to [0, 1], by rounding them to the integers of
+	 * the network. The weights that don't fit are clipped.
+	 *
+	 * @return the network computing about the same.
+	 */
+	public static Network quantize(int hidden, int dense, float[] inputWeights,
+			float[] inputBiases, float[] denseWeights, float[] denseBiases,
+			float[] outputWeights, float outputBias) {
+		short[] w1 = new short[inputWeights.length];
+		for (int i = 0; i < w1.length; i ++) {
+			w1[i] = (short) round(inputWeights[i] * ONE, Short.MAX_VALUE);
+		}
+		short[] b1 = new short[inputBiases.length];
+		for (int i = 0; i < b1.length; i ++) {
+			b1[i] = (short) round(inputBiases[i] * ONE, Short.MAX_VALUE);
+		}
+		byte[] w2 = new byte[denseWeights.length];
+		for (int i = 0; i < w2.length; i ++) {
+			w2[i] = (byte) round(denseWeights[i] * (1 << WEIGHT_SHIFT),
+					Byte.MAX_VALUE);
+		}
+		int[] b2 = new int[denseBiases.length];
+		for (int i = 0; i < b2.length; i ++) {
+			b2[i] = round(denseBiases[i] * ONE * (1 << WEIGHT_SHIFT),
+					Integer.MAX_VALUE);
+		}
+		short[] w3 = new short[outputWeights.length];
+		for (int i = 0; i < w3.length; i ++) {
+			w3[i] = (short) round(outputWeights[i] * OUTPUT_ONE,
+					Short.MAX_VALUE);
+		}
+		return new Network(hidden, dense, w1, b1, w2, b2, w3,
+				round(outputBias * OUTPUT_ONE * ONE, Integer.MAX_VALUE));
+	}
+
+	private static int round(double value, int max) {
+		return (int) Math.max(-max, Math.min(max, Math.round(value)));
+	}
+
+	/**
+	 * Reads a network from a file.
+	 *
+	 * @param file	the file of the network.
+	 * @return the network.
+	 * @throws IOException if the file could not be read or is not a network.
+	 */
+	public static Network open(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+			throw new IOException(file + ": not a network");
+		}
+		int version = buffer.getInt();
+		if (version != VERSION) {
+			throw new IOException(file + ": unsupported version " + version);
+		}
+		int inputs = buffer.getInt(), hidden = buffer.getInt(),
+				dense = buffer.getInt();
+		if (inputs != INPUTS || hidden < 1 || dense < 1
+				|| buffer.capacity() != getBytes(hidden, dense)) {
+			throw new IOException(file + ": wrong size");
+		}
+		buffer.position(HEADER_BYTES);
+
+		short[] w1 = new short[INPUTS * hidden];
+		buffer.asShortBuffer().get(w1);
+		buffer.position(buffer.position() + 2 * w1.length);
+		short[] b1 = new short[hidden];
+		buffer.asShortBuffer().get(b1);
+		buffer.position(buffer.position() + 2 * b1.length);
+		byte[] w2 = new byte[2 * hidden * dense];
+		buffer.get(w2);
+		int[] b2 = new int[dense];
+		buffer.asIntBuffer().get(b2);
+		buffer.position(buffer.position() + 4 * b2.length);
+		short[] w3 = new short[dense];
+		buffer.asShortBuffer().get(w3);
+		buffer.position(buffer.position() + 2 * w3.length);
+		return new Network(hidden, dense, w1, b1, w2, b2, w3, buffer.getInt());
+	}
+
+	/**
+	 * Writes the network to a file, replacing it at once when complete.
+	 *
+	 * @param file	the file to write.
+	 * @throws IOException if the file could not be written.
+	 */
+	public void write(Path file) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) getBytes(hidden, dense));
+		buffer.putInt(MAGIC).putInt(VERSION).putInt(INPUTS).putInt(hidden)
+				.putInt(dense);
+		buffer.position(HEADER_BYTES);
+		for (short w : inputWeights) {
+			buffer.putShort(w);
+		}
+		for (short b : inputBiases) {
+			buffer.putShort(b);
+		}
+		buffer.put(denseWeights);
+		for (int b : denseBiases) {
+			buffer.putInt(b);
+		}
+		for (short w : outputWeights) {
+			buffer.putShort(w);
+		}
+		buffer.putInt(outputBias);
+		buffer.flip();
+
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp,
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			channel.force(true);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private static long getBytes(int hidden, int dense) {
+		return HEADER_BYTES + 2L * (INPUTS + 1) * hidden
+				+ 2L * hidden * dense + 4L * dense + 2L * dense + 4;
+	}
+
+	/**
+	 * Gets the network named by {@link Evaluator#NETWORK_PROPERTY}, reading
+	 * it the first time. An error is reported once on the standard error
+	 * stream.
+	 *
+	 * @return the network, or null if there is none.
+	 */
+	public static synchronized Network getDefault() {
+		if (!defaultOpened) {
+			defaultOpened = true;
+			String name = System.getProperty(NETWORK_PROPERTY);
+			if (name != null && !name.isEmpty()) {
+				try {
+					defaultNetwork = open(Paths.get(name));
+				} catch (IOException e) {
+					System.err.println("Network not read: " + e.getMessage());
+				}
+			}
+		}
+		return defaultNetwork;
+	}
+
+	public int getHidden() {
+		return hidden;
+	}
+
+	public int getDense() {
+		return dense;
+	}
+
+	/**
+	 * Gets the input of a piece on a tile, as seen by a player.
+	 *
+	 * @param black	true for the inputs of black, false for white's.
+	 * @param id	the piece, see {@link Board#BLACK_CHECKER} and the others.
+	 * @param index	the tile of the piece.
+	 * @return the input, or -1 for an empty or invalid tile.
+	 */
+	public static int getInput(boolean black, int id, int index) {
+		int kind;
+		switch (id) {
+		case Board.BLACK_CHECKER: kind = black? 0 : 2; break;
+		case Board.BLACK_KING: kind = black? 1 : 3; break;
+		case Board.WHITE_CHECKER: kind = black? 2 : 0; break;
+		case Board.WHITE_KING: kind = black? 3 : 1; break;
+		default: return -1;
+		}
+		if (index < 0 || index > 31) {
+			return -1;
+		}
+		return kind * 32 + (black? index : 31 - index);
+	}
+
+	@Override
+	public void attach(Game game) {
+		if (game.getAccumulator() == null
+				|| game.getAccumulator().network != this) {
+			game.setAccumulator(newAccumulator(game.getBoard()));
+		}
+	}
+
+	@Override
+	public long getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * Hashes the sizes and the weights of the layers.
+	 */
+	private long hash() {
+		long hash = Zobrist.combine(hidden, dense);
+		for (short weight : inputWeights) {
+			hash = Zobrist.combine(hash, weight);
+		}
+		for (short bias : inputBiases) {
+			hash = Zobrist.combine(hash, bias);
+		}
+		for (byte weight : denseWeights) {
+			hash = Zobrist.combine(hash, weight);
+		}
+		for (int bias : denseBiases) {
+			hash = Zobrist.combine(hash, bias);
+		}
+		for (short weight : outputWeights) {
+			hash = Zobrist.combine(hash, weight);
+		}
+		return Zobrist.combine(hash, outputBias);
+	}
+
+	@Override
+	public int evaluate(Game game, boolean player) {
+		Accumulator accumulator = game.getAccumulator();
+		if (accumulator == null || accumulator.network != this) {
+			accumulator = newAccumulator(game.getBoard());
+			game.setAccumulator(accumulator);
+		}
+		boolean black = game.isP2Turn();
+		int score = black? forward(accumulator.black, accumulator.white)
+				: forward(accumulator.white, accumulator.black);
+		return (player == black)? score : -score;
+	}
+
+	/**
+	 * Computes the first layer of a board from scratch.
+	 */
+	private Accumulator newAccumulator(Board board) {
+		Accumulator accumulator = new Accumulator(this);
+		System.arraycopy(inputBiases, 0, accumulator.black, 0, hidden);
+		System.arraycopy(inputBiases, 0, accumulator.white, 0, hidden);
+		for (int i = 0; i < 32; i ++) {
+			accumulator.add(board.get(i), i, 1);
+		}
+		return accumulator;
+	}
+
+	/**
+	 * Computes the score for the player to move from the first layer.
+	 */
+	private int forward(short[] us, short[] them) {
+		byte[] inputs = this.inputs.get();
+		for (int i = 0; i < hidden; i ++) {
+			inputs[i] = (byte) Math.max(0, Math.min(ONE, us[i]));
+			inputs[hidden + i] = (byte) Math.max(0, Math.min(ONE, them[i]));
+		}
+		int sum = outputBias;
+		for (int j = 0, row = 0; j < dense; j ++, row += 2 * hidden) {
+			int z = denseBiases[j];
+			for (int i = 0; i < 2 * hidden; i ++) {
+				z += denseWeights[row + i] * inputs[i];
+			}
+			sum += outputWeights[j] * Math.max(0,
+					Math.min(ONE, z >> WEIGHT_SHIFT));
+		}
+		return sum / (OUTPUT_ONE * ONE);
+	}
+
+	/**
+	 * The {@code Accumulator} class holds the first layer of a network for a
+	 * board, for both players. A {@link Game} updates it as its moves are
+	 * made, and copies it with itself, so that the search only works out the
+	 * tiles each move changes.
+	 */
+	static final class Accumulator {
+
+		/** The network the sums are for. */
+		final Network network;
+
+		/** The sums of the weights of the inputs seen by each player. */
+		final short[] black, white;
+
+		private Accumulator(Network network) {
+			this.network = network;
+			this.black = new short[network.hidden];
+			this.white = new short[network.hidden];
+		}
+
+		private Accumulator(Accumulator accumulator) {
+			this.network = accumulator.network;
+			this.black = accumulator.black.clone();
+			this.white = accumulator.white.clone();
+		}
+
+		Accumulator copy() {
+			return new Accumulator(this);
+		}
+
+		/**
+		 * Updates the sums for a move: the piece leaves its tile, the
+		 * skipped piece if any is removed, and the piece, maybe now a king,
+		 * arrives on its end tile.
+		 */
+		void move(int startId, int startIndex, int midId, int midIndex,
+				int endId, int endIndex) {
+			add(startId, startIndex, -1);
+			add(midId, midIndex, -1);
+			add(endId, endIndex, 1);
+		}
+
+		/**
+		 * Adds or takes away the weights of a piece on a tile.
+		 */
+		private void add(int id, int index, int sign) {
+			int b = getInput(true, id, index), w = getInput(false, id, index);
+			if (b < 0) {
+				return;
+			}
+			short[] weights = network.inputWeights;
+			int hidden = network.hidden;
+			int bOffset = b * hidden, wOffset = w * hidden;
+			if (sign > 0) {
+				for (int i = 0; i < hidden; i ++) {
+					black[i] += weights[bOffset + i];
+					white[i] += weights[wOffset + i];
+				}
+			} else {
+				for (int i = 0; i < hidden; i ++) {
+					black[i] -= weights[bOffset + i];
+					white[i] -= weights[wOffset + i];
+				}
+			}
+		}
+	}
+}
@@ -6,6 +6,8 @@
 
 package src.model;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The {@code NetworkPlayer} class is a dummy player used so that the game
  * can be updated properly from the corresponding client.
@@ -24,4 +26,16 @@ public class NetworkPlayer extends Player {
 	@Override
 	public void updateGame(Game game) {}
 
+	/**
+	 * Network players are not asked for their moves: their client sends the
+	 * whole game state instead, so the future fails straight away.
+	 */
+	@Override
+	public CompletableFuture<Move> chooseMove(GameSnapshot snapshot,
+			Deadline deadline) {
+		CompletableFuture<Move> future = new CompletableFuture<>();
+		future.completeExceptionally(new UnsupportedOperationException(
+				"The moves of a network player come from its client"));
+		return future;
+	}
 }
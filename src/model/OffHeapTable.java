@@ -0,0 +1,343 @@
+/* Name: OffHeapTable
+ * Description: This class is a transposition table stored outside of the Java
+ * heap, which can be shared by several searching threads.
+ */
+
+package src.model;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+/**
+ * The {@code OffHeapTable} class is a {@link TranspositionTable} in direct
+ * byte buffers, so that a table of many gigabytes neither grows the heap nor
+ * slows down the garbage collector. The memory is limited by
+ * {@code -XX:MaxDirectMemorySize} instead of {@code -Xmx}.
+ * <p>
+ * The table is split in buckets of 4 entries, the size of a cache line. A key
+ * can only be stored in its bucket, replacing the entry searched the least
+ * deep when the bucket is full. Each entry is two 64-bit words, the data and
+ * the key XOR-ed with the data, each read and written atomically. A thread can
+ * thus read an entry while another one writes it without any lock: if it gets
+ * the words of two different writes, the key no longer matches and the entry
+ * is ignored.
+ * <p>
+ * Each entry is also tagged with the generation it was last used in, see
+ * {@link #newSearch()}. When a bucket is full, an entry of an old generation
+ * is replaced before a deeper one of the current generation, so that a table
+ * shared by many games over a long time does not fill up with states no game
+ * reaches any more. A generation is a period of {@link #EPOCH_MILLIS} rather
+ * than a search, so that the entries age as fast however many games, and
+ * pondering searches, share the table. The generations wrap after 2^13
+ * epochs, almost a day, and the age of an entry stops at {@link #MAX_AGE},
+ * when it is worth less than any entry of the current generation.
+ * <p>
+ * Last, an entry holds a tag of {@link #TAG_BITS} bits given by its writer,
+ * so that the users of a shared table can tell their entries apart, see
+ * {@link #forEach(int, Visitor)}.
+ * <p>
+ * With huge pages, the buffers are aligned to 2 MB so that the kernel can
+ * back them with transparent huge pages, which saves TLB misses on the random
+ * accesses of a large table.
+ */
+public class OffHeapTable implements TranspositionTable {
+
+	/** The number of bytes of an entry. */
+	public static final int ENTRY_BYTES = 16;
+
+	/** The number of entries of a bucket. */
+	private static final int BUCKET_ENTRIES = 4;
+
+	/** The number of bytes of a bucket, a cache line. */
+	private static final int BUCKET_BYTES = BUCKET_ENTRIES * ENTRY_BYTES;
+
+	/** The number of bytes of each buffer is at most 2 to this power. */
+	private static final int CHUNK_BITS = 30;
+
+	/** The size of a huge page. */
+	private static final int HUGE_PAGE = 2 << 20;
+
+	/** The number of bytes cleared by each task of {@link #clear()}. */
+	private static final int CLEAR_BLOCK = 1 << 20;
+
+	/** The bits of the data holding the depth plus one, 0 for no entry. */
+	private static final long DEPTH_BITS = 0x1FF;
+
+	/** The position of the generation in the data, above the depth. */
+	private static final int GENERATION_SHIFT = 9;
+
+	/** The bits of a generation, above the depth. */
+	private static final int GENERATION_MASK = (1 << 13) - 1;
+
+	/** The position of the tag in the data, above the generation. */
+	private static final int TAG_SHIFT = 22;
+
+	/** The number of bits of a tag, the 10 bits left under the value. */
+	public static final int TAG_BITS = 10;
+
+	/** The bits of a tag. */
+	private static final int TAG_MASK = (1 << TAG_BITS) - 1;
+
+	/** The length of a generation, about the time of a move. */
+	private static final long EPOCH_MILLIS = 10_000;
+
+	/** The depth an entry loses for each generation it was not used. */
+	private static final int AGE_PENALTY = 8;
+
+	/** The age above which an entry is worth no less, deep as it may be. */
+	private static final int MAX_AGE = 256 / AGE_PENALTY + 1;
+
+	/** The key stored instead of 0, which is the key of an empty entry. */
+	private static final long EMPTY_REPLACEMENT = 0x5F3759DF5F3759DFL;
+
+	/** Reads and writes the longs of the buffers atomically. */
+	private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(
+			long[].class, ByteOrder.nativeOrder());
+
+	/** The memory of the table. */
+	private final ByteBuffer[] chunks;
+
+	/** The number of bytes used in each chunk. */
+	private final int chunkBytes;
+
+	/** The number of buckets minus one, to turn a key into a bucket. */
+	private final long bucketMask;
+
+	/** The epochs since the table was created, up to the last search. */
+	private final AtomicInteger generation = new AtomicInteger();
+
+	/** The time the table was created, from {@link System#nanoTime()}. */
+	private final long created = System.nanoTime();
+
+	/** The number of lookups, and how many of them found an entry. */
+	private final LongAdder probes = new LongAdder(), hits = new LongAdder();
+
+	/**
+	 * Allocates an empty table.
+	 *
+	 * @param bytes		the memory of the table, rounded down to a power of 2.
+	 * @param hugePages	true to align the memory to huge pages.
+	 */
+	public OffHeapTable(long bytes, boolean hugePages) {
+		long buckets = Long.highestOneBit(Math.max(1, bytes / BUCKET_BYTES));
+		long total = buckets * BUCKET_BYTES;
+		this.bucketMask = buckets - 1;
+		this.chunkBytes = (int) Math.min(total, 1L << CHUNK_BITS);
+		this.chunks = new ByteBuffer[(int) (total / chunkBytes)];
+
+		// Over-allocate so that an aligned slice of the full size fits
+		int alignment = hugePages? HUGE_PAGE : BUCKET_BYTES;
+		int allocated = (chunkBytes + alignment - 1) / alignment * alignment;
+		for (int i = 0; i < chunks.length; i ++) {
+			this.chunks[i] = ByteBuffer.allocateDirect(allocated + alignment)
+					.alignedSlice(alignment);
+		}
+	}
+
+	@Override
+	public void add(long key, int depth, int value) {
+		add(key, depth, value, 0);
+	}
+
+	/**
+	 * Stores the value of a state, tagged for {@link #forEach(int, Visitor)}.
+	 *
+	 * @param key	the key of the state.
+	 * @param depth	the depth the state was searched to, from 0 to 255.
+	 * @param value	the value of the state.
+	 * @param tag	the tag of the entry, from 0 to 2^{@link #TAG_BITS} - 1.
+	 */
+	public void add(long key, int depth, int value, int tag) {
+		key = (key == 0)? EMPTY_REPLACEMENT : key;
+		ByteBuffer chunk = chunk(key);
+		int bucket = offset(key);
+
+		// Replace the entry of the key, or else the least worth keeping
+		int current = generation.get() & GENERATION_MASK;
+		int victim = bucket;
+		long victimWorth = Long.MAX_VALUE;
+		for (int i = 0; i < BUCKET_ENTRIES; i ++) {
+			int entry = bucket + i * ENTRY_BYTES;
+			long data = (long) LONGS.getOpaque(chunk, entry + 8);
+			long check = (long) LONGS.getOpaque(chunk, entry);
+			if (data != 0 && (check ^ data) == key) {
+				victim = entry;
+				break;
+			}
+			long worth = worth(data, current);
+			if (worth < victimWorth) {
+				victim = entry;
+				victimWorth = worth;
+			}
+		}
+		write(chunk, victim, key, data(value, depth, current, tag));
+	}
+
+	@Override
+	public int probe(long key, int depth) {
+		probes.increment();
+		key = (key == 0)? EMPTY_REPLACEMENT : key;
+		ByteBuffer chunk = chunk(key);
+		int bucket = offset(key);
+		for (int i = 0; i < BUCKET_ENTRIES; i ++) {
+			int entry = bucket + i * ENTRY_BYTES;
+			long data = (long) LONGS.getOpaque(chunk, entry + 8);
+			long check = (long) LONGS.getOpaque(chunk, entry);
+			if (data != 0 && (check ^ data) == key) {
+				if ((data & DEPTH_BITS) - 1 < depth) {
+					return MISSING;
+				}
+				hits.increment();
+
+				// Keep the entry from aging while it is used
+				int current = generation.get() & GENERATION_MASK;
+				if (generation(data) != current) {
+					write(chunk, entry, key, data(value(data),
+							(int) (data & DEPTH_BITS) - 1, current, tag(data)));
+				}
+				return value(data);
+			}
+		}
+		return MISSING;
+	}
+
+	/**
+	 * Moves to the generation of the current epoch, if a new one started
+	 * since the last search, so that the entries not used from now on age.
+	 * The generation is shared by all the users of the table.
+	 */
+	@Override
+	public void newSearch() {
+		int epoch = (int) ((System.nanoTime() - created) / 1_000_000
+				/ EPOCH_MILLIS);
+		if (epoch > generation.get()) {
+			generation.accumulateAndGet(epoch, Math::max);
+		}
+	}
+
+	/**
+	 * Packs the data of an entry. The stored depth is one more, so that an
+	 * empty entry has depth 0.
+	 */
+	private static long data(int value, int depth, int generation,
+			int tag) {
+		return ((long) value << 32) | ((long) (tag & TAG_MASK) << TAG_SHIFT)
+				| ((long) generation << GENERATION_SHIFT) | ((depth & 0xFF) + 1);
+	}
+
+	private static int value(long data) {
+		return (int) (data >> 32);
+	}
+
+	private static int generation(long data) {
+		return (int) (data >>> GENERATION_SHIFT) & GENERATION_MASK;
+	}
+
+	private static int tag(long data) {
+		return (int) (data >>> TAG_SHIFT) & TAG_MASK;
+	}
+
+	/**
+	 * Gets how much an entry is worth keeping: its depth, minus a penalty for
+	 * each generation since it was last used, up to {@link #MAX_AGE}.
+	 */
+	private static long worth(long data, int current) {
+		if (data == 0) {
+			return Long.MIN_VALUE;
+		}
+		int age = Math.min((current - generation(data)) & GENERATION_MASK,
+				MAX_AGE);
+		return (data & DEPTH_BITS) - (long) AGE_PENALTY * age;
+	}
+
+	/**
+	 * Writes an entry, the data first. A reader seeing only one of the two
+	 * words finds a key that does not match.
+	 */
+	private static void write(ByteBuffer chunk, int entry, long key,
+			long data) {
+		LONGS.setOpaque(chunk, entry + 8, data);
+		LONGS.setOpaque(chunk, entry, key ^ data);
+	}
+
+	/**
+	 * Removes all the entries, zeroing the memory from the threads of the
+	 * common fork/join pool.
+	 */
+	@Override
+	public void clear() {
+		byte[] zeros = new byte[Math.min(CLEAR_BLOCK, chunkBytes)];
+		int blocks = chunkBytes / zeros.length;
+		IntStream.range(0, chunks.length * blocks).parallel().forEach(i -> {
+			ByteBuffer chunk = chunks[i / blocks];
+			chunk.put((i % blocks) * zeros.length, zeros, 0, zeros.length);
+		});
+	}
+
+	@Override
+	public void forEach(Visitor visitor) {
+		forEach(-1, visitor);
+	}
+
+	/**
+	 * Calls the visitor with each entry of a tag. The tags only have
+	 * {@link #TAG_BITS} bits, so one entry in 2^{@link #TAG_BITS} of the
+	 * other writers has the same tag.
+	 *
+	 * @param tag		the tag of the entries, or -1 for all of them.
+	 * @param visitor	the visitor of the entries.
+	 */
+	public void forEach(int tag, Visitor visitor) {
+		for (ByteBuffer chunk : chunks) {
+			for (int entry = 0; entry < chunkBytes; entry += ENTRY_BYTES) {
+				long data = (long) LONGS.getOpaque(chunk, entry + 8);
+				long check = (long) LONGS.getOpaque(chunk, entry);
+				if (data != 0 && (tag < 0 || tag(data) == tag)) {
+					visitor.visit(check ^ data, (int) (data & DEPTH_BITS) - 1,
+							value(data));
+				}
+			}
+		}
+	}
+
+	@Override
+	public long size() {
+		long size = 0;
+		for (ByteBuffer chunk : chunks) {
+			for (int entry = 0; entry < chunkBytes; entry += ENTRY_BYTES) {
+				if ((long) LONGS.getOpaque(chunk, entry + 8) != 0) {
+					size ++;
+				}
+			}
+		}
+		return size;
+	}
+
+	@Override
+	public long getCapacity() {
+		return (bucketMask + 1) * BUCKET_ENTRIES;
+	}
+
+	@Override
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	@Override
+	public long getHits() {
+		return hits.sum();
+	}
+
+	private ByteBuffer chunk(long key) {
+		return chunks[(int) ((key & bucketMask) * BUCKET_BYTES / chunkBytes)];
+	}
+
+	private int offset(long key) {
+		return (int) ((key & bucketMask) * BUCKET_BYTES % chunkBytes);
+	}
+}
@@ -0,0 +1,347 @@
+/* Name: OpeningBook
+ * Description: This class is a book of opening moves, stored in a file that is
+ * searched where it lies instead of being read into memory.
+ */
+
+package src.model;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * The {@code OpeningBook} class gives the moves known to be good in the first
+ * states of a game, so that the computer plays them without searching. The
+ * book is a file starting with a header:
+ * <pre>
+ * int  magic ("CKBK")      int  version
+ * int  reserved            int  number of records
+ * long key of the start    long reserved
+ * </pre>
+ * followed by the records, sorted by key, each a {@code long} canonical key
+ * (see {@link Game#getCanonicalKey()}), the start and end index of the move
+ * as two bytes, an unsigned {@code short} weight and an {@code int} score for
+ * the player to move. A state with several moves has one record per move,
+ * heaviest first. The moves of a mirrored state are stored mirrored, so that
+ * a state and its mirror share their records.
+ * <p>
+ * The file is memory-mapped and searched by bisection, so opening a book
+ * costs nothing whatever its size, and only the pages of the states reached
+ * are ever read from the disk.
+ * <p>
+ * With {@code -Dcheckers.book=path}, every search player plays from the book
+ * as long as the game is in it. Books are made with
+ * {@link OpeningBook.Builder}, see {@code src.tools.BuildBook}.
+ */
+public final class OpeningBook {
+
+	/** The system property naming the book of the search players. */
+	public static final String BOOK_PROPERTY = "checkers.book";
+
+	/** The first bytes of a file, "CKBK". */
+	public static final int MAGIC = 0x434B424B;
+
+	/** The version of the format. */
+	public static final int VERSION = 1;
+
+	/** The number of bytes of the header. */
+	private static final int HEADER_BYTES = 32;
+
+	/** The number of bytes of a record. */
+	private static final int RECORD_BYTES = 16;
+
+	/** The highest weight of a move. */
+	public static final int MAX_WEIGHT = 0xFFFF;
+
+	/** The book of {@link #BOOK_PROPERTY}, once opened. */
+	private static OpeningBook defaultBook;
+
+	/** Whether {@link #defaultBook} was opened, or failed to. */
+	private static boolean defaultOpened;
+
+	/** The content of the file. */
+	private final MappedByteBuffer buffer;
+
+	/** The number of records. */
+	private final int count;
+
+	private OpeningBook(MappedByteBuffer buffer, int count) {
+		this.buffer = buffer;
+		this.count = count;
+	}
+
+	/**
+	 * Opens a book. Only the header is read.
+	 *
+	 * @param file	the file of the book.
+	 * @return the book.
+	 * @throws IOException if the file could not be read, is not a book or was
+	 * made for other keys.
+	 */
+	public static OpeningBook open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException(file + ": not a book");
+			}
+
+			// The mapping stays valid once the channel is closed
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + ": not a book");
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException(file + ": unsupported version "
+						+ buffer.getInt(4));
+			}
+			if (buffer.getLong(16) != new Game().getKey()) {
+				throw new IOException(file + ": made for other keys");
+			}
+			int count = buffer.getInt(12);
+			if (count < 0 || HEADER_BYTES + (long) count * RECORD_BYTES != size) {
+				throw new IOException(file + ": truncated");
+			}
+			return new OpeningBook(buffer, count);
+		}
+	}
+
+	/**
+	 * Gets the book named by {@link #BOOK_PROPERTY}, opening it the first
+	 * time. An error is reported once on the standard error stream.
+	 *
+	 * @return the book, or null if there is none.
+	 */
+	public static synchronized OpeningBook getDefault() {
+		if (!defaultOpened) {
+			defaultOpened = true;
+			String name = System.getProperty(BOOK_PROPERTY);
+			if (name != null && !name.isEmpty()) {
+				try {
+					defaultBook = open(Paths.get(name));
+				} catch (IOException e) {
+					System.err.println("Book not opened: " + e.getMessage());
+				}
+			}
+		}
+		return defaultBook;
+	}
+
+	/**
+	 * @return the number of records, i.e. of moves of all the states.
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Gets the moves of the book for a game state.
+	 *
+	 * @param game	the game state.
+	 * @return the moves, heaviest first, or an empty list if the state is not
+	 * in the book.
+	 */
+	public List<Entry> probe(Game game) {
+		long key = game.getCanonicalKey();
+		boolean mirrored = game.isMirrored();
+		List<Entry> entries = new ArrayList<>();
+		for (int i = first(key); i < count && keyAt(i) == key; i ++) {
+			int record = HEADER_BYTES + i * RECORD_BYTES;
+			int start = buffer.get(record + 8), end = buffer.get(record + 9);
+			if (mirrored) {
+				start = 31 - start;
+				end = 31 - end;
+			}
+			entries.add(new Entry(new Move(start, end, 0),
+					buffer.getShort(record + 10) & MAX_WEIGHT,
+					buffer.getInt(record + 12)));
+		}
+		return entries;
+	}
+
+	/**
+	 * Picks a move of the book for a game state, each with a chance in
+	 * proportion to its weight.
+	 *
+	 * @param game		the game state.
+	 * @param random	the source of the choice.
+	 * @return the move, or null if the state is not in the book.
+	 */
+	public Move choose(Game game, Random random) {
+		List<Entry> entries = probe(game);
+		int total = 0;
+		for (Entry entry : entries) {
+			total += entry.getWeight();
+		}
+		if (total <= 0) {
+			return entries.isEmpty()? null : entries.get(0).getMove();
+		}
+		int pick = random.nextInt(total);
+		for (Entry entry : entries) {
+			pick -= entry.getWeight();
+			if (pick < 0) {
+				return entry.getMove();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the first record whose key is not less than the given key.
+	 */
+	private int first(long key) {
+		int low = 0, high = count;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (keyAt(middle) < key) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	private long keyAt(int i) {
+		return buffer.getLong(HEADER_BYTES + i * RECORD_BYTES);
+	}
+
+	/**
+	 * The {@code Entry} class is a move of the book for a state.
+	 */
+	public static class Entry {
+
+		/** The move, for the state probed. */
+		private final Move move;
+
+		/** How often the move is played, relative to the other moves. */
+		private final int weight;
+
+		/** The score of the move for the player to move. */
+		private final int score;
+
+		public Entry(Move move, int weight, int score) {
+			this.move = move;
+			this.weight = weight;
+			this.score = score;
+		}
+
+		public Move getMove() {
+			return move;
+		}
+
+		public int getWeight() {
+			return weight;
+		}
+
+		public int getScore() {
+			return score;
+		}
+
+		@Override
+		public String toString() {
+			return (move.getStartIndex() + 1) + "-" + (move.getEndIndex() + 1)
+					+ " weight " + weight + " score " + score;
+		}
+	}
+
+	/**
+	 * The {@code Builder} class gathers the moves of a book and writes its
+	 * file. Adding the same move of a state again adds up the weights and
+	 * keeps the last score.
+	 */
+	public static class Builder {
+
+		/** The moves of each canonical key, by start and end index. */
+		private final Map<Long, Map<Integer, int[]>> states = new TreeMap<>(
+				Long::compare);
+
+		/**
+		 * Adds a move to the book.
+		 *
+		 * @param game		the state the move is played in.
+		 * @param move		the move.
+		 * @param weight	how often the move should be played.
+		 * @param score		the score of the move for the player to move.
+		 */
+		public void add(Game game, Move move, int weight, int score) {
+			int start = move.getStartIndex(), end = move.getEndIndex();
+			if (game.isMirrored()) {
+				start = 31 - start;
+				end = 31 - end;
+			}
+			int[] record = states.computeIfAbsent(game.getCanonicalKey(),
+					k -> new HashMap<>()).computeIfAbsent(start * 32 + end,
+					k -> new int[2]);
+			record[0] = Math.min(MAX_WEIGHT, record[0] + Math.max(0, weight));
+			record[1] = score;
+		}
+
+		/**
+		 * @return the number of states in the book.
+		 */
+		public int getStates() {
+			return states.size();
+		}
+
+		/**
+		 * Writes the book to a temporary file, then moves it over the file.
+		 *
+		 * @param file	the file to write.
+		 * @return the number of records written.
+		 * @throws IOException if the file could not be written.
+		 */
+		public int write(Path file) throws IOException {
+			int count = 0;
+			for (Map<Integer, int[]> moves : states.values()) {
+				count += moves.size();
+			}
+			Path absolute = file.toAbsolutePath();
+			Path temp = Files.createTempFile(absolute.getParent(),
+					absolute.getFileName().toString(), ".tmp");
+			try {
+				try (FileChannel channel = FileChannel.open(temp,
+						StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING)) {
+					MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0,
+							HEADER_BYTES + (long) count * RECORD_BYTES);
+					buffer.putInt(MAGIC).putInt(VERSION).putInt(0).putInt(count)
+							.putLong(new Game().getKey()).putLong(0);
+					for (Map.Entry<Long, Map<Integer, int[]>> state
+							: states.entrySet()) {
+						List<Map.Entry<Integer, int[]>> moves =
+								new ArrayList<>(state.getValue().entrySet());
+						Collections.sort(moves,
+								(a, b) -> b.getValue()[0] - a.getValue()[0]);
+						for (Map.Entry<Integer, int[]> move : moves) {
+							buffer.putLong(state.getKey())
+									.put((byte) (move.getKey() / 32))
+									.put((byte) (move.getKey() % 32))
+									.putShort((short) move.getValue()[0])
+									.putInt(move.getValue()[1]);
+						}
+					}
+					buffer.force();
+				}
+				Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+				return count;
+			} finally {
+				Files.deleteIfExists(temp);
+			}
+		}
+	}
+}
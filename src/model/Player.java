@@ -5,11 +5,17 @@
 
 package src.model;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * The {@code Player} class is an abstract class that represents a player in a
  * game of checkers.
  */
 public abstract class Player {
+	
+	/** The number of moves this player did not choose in time. */
+	private final AtomicInteger deadlineOverruns = new AtomicInteger();
 
 	/**
 	 * Determines how the game is updated. If true, the user must interact with
@@ -29,6 +35,73 @@ public abstract class Player {
 	 */
 	public abstract void updateGame(Game game);
 	
+	/**
+	 * Chooses a move for the current player of a game without modifying it.
+	 * If there is a move available that is multiple skips, only the first skip
+	 * is returned and the player is asked again for the next one.
+	 * <p>
+	 * The future is completed with a {@link DeadlineExceededException} if no
+	 * move was chosen before the deadline. Cancelling the future stops the
+	 * player from thinking about the move.
+	 * 
+	 * @param snapshot	the state of the game to choose a move for.
+	 * @param deadline	the time by which the move has to be chosen.
+	 * @return the future completed with the move chosen.
+	 */
+	public abstract CompletableFuture<Move> chooseMove(GameSnapshot snapshot,
+			Deadline deadline);
+	
+	/**
+	 * Lets the player think about the game while the opponent is taking its
+	 * turn. By default, nothing is done.
+	 * 
+	 * @param game	a copy of the game, with the opponent to move.
+	 * @see {@link #stopPondering()}
+	 */
+	public void ponder(Game game) {}
+	
+	/**
+	 * Stops any thinking started by {@link #ponder(Game)}.
+	 */
+	public void stopPondering() {}
+	
+	/**
+	 * Sets the listener notified of the progress of this player's searches.
+	 * By default, players do not search and nothing is reported.
+	 * 
+	 * @param listener	the listener, or null to stop reporting.
+	 */
+	public void setSearchListener(SearchListener listener) {}
+	
+	/**
+	 * Gets the number of moves this player did not choose before their
+	 * deadline.
+	 * 
+	 * @return the number of deadline overruns so far.
+	 */
+	public int getDeadlineOverruns() {
+		return deadlineOverruns.get();
+	}
+	
+	/**
+	 * Enforces a deadline on a future returned by
+	 * {@link #chooseMove(GameSnapshot, Deadline)} and counts it as an overrun
+	 * if it expires.
+	 * 
+	 * @param future	the future to complete in time.
+	 * @param deadline	the deadline of the move.
+	 * @return the same future.
+	 */
+	protected CompletableFuture<Move> enforce(CompletableFuture<Move> future,
+			Deadline deadline) {
+		deadline.enforce(future).whenComplete((move, error) -> {
+			if (error instanceof DeadlineExceededException) {
+				deadlineOverruns.incrementAndGet();
+			}
+		});
+		return future;
+	}
+	
 	@Override
 	public String toString() {
 		return getClass().getSimpleName() + "[isHuman=" + isHuman() + "]";
@@ -0,0 +1,96 @@
+/* Name: Proof
+ * Description: This class represents the result of a proof-number search:
+ * the proven value of a game state and the line of play proving it.
+ */
+
+package src.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code Proof} class is what a {@link ProofSolver} found for a game
+ * state: its value for the player to move, the line of play proving it, and
+ * what the search cost.
+ */
+public class Proof {
+
+	/** The value of a game state for the player to move. */
+	public enum Value {
+
+		/** The player to move wins, whatever the other player does. */
+		WIN,
+
+		/** The player to move loses, whatever it does. */
+		LOSS,
+
+		/**
+		 * Neither player was found to force a win. This is not a proof: the
+		 * search counts a repeated state as a failure of the attacker, and
+		 * uses that failure for the same state reached another way (the
+		 * graph history interaction problem), so a win may have been missed.
+		 */
+		DRAW,
+
+		/** The search ran out of nodes or time before proving anything. */
+		UNKNOWN
+	}
+
+	/** The proven value, for the player to move. */
+	private final Value value;
+
+	/** The quickest moves of the winner and the longest defence against them. */
+	private final List<Move> line;
+
+	/** The number of nodes searched. */
+	private final long nodes;
+
+	/** The time taken, in nanoseconds. */
+	private final long elapsed;
+
+	public Proof(Value value, List<Move> line, long nodes, long elapsed) {
+		this.value = value;
+		this.line = Collections.unmodifiableList(line);
+		this.nodes = nodes;
+		this.elapsed = elapsed;
+	}
+
+	public Value getValue() {
+		return value;
+	}
+
+	/**
+	 * Gets the principal line of the proof: the moves of the winning player
+	 * reaching the end of the game, or a state of the tablebase, the soonest,
+	 * and the defence holding out the longest, in the tree searched. It is
+	 * empty for a draw or an unknown value, and may stop early if the search
+	 * table lost a part of the proof.
+	 *
+	 * @return the moves, one per skip.
+	 */
+	public List<Move> getLine() {
+		return line;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getElapsedMillis() {
+		return elapsed / 1_000_000;
+	}
+
+	@Override
+	public String toString() {
+		String s = value + ", " + nodes + " nodes, " + getElapsedMillis()
+				+ " ms";
+		if (!line.isEmpty()) {
+			s += "\n" + line.size() + " moves:";
+			for (Move move : line) {
+				s += " " + (move.getStartIndex() + 1) + "-"
+						+ (move.getEndIndex() + 1);
+			}
+		}
+		return s;
+	}
+}
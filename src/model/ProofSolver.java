@@ -0,0 +1,612 @@
+/* Name: ProofSolver
+ * Description: This class proves the value of game states with a depth-first
+ * proof-number search, run by several threads over a shared table.
+ */
+
+package src.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import src.logic.Bitboard;
+
+/**
+ * The {@code ProofSolver} class proves forced wins with a df-pn search
+ * (depth-first proof-number search). Instead of scoring a state to a depth,
+ * it looks for a proof that one player, the attacker, wins whatever the other
+ * player does, or that it can't. A state is first tried with the player to
+ * move as the attacker, then, if it can't win, with the other player: the
+ * state is a {@link Proof.Value#WIN}, a {@link Proof.Value#LOSS} or, if
+ * neither player can force a win, a {@link Proof.Value#DRAW}.
+ * <p>
+ * Each state has two numbers, kept in a table of the solver: phi, the number
+ * of states to prove at least to show that the player to move reaches its
+ * goal (the attacker wins, the defender prevents it), and delta, the number
+ * to prove to show that it doesn't. A reached goal has a phi of 0, a missed
+ * one a delta of 0. The search always goes down the most proving state,
+ * staying under thresholds of the numbers so that it goes back up as soon as
+ * another state becomes better, and the 1 + epsilon trick lets a state be
+ * searched a quarter past its sibling before switching.
+ * <p>
+ * The moves are those of {@link Bitboard}, one per skip as in {@link Game}.
+ * A state repeated on the line being searched is a failure of the attacker,
+ * like a draw by repetition, while the draw by lack of progress is not taken
+ * into account. The states of the {@link Tablebase}, if any, are leaves of
+ * known value. A {@link Proof.Value#WIN} or {@link Proof.Value#LOSS} never
+ * relies on a repetition, which only helps the defender, but a draw may: a
+ * state found repeated on one line is stored as a failure of the attacker,
+ * and that failure is then used for the same state reached by another line
+ * (the graph history interaction problem), so a draw is not a proof.
+ * <p>
+ * Each solved state also keeps its distance to the end of the proof: the
+ * fewest moves to reach the goal, or the most moves the other player can
+ * hold out. The principal line follows them down to a won state.
+ * <p>
+ * The threads search from the root together, sharing the table: each
+ * marks the states it is in, and the others see the moves leading to them
+ * as that much harder, so that they spread over the tree.
+ */
+public class ProofSolver {
+
+	/** The phi or delta of a proven goal, and the most of the others. */
+	private static final int INFINITY = 1 << 28;
+
+	/** A state is searched 1 / 2^shift past its best sibling. */
+	private static final int EPSILON_SHIFT = 2;
+
+	/** The ints of an entry of the table: the state, then the numbers. */
+	private static final int ENTRY_INTS = 9;
+
+	/** The positions of the numbers in an entry. */
+	private static final int FLAGS = 4, PHI = 5, DELTA = 6, BUSY = 7,
+			DISTANCE = 8;
+
+	/** The bytes of an entry, with its work. */
+	private static final int ENTRY_BYTES = ENTRY_INTS * 4 + 8;
+
+	/** The number of entries a state can be stored in. */
+	private static final int WAYS = 4;
+
+	/** The number of locks of the table, each guarding a part of it. */
+	private static final int LOCKS = 1 << 10;
+
+	/** The number of nodes each thread searches between budget checks. */
+	private static final int CHECK_NODES = 1 << 10;
+
+	/** The most moves of a principal line. */
+	private static final int MAX_LINE = 400;
+
+	/** The state of each entry, its numbers and the threads in it. */
+	private final int[] entries;
+
+	/** The number of nodes searched below each entry. */
+	private final long[] works;
+
+	/** The number of buckets of {@link #WAYS} entries, less one. */
+	private final int bucketMask;
+
+	/** The locks of the buckets. */
+	private final Object[] locks = new Object[LOCKS];
+
+	/** The number of searching threads. */
+	private final int threads;
+
+	/** The exact values of the endgames, may be null. */
+	private Tablebase tablebase = Tablebase.getDefault();
+
+	/** The nodes searched by the current solve. */
+	private final LongAdder nodes = new LongAdder();
+
+	/** The node budget of the current solve. */
+	private long maxNodes;
+
+	/** The time budget of the current solve. */
+	private Deadline deadline;
+
+	/** True once the current solve ran out of budget. */
+	private volatile boolean stopped;
+
+	/** True once the root of the current proof is solved. */
+	private volatile boolean finished;
+
+	/**
+	 * Creates a solver with a thread per processor and a 64 MB table.
+	 */
+	public ProofSolver() {
+		this(Runtime.getRuntime().availableProcessors(), 64);
+	}
+
+	/**
+	 * Creates a solver.
+	 *
+	 * @param threads	the number of threads searching together.
+	 * @param tableMb	the size of the table, in megabytes.
+	 */
+	public ProofSolver(int threads, int tableMb) {
+		if (threads < 1 || tableMb < 1) {
+			throw new IllegalArgumentException("Threads: " + threads
+					+ ", table: " + tableMb + " MB");
+		}
+		this.threads = threads;
+		long fit = ((long) tableMb << 20) / (ENTRY_BYTES * WAYS);
+		int buckets = Integer.highestOneBit((int) Math.min(fit,
+				Integer.MAX_VALUE / (ENTRY_INTS * WAYS)));
+		this.bucketMask = buckets - 1;
+		this.entries = new int[buckets * WAYS * ENTRY_INTS];
+		this.works = new long[buckets * WAYS];
+		for (int i = 0; i < LOCKS; i ++) {
+			locks[i] = new Object();
+		}
+	}
+
+	/**
+	 * @param tablebase	the endgames whose states need no search, null for
+	 * none. The tablebase of {@code -Dcheckers.tablebase} by default.
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	public Tablebase getTablebase() {
+		return tablebase;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	/**
+	 * Proves the value of a game state for the player to move.
+	 *
+	 * @param game		the state to solve, which is not changed.
+	 * @param maxNodes	the most nodes to search, 0 or less for no limit.
+	 * @param deadline	the time by which to give up.
+	 * @return the value proven, {@link Proof.Value#UNKNOWN} if the budget
+	 * ran out first, with its principal line.
+	 */
+	public synchronized Proof solve(Game game, long maxNodes,
+			Deadline deadline) {
+		long start = System.nanoTime();
+		Arrays.fill(entries, 0);
+		Arrays.fill(works, 0);
+		this.nodes.reset();
+		this.maxNodes = (maxNodes <= 0)? Long.MAX_VALUE : maxNodes;
+		this.deadline = deadline;
+		this.stopped = false;
+
+		Bitboard root = Bitboard.of(game);
+		boolean mover = root.isP2Turn();
+		Proof.Value value = Proof.Value.UNKNOWN;
+		List<Move> line = new ArrayList<>();
+		Boolean wins = prove(root, mover);
+		if (wins == Boolean.TRUE) {
+			value = Proof.Value.WIN;
+			line = getLine(root, mover);
+		} else if (wins == Boolean.FALSE) {
+			Boolean loses = prove(root, !mover);
+			if (loses == Boolean.TRUE) {
+				value = Proof.Value.LOSS;
+				line = getLine(root, !mover);
+			} else if (loses == Boolean.FALSE) {
+				value = Proof.Value.DRAW;
+			}
+		}
+		return new Proof(value, line, nodes.sum(), System.nanoTime() - start);
+	}
+
+	/**
+	 * Searches until the root is solved for an attacker.
+	 *
+	 * @return true if the attacker wins, false if it doesn't, null if the
+	 * budget ran out.
+	 */
+	private Boolean prove(Bitboard root, boolean attacker) {
+		this.finished = false;
+		Thread[] helpers = new Thread[threads - 1];
+		RuntimeException[] failure = new RuntimeException[1];
+		for (int i = 0; i < helpers.length; i ++) {
+			helpers[i] = new Thread(() -> {
+				try {
+					new Searcher(attacker).run(root);
+				} catch (RuntimeException e) {
+					failure[0] = e;
+					stopped = true;
+				}
+			}, "proof-solver-" + (i + 1));
+			helpers[i].setDaemon(true);
+			helpers[i].start();
+		}
+		new Searcher(attacker).run(root);
+		this.finished = true;
+		for (Thread helper : helpers) {
+			try {
+				helper.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				stopped = true;
+			}
+		}
+		if (failure[0] != null) {
+			throw failure[0];
+		}
+
+		int[] numbers = lookup(root, attacker, new int[4]);
+		boolean goal = (numbers[0] == 0);
+		if (!goal && numbers[1] != 0) {
+			return null;
+		}
+		return goal == (root.isP2Turn() == attacker);
+	}
+
+	/**
+	 * The search of one thread, with the states of its current line.
+	 */
+	private class Searcher {
+
+		/** The player trying to win. */
+		private final boolean attacker;
+
+		/** The states from the root to the current one. */
+		private final Set<Bitboard> path = new HashSet<>();
+
+		/** The nodes searched since the last budget check. */
+		private int unchecked;
+
+		/** The nodes searched by this thread. */
+		private long searched;
+
+		Searcher(boolean attacker) {
+			this.attacker = attacker;
+		}
+
+		void run(Bitboard root) {
+			int[] numbers = new int[4];
+			while (!stopped) {
+				search(root, INFINITY, INFINITY);
+				lookup(root, attacker, numbers);
+				if (numbers[0] == 0 || numbers[1] == 0) {
+					break;
+				}
+			}
+			nodes.add(unchecked);
+			unchecked = 0;
+		}
+
+		/**
+		 * Searches a state until its phi or delta reaches its threshold, or
+		 * the budget runs out, and stores its numbers.
+		 */
+		private void search(Bitboard node, int maxPhi, int maxDelta) {
+			searched ++;
+			if (++ unchecked == CHECK_NODES) {
+				nodes.add(unchecked);
+				unchecked = 0;
+				if (nodes.sum() >= maxNodes || deadline.isExpired()) {
+					stopped = true;
+				}
+			}
+			if (stopped || finished) {
+				return;
+			}
+
+			// The leaves
+			int[] moves = new int[Bitboard.MAX_MOVES];
+			int count = node.getMoves(moves);
+			if (count == 0) {
+				store(node, attacker, INFINITY, 0, 0, 1);
+				return;
+			}
+			int leaf = probeTablebase(node, attacker);
+			if (leaf >= 0) {
+				store(node, attacker, leaf == 0? 0 : INFINITY,
+						leaf == 0? INFINITY : 0, 0, 1);
+				return;
+			}
+
+			Bitboard[] children = new Bitboard[count];
+			boolean[] same = new boolean[count];
+			for (int i = 0; i < count; i ++) {
+				children[i] = node.copy();
+				children[i].play(moves[i]);
+				same[i] = (children[i].isP2Turn() == node.isP2Turn());
+			}
+
+			path.add(node);
+			busy(node, attacker, 1);
+			long before = searched;
+			int[] numbers = new int[4];
+			int phi = 1, delta = 1, distance = 0;
+			try {
+				while (true) {
+
+					// The numbers of the node from those of its moves: a is
+					// the cost for the player to move of proving a move, b of
+					// refuting it. The distance of the goal is the shortest of
+					// the moves reaching it, or else the longest of all
+					long sum = 0;
+					int min = INFINITY;
+					int shortest = INFINITY, longest = 0;
+					int best = 0, bestB = 0;
+					long bestA = Long.MAX_VALUE, secondA = INFINITY;
+					for (int i = 0; i < count; i ++) {
+						int a, b, d = 0;
+						long effective;
+						if (path.contains(children[i])) {
+							boolean fails = (node.isP2Turn() == attacker);
+							a = fails? INFINITY : 0;
+							b = fails? 0 : INFINITY;
+							effective = a;
+						} else {
+							lookup(children[i], attacker, numbers);
+							a = same[i]? numbers[0] : numbers[1];
+							b = same[i]? numbers[1] : numbers[0];
+							d = numbers[3];
+							effective = (a == 0 || a == INFINITY)? a
+									: Math.min(INFINITY - 1,
+											(long) a * (1 + numbers[2]));
+						}
+						if (a == 0) {
+							shortest = Math.min(shortest, d);
+						}
+						longest = Math.max(longest, d);
+						min = Math.min(min, a);
+						sum += b;
+						if (effective < bestA) {
+							secondA = Math.min(bestA, INFINITY);
+							bestA = effective;
+							best = i;
+							bestB = b;
+						} else if (effective < secondA) {
+							secondA = effective;
+						}
+					}
+					phi = min;
+					delta = (min == 0)? INFINITY
+							: (int) Math.min(sum, INFINITY - 1);
+					distance = 1 + (min == 0? shortest : longest);
+					if (phi >= maxPhi || delta >= maxDelta || stopped
+							|| finished) {
+						break;
+					}
+
+					// Search the best move until its sibling is better
+					int childA = (int) Math.min(maxPhi, Math.min(INFINITY,
+							secondA + (secondA >> EPSILON_SHIFT) + 1));
+					int childB = (int) Math.min(INFINITY,
+							(long) maxDelta - delta + bestB);
+					if (same[best]) {
+						search(children[best], childA, childB);
+					} else {
+						search(children[best], childB, childA);
+					}
+				}
+			} finally {
+				path.remove(node);
+				busy(node, attacker, -1);
+			}
+			store(node, attacker, phi, delta, distance, searched - before);
+		}
+	}
+
+	/**
+	 * Probes the tablebase for the goal of the player to move.
+	 *
+	 * @return 0 if the goal is reached, 1 if it is missed, -1 if the state is
+	 * not in the tablebase.
+	 */
+	private int probeTablebase(Bitboard node, boolean attacker) {
+		Tablebase base = tablebase;
+		if (base == null || node.getPieceCount() > base.getMaxPieces()) {
+			return -1;
+		}
+		Integer value = base.probe(node);
+		if (value == null) {
+			return -1;
+		}
+		boolean reached = (value > 0)
+				|| (value == 0 && node.isP2Turn() != attacker);
+		return reached? 0 : 1;
+	}
+
+	/**
+	 * Follows the proof from the root: the moves reaching the goal the
+	 * soonest, against the moves missing it the latest, leaving out the
+	 * states already on the line.
+	 */
+	private List<Move> getLine(Bitboard root, boolean attacker) {
+		List<Move> line = new ArrayList<>();
+		Set<Bitboard> seen = new HashSet<>();
+		int[] moves = new int[Bitboard.MAX_MOVES];
+		int[] numbers = new int[4];
+		Bitboard node = root;
+		while (line.size() < MAX_LINE && seen.add(node)) {
+			int count = node.getMoves(moves);
+			if (count == 0 || probeTablebase(node, attacker) >= 0) {
+				break;
+			}
+			lookup(node, attacker, numbers);
+			if (numbers[0] != 0 && numbers[1] != 0) {
+				break;
+			}
+			boolean reached = (numbers[0] == 0);
+
+			Bitboard next = null;
+			int move = 0;
+			int pick = reached? Integer.MAX_VALUE : -1;
+			for (int i = 0; i < count; i ++) {
+				Bitboard child = node.copy();
+				child.play(moves[i]);
+				if (seen.contains(child)) {
+					continue;
+				}
+				lookup(child, attacker, numbers);
+				boolean same = (child.isP2Turn() == node.isP2Turn());
+				boolean proves = (same? numbers[0] : numbers[1]) == 0;
+				boolean refutes = (same? numbers[1] : numbers[0]) == 0;
+				int distance = numbers[3];
+				if (reached? proves && distance < pick
+						: refutes && distance > pick) {
+					pick = distance;
+					next = child;
+					move = moves[i];
+				}
+			}
+			if (next == null) {
+				break;
+			}
+			line.add(Bitboard.toMove(move));
+			node = next;
+		}
+		return line;
+	}
+
+	/**
+	 * Gets the numbers of a state.
+	 *
+	 * @param numbers	receives phi, delta, the number of threads in it and
+	 * the distance to the end of its proof, 1, 1, 0 and 0 for a state not in
+	 * the table.
+	 * @return the same numbers.
+	 */
+	private int[] lookup(Bitboard node, boolean attacker, int[] numbers) {
+		int bucket = bucket(node, attacker);
+		synchronized (locks[bucket & (LOCKS - 1)]) {
+			int entry = find(bucket, node, attacker);
+			if (entry < 0) {
+				numbers[0] = 1;
+				numbers[1] = 1;
+				numbers[2] = 0;
+				numbers[3] = 0;
+			} else {
+				numbers[0] = entries[entry + PHI];
+				numbers[1] = entries[entry + DELTA];
+				numbers[2] = entries[entry + BUSY];
+				numbers[3] = entries[entry + DISTANCE];
+			}
+		}
+		return numbers;
+	}
+
+	/**
+	 * Stores the numbers of a state, adding to the work done below it.
+	 */
+	private void store(Bitboard node, boolean attacker, int phi, int delta,
+			int distance, long work) {
+		int bucket = bucket(node, attacker);
+		synchronized (locks[bucket & (LOCKS - 1)]) {
+			int entry = find(bucket, node, attacker);
+			if (entry < 0) {
+				entry = replace(bucket, node, attacker);
+				if (entry < 0) {
+					return;
+				}
+			}
+			entries[entry + PHI] = phi;
+			entries[entry + DELTA] = delta;
+			entries[entry + DISTANCE] = distance;
+			works[entry / ENTRY_INTS] += work;
+		}
+	}
+
+	/**
+	 * Counts a thread in or out of a state.
+	 */
+	private void busy(Bitboard node, boolean attacker, int change) {
+		int bucket = bucket(node, attacker);
+		synchronized (locks[bucket & (LOCKS - 1)]) {
+			int entry = find(bucket, node, attacker);
+			if (entry < 0 && change > 0) {
+				entry = replace(bucket, node, attacker);
+			}
+			if (entry >= 0) {
+				entries[entry + BUSY] = Math.max(0,
+						entries[entry + BUSY] + change);
+			}
+		}
+	}
+
+	/**
+	 * Finds the entry of a state in its bucket, with its lock held.
+	 *
+	 * @return the index of the entry, -1 if it is not in the table.
+	 */
+	private int find(int bucket, Bitboard node, boolean attacker) {
+		int flags = flags(node, attacker);
+		int first = bucket * WAYS * ENTRY_INTS;
+		for (int entry = first; entry < first + WAYS * ENTRY_INTS;
+				entry += ENTRY_INTS) {
+			if (entries[entry + FLAGS] == flags
+					&& entries[entry] == node.getBlackCheckers()
+					&& entries[entry + 1] == node.getBlackKings()
+					&& entries[entry + 2] == node.getWhiteCheckers()
+					&& entries[entry + 3] == node.getWhiteKings()) {
+				return entry;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Makes room for a state in its bucket, with its lock held: an empty
+	 * entry, or else the one with the least work that no thread is in.
+	 *
+	 * @return the index of the new entry, -1 if all are in use.
+	 */
+	private int replace(int bucket, Bitboard node, boolean attacker) {
+		int first = bucket * WAYS * ENTRY_INTS;
+		int victim = -1;
+		for (int entry = first; entry < first + WAYS * ENTRY_INTS;
+				entry += ENTRY_INTS) {
+			if (entries[entry + FLAGS] == 0) {
+				victim = entry;
+				break;
+			}
+			if (entries[entry + BUSY] == 0 && (victim < 0
+					|| works[entry / ENTRY_INTS] < works[victim / ENTRY_INTS])) {
+				victim = entry;
+			}
+		}
+		if (victim >= 0) {
+			entries[victim] = node.getBlackCheckers();
+			entries[victim + 1] = node.getBlackKings();
+			entries[victim + 2] = node.getWhiteCheckers();
+			entries[victim + 3] = node.getWhiteKings();
+			entries[victim + FLAGS] = flags(node, attacker);
+			entries[victim + PHI] = 1;
+			entries[victim + DELTA] = 1;
+			entries[victim + BUSY] = 0;
+			entries[victim + DISTANCE] = 0;
+			works[victim / ENTRY_INTS] = 0;
+		}
+		return victim;
+	}
+
+	/**
+	 * The rest of the state in an entry, never 0 for a used one: the player
+	 * to move, the skipping checker and the attacker.
+	 */
+	private static int flags(Bitboard node, boolean attacker) {
+		return 1 | (node.isP2Turn()? 2 : 0) | (attacker? 4 : 0)
+				| (node.getSkipIndex() + 1) << 3;
+	}
+
+	private int bucket(Bitboard node, boolean attacker) {
+		long h = (node.getBlackCheckers() & 0xFFFFFFFFL)
+				| (long) node.getBlackKings() << 32;
+		h = mix(h) ^ ((node.getWhiteCheckers() & 0xFFFFFFFFL)
+				| (long) node.getWhiteKings() << 32);
+		h = mix(h + flags(node, attacker));
+		return (int) (h >>> 32) & bucketMask;
+	}
+
+	/** The finalizer of SplitMix64, spreading the bits of a key. */
+	private static long mix(long h) {
+		h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+		h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+		return h ^ (h >>> 31);
+	}
+}
@@ -0,0 +1,42 @@
+/* Name: SearchExecutor
+ * Description: This class holds the threads that computer players search on.
+ */
+
+package src.model;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The {@code SearchExecutor} class provides the executor that searches are
+ * run on, so that they never block the thread of the user interface. It has
+ * one daemon thread per processor. A search running on it is cancelled by
+ * interrupting its thread, e.g. with
+ * {@link java.util.concurrent.Future#cancel(boolean)}.
+ */
+public final class SearchExecutor {
+
+	/** The number of threads created so far, used to name them. */
+	private static final AtomicInteger THREADS = new AtomicInteger();
+	
+	/** The executor shared by all searches. */
+	private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+			Runtime.getRuntime().availableProcessors(), r -> {
+				Thread thread = new Thread(r,
+						"search-" + THREADS.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+	
+	private SearchExecutor() {}
+	
+	/**
+	 * Gets the executor to run searches on.
+	 * 
+	 * @return the shared search executor.
+	 */
+	public static ExecutorService get() {
+		return EXECUTOR;
+	}
+}
@@ -0,0 +1,100 @@
+/* Name: SearchInfo
+ * Description: This class is a snapshot of the progress of a search.
+ */
+
+package src.model;
+
+import java.util.List;
+
+/**
+ * The {@code SearchInfo} class holds the progress of a search at some point in
+ * time: the depth searched, the best score and line found so far and how many
+ * nodes were visited.
+ */
+public class SearchInfo {
+
+	/** The player running the search. */
+	private final Player player;
+	
+	/** The maximum depth of the search. */
+	private final int depth;
+	
+	/** The score of the best move so far. */
+	private final int score;
+	
+	/** The best line found so far, starting with the best move. */
+	private final List<Move> pv;
+	
+	/** The number of nodes visited so far. */
+	private final long nodes;
+	
+	/** The time spent searching, in nanoseconds. */
+	private final long elapsed;
+	
+	/** The flag indicating if the search runs on the opponent's time. */
+	private final boolean pondering;
+	
+	public SearchInfo(Player player, int depth, int score, List<Move> pv,
+			long nodes, long elapsed, boolean pondering) {
+		this.player = player;
+		this.depth = depth;
+		this.score = score;
+		this.pv = pv;
+		this.nodes = nodes;
+		this.elapsed = elapsed;
+		this.pondering = pondering;
+	}
+
+	public Player getPlayer() {
+		return player;
+	}
+
+	public int getDepth() {
+		return depth;
+	}
+
+	public int getScore() {
+		return score;
+	}
+
+	public List<Move> getPv() {
+		return pv;
+	}
+
+	public long getNodes() {
+		return nodes;
+	}
+
+	public long getElapsedMillis() {
+		return elapsed / 1_000_000;
+	}
+
+	public long getElapsedNanos() {
+		return elapsed;
+	}
+
+	public boolean isPondering() {
+		return pondering;
+	}
+	
+	/**
+	 * Gets the search speed.
+	 * 
+	 * @return the number of nodes visited per second.
+	 */
+	public long getNodesPerSecond() {
+		return elapsed <= 0? 0 : nodes * 1_000_000_000L / elapsed;
+	}
+	
+	@Override
+	public String toString() {
+		String line = "";
+		for (Move move : pv) {
+			line += " " + (move.getStartIndex() + 1) + "-"
+					+ (move.getEndIndex() + 1);
+		}
+		return (pondering? "pondering " : "") + "depth " + depth
+				+ "  score " + score + "  nodes " + nodes
+				+ "  " + getNodesPerSecond() / 1000 + " kN/s  pv" + line;
+	}
+}
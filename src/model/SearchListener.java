@@ -0,0 +1,32 @@
+/* Name: SearchListener
+ * Description: This interface receives the progress of a computer player's
+ * search.
+ */
+
+package src.model;
+
+/**
+ * The {@code SearchListener} interface is notified of the progress of the
+ * searches run by a player. It is called on the thread running the search, so
+ * a user interface needs to hand the {@link SearchInfo} over to its own thread.
+ * 
+ * @see {@link Player#setSearchListener(SearchListener)}
+ */
+public interface SearchListener {
+
+	/**
+	 * Called now and then while a search is running, and once when it ends.
+	 * 
+	 * @param info	the state of the search.
+	 */
+	void searchProgress(SearchInfo info);
+
+	/**
+	 * Called each time an iteration of the search is completed, so that the
+	 * time and nodes it took to reach each depth can be recorded.
+	 * 
+	 * @param info	the state of the search, with the depth just completed.
+	 */
+	default void iterationCompleted(SearchInfo info) {
+	}
+}
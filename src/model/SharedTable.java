@@ -0,0 +1,160 @@
+/* Name: SharedTable
+ * Description: This class is a view of a transposition table shared by all
+ * the games of the process.
+ */
+
+package src.model;
+
+/**
+ * The {@code SharedTable} class lets many search players, playing many games
+ * at the same time, use a single process-wide {@link OffHeapTable}. The
+ * openings and early middlegames repeat a lot from one game to the next, so
+ * a state searched in one game is often found in the table by the others.
+ * The table is lock-free and ages the entries no game uses any more, see
+ * {@link OffHeapTable#newSearch()}.
+ * <p>
+ * Each player gets its own view, counting the lookups and stores of its
+ * game. Clearing a view only resets these counts: the entries belong to all
+ * the games. The entries of canonical and plain keys can be mixed, as both
+ * store the value for black of the state of the key.
+ * <p>
+ * The values of a state differ from one evaluation to another, so a view
+ * XORs the keys with a salt drawn from the fingerprint of the evaluation of
+ * its player ({@link #setEvaluation(long)}). The players of the same
+ * evaluation share their entries, while those of another one, e.g. an Easy
+ * player with its own noise, never find them. Changing the evaluation of a
+ * view thus forgets its entries, which age out of the table. The entries are
+ * also tagged with bits of the salt, so that {@link #forEach(Visitor)} only
+ * gives those of the evaluation of the view, but for the few of another
+ * evaluation with the same tag, under keys no state has.
+ * <p>
+ * The shared table is created the first time it is used, with the size of
+ * {@code -Dcheckers.table.mb} or {@link #DEFAULT_ENTRIES} entries. It is the
+ * only off-heap table of the process: the players of
+ * {@code -Dcheckers.table=offheap} all get views of it, so that its size is
+ * the memory of the process rather than of each player.
+ */
+public class SharedTable implements TranspositionTable {
+
+	/** The number of entries of the shared table if no size is given. */
+	public static final long DEFAULT_ENTRIES = 1 << 24;
+
+	/** The table shared by the process, once created. */
+	private static OffHeapTable shared;
+
+	/** The shared table. */
+	private final OffHeapTable table;
+
+	/** The number of lookups, hits and stores made through this view. */
+	private long probes, hits, stores;
+
+	/** XOR-ed with the keys, to keep apart the entries of each evaluation. */
+	private long salt;
+
+	/** The tag of the entries of the evaluation, the high bits of the salt. */
+	private int tag;
+
+	/**
+	 * Creates a new view of the shared table, creating the table if needed.
+	 */
+	public SharedTable() {
+		this.table = getShared();
+	}
+
+	/**
+	 * @return the table shared by the process.
+	 */
+	public static synchronized OffHeapTable getShared() {
+		if (shared == null) {
+			shared = TranspositionTable.createOffHeap(DEFAULT_ENTRIES);
+		}
+		return shared;
+	}
+
+	@Override
+	public void add(long key, int depth, int value) {
+		stores ++;
+		table.add(key ^ salt, depth, value, tag);
+	}
+
+	@Override
+	public int probe(long key, int depth) {
+		probes ++;
+		int value = table.probe(key ^ salt, depth);
+		if (value != MISSING) {
+			hits ++;
+		}
+		return value;
+	}
+
+	/**
+	 * Resets the counts of this view. The shared entries are kept.
+	 */
+	@Override
+	public void clear() {
+		this.probes = 0;
+		this.hits = 0;
+		this.stores = 0;
+	}
+
+	@Override
+	public void newSearch() {
+		table.newSearch();
+	}
+
+	@Override
+	public void setEvaluation(long fingerprint) {
+		this.salt = Zobrist.mix(fingerprint);
+		this.tag = (int) (salt >>> (Long.SIZE - OffHeapTable.TAG_BITS));
+	}
+
+	@Override
+	public void forEach(Visitor visitor) {
+		table.forEach(tag, (key, depth, value) -> visitor.visit(key ^ salt,
+				depth, value));
+	}
+
+	@Override
+	public long size() {
+		return table.size();
+	}
+
+	@Override
+	public long getCapacity() {
+		return table.getCapacity();
+	}
+
+	@Override
+	public long getProbes() {
+		return probes;
+	}
+
+	@Override
+	public long getHits() {
+		return hits;
+	}
+
+	public long getStores() {
+		return stores;
+	}
+
+	/**
+	 * Two views are equal if they share the same table, so that a set of
+	 * tables holds the shared one once.
+	 */
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof SharedTable && ((SharedTable) o).table == table;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(table);
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + "[probes=" + probes + ", hits="
+				+ hits + ", stores=" + stores + "]";
+	}
+}
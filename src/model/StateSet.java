@@ -1,22 +1,336 @@
 package src.model;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
-public class StateSet {
-	HashMap<String,Integer> set;
+/**
+ * The {@code StateSet} class maps the keys of game states to their searched
+ * value and depth. It is an open-addressing hash table with linear probing
+ * over two primitive arrays, so an entry costs 12 bytes (a {@code long} key
+ * and an {@code int} value) instead of the boxed objects of a
+ * {@link java.util.HashMap}.
+ * <p>
+ * The table grows as needed up to its capacity. Once full, it either keeps
+ * growing or, if eviction is enabled, makes room by dropping an entry that was
+ * not used recently, picked by the CLOCK algorithm: a hand sweeps the slots,
+ * giving a second chance to the entries used since its last pass.
+ * <p>
+ * The capacity of an evicting table can be changed by the {@link MemoryBudget}
+ * while a search uses it: the new capacity is only applied by the next call
+ * to {@link #newSearch()}, from the searching thread.
+ * <p>
+ * A {@code StateSet} is not thread-safe, see {@link OffHeapTable} for a table
+ * that can be shared.
+ */
+public class StateSet implements TranspositionTable, MemoryBudget.Cache {
+
+	/** The key marking a free slot. */
+	private static final long EMPTY = 0;
+
+	/** The key stored instead of {@link #EMPTY} if a state hashes to it. */
+	private static final long EMPTY_REPLACEMENT = 0x5F3759DF5F3759DFL;
+
+	/** The bits of a value holding the depth. */
+	private static final int DEPTH_MASK = 0xFF;
+
+	/** The bit of a value set when the entry is used, cleared by the hand. */
+	private static final int REFERENCED = 1 << 8;
+
+	/** The number of bits under the searched value. */
+	private static final int VALUE_SHIFT = 9;
+
+	/** The number of bytes of a slot. */
+	private static final int SLOT_BYTES = 12;
+
+	/** The number of slots of a new table. */
+	private static final int INITIAL_SLOTS = 1 << 10;
+
+	/** The keys, or {@link #EMPTY} for a free slot. */
+	private long[] keys;
+
+	/** The searched value, referenced bit and depth of each key. */
+	private int[] values;
+
+	/** The number of slots minus one, to turn a hash into a slot index. */
+	private int mask;
+
+	/** The number of entries. */
+	private int size;
+
+	/** The number of entries after which the table is full. */
+	private int capacity;
+
+	/** The capacity the table was created with. */
+	private final int wantedCapacity;
+
+	/** The capacity to change to at the next search, or -1 to keep it. */
+	private volatile int pendingCapacity = -1;
+
+	/** The memory of the arrays once the table is full, in bytes. */
+	private volatile long bytes;
+
+	/** Whether entries are evicted when the table is full. */
+	private final boolean evict;
+
+	/** The next slot the eviction hand looks at. */
+	private int hand;
+
+	/** The number of lookups, and how many of them found an entry. */
+	private long probes, hits;
+
+	/**
+	 * Creates a table that grows without limit.
+	 */
 	public StateSet() {
-		this.set = new HashMap<String,Integer>();
+		this(Integer.MAX_VALUE, false);
+	}
+
+	/**
+	 * Creates a table of a given capacity.
+	 *
+	 * @param capacity	the number of entries the table can hold.
+	 * @param evict		true to drop old entries once the table is full, false
+	 * to let it grow past its capacity.
+	 */
+	public StateSet(int capacity, boolean evict) {
+		this.capacity = Math.max(1, capacity);
+		this.wantedCapacity = this.capacity;
+		this.bytes = (long) slotsFor(this.capacity) * SLOT_BYTES;
+		this.evict = evict;
+		allocate(Math.min(INITIAL_SLOTS, slotsFor(this.capacity)));
+	}
+
+	/**
+	 * Stores the value of a state searched to the given depth, replacing any
+	 * earlier value of the state. The depth is kept in the low 8 bits of the
+	 * entry so that a later lookup can tell whether the entry was searched
+	 * deep enough.
+	 *
+	 * @param key	the key of the state, see {@link Game#getKey()}.
+	 */
+	@Override
+	public void add(long key, int depth, int value) {
+		key = (key == EMPTY)? EMPTY_REPLACEMENT : key;
+		int entry = (value << VALUE_SHIFT) | REFERENCED | (depth & DEPTH_MASK);
+		int slot = find(key);
+		if (keys[slot] == key) {
+			this.values[slot] = entry;
+			return;
+		}
+
+		// Make room for the new entry
+		if (size >= capacity && evict) {
+			evictOne();
+			slot = find(key);
+		} else if (size + 1 > keys.length / 4 * 3) {
+			allocate(keys.length * 2);
+			slot = find(key);
+		}
+		this.keys[slot] = key;
+		this.values[slot] = entry;
+		this.size ++;
+	}
+
+	/**
+	 * @return the value stored for the state if it was searched at least to
+	 * the given depth, {@link #MISSING} otherwise.
+	 */
+	@Override
+	public int probe(long key, int depth) {
+		probes ++;
+		key = (key == EMPTY)? EMPTY_REPLACEMENT : key;
+		int slot = find(key);
+		if (keys[slot] != key || (values[slot] & DEPTH_MASK) < depth) {
+			return MISSING;
+		}
+		hits ++;
+		this.values[slot] |= REFERENCED;
+		return values[slot] >> VALUE_SHIFT;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Changes the number of entries the table can hold. If it holds more, the
+	 * entries not used recently are removed, and the arrays shrink if they
+	 * are larger than needed.
+	 *
+	 * @param capacity	the new capacity.
+	 */
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		this.bytes = (long) slotsFor(this.capacity) * SLOT_BYTES;
+		while (size > this.capacity) {
+			evictOne();
+		}
+		int slots = slotsFor(this.capacity);
+		if (slots < keys.length) {
+			allocate(Math.max(slots, INITIAL_SLOTS));
+		}
+	}
+
+	/**
+	 * Applies the capacity asked for by {@link #resize(long)}, if any.
+	 */
+	@Override
+	public void newSearch() {
+		int pending = pendingCapacity;
+		if (pending >= 0) {
+			this.pendingCapacity = -1;
+			setCapacity(pending);
+		}
+	}
+
+	/**
+	 * @return the memory of the table once full, as it grows when needed.
+	 */
+	@Override
+	public long getBytes() {
+		return bytes;
 	}
-	
-	public void add(Game etat, int value) {
-		this.set.put(etat.toString(),Integer.valueOf(value));
+
+	@Override
+	public long getWantedBytes() {
+		return (long) slotsFor(wantedCapacity) * SLOT_BYTES;
 	}
-	
-	public Integer getValue(Game etat) {
-		return this.set.get(etat.toString());
+
+	/**
+	 * Asks for the capacity fitting in the given memory, applied at the next
+	 * {@link #newSearch()}.
+	 */
+	@Override
+	public void resize(long bytes) {
+		long slots = Long.highestOneBit(Math.max(1, bytes / SLOT_BYTES));
+		this.pendingCapacity = (int) Math.min(wantedCapacity, slots / 4 * 3);
+	}
+
+	/**
+	 * Removes all the entries, keeping the memory of the table for the next
+	 * ones.
+	 */
+	@Override
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		this.size = 0;
+		this.hand = 0;
+	}
+
+	@Override
+	public void forEach(Visitor visitor) {
+		for (int i = 0; i < keys.length; i ++) {
+			if (keys[i] != EMPTY) {
+				visitor.visit(keys[i], values[i] & DEPTH_MASK,
+						values[i] >> VALUE_SHIFT);
+			}
+		}
+	}
+
+	@Override
+	public long getProbes() {
+		return probes;
 	}
-	
-	public int size() {
-		return this.set.size();
+
+	@Override
+	public long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the slot holding a key, or the free slot ending its probe sequence
+	 * if the key is not in the table.
+	 */
+	private int find(long key) {
+		int slot = hash(key);
+		while (keys[slot] != EMPTY && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int hash(long key) {
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	/**
+	 * Moves the hand to the first entry not used since its last pass, and
+	 * removes it.
+	 */
+	private void evictOne() {
+		while (true) {
+			int slot = hand;
+			this.hand = (hand + 1) & mask;
+			if (keys[slot] == EMPTY) {
+				continue;
+			}
+			if ((values[slot] & REFERENCED) != 0) {
+				this.values[slot] &= ~REFERENCED;
+				continue;
+			}
+			remove(slot);
+			return;
+		}
+	}
+
+	/**
+	 * Removes the entry of a slot, shifting back the entries after it so that
+	 * no probe sequence is broken by the free slot.
+	 */
+	private void remove(int slot) {
+		int gap = slot;
+		for (int i = (gap + 1) & mask; keys[i] != EMPTY; i = (i + 1) & mask) {
+
+			// The entry can fill the gap if the gap is on its probe sequence
+			int home = hash(keys[i]);
+			if (((i - home) & mask) >= ((i - gap) & mask)) {
+				this.keys[gap] = keys[i];
+				this.values[gap] = values[i];
+				gap = i;
+			}
+		}
+		this.keys[gap] = EMPTY;
+		this.size --;
+	}
+
+	/**
+	 * Replaces the arrays with new ones of the given number of slots, moving
+	 * the entries over.
+	 */
+	private void allocate(int slots) {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		this.keys = new long[slots];
+		this.values = new int[slots];
+		this.mask = slots - 1;
+		this.hand = 0;
+		if (oldKeys == null) {
+			return;
+		}
+		for (int i = 0; i < oldKeys.length; i ++) {
+			if (oldKeys[i] != EMPTY) {
+				int slot = find(oldKeys[i]);
+				this.keys[slot] = oldKeys[i];
+				this.values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of slots holding a number of entries at a load factor
+	 * of at most 3/4, as a power of 2.
+	 */
+	private static int slotsFor(int entries) {
+		long needed = Math.max(1, (long) entries * 4 / 3);
+		long slots = Long.highestOneBit(needed);
+		if (slots < needed) {
+			slots <<= 1;
+		}
+		return (int) Math.min(slots, 1 << 30);
 	}
 }
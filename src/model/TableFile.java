@@ -0,0 +1,333 @@
+/* Name: TableFile
+ * Description: This class saves transposition tables to a file and loads them
+ * back, so that the searches of a session are not lost at the next one.
+ */
+
+package src.model;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * The {@code TableFile} class writes the deepest entries of transposition
+ * tables to a memory-mapped file and reads them back into a table. The file
+ * starts with a header:
+ * <pre>
+ * int  magic ("CKTT")      int  version
+ * int  flags               int  CRC32 of the entries
+ * long key of the start    long number of entries
+ * long fingerprint of the evaluation
+ * </pre>
+ * followed by the entries, each a {@code long} key, an {@code int} value and
+ * an {@code int} depth, shallowest first so that the deepest entry of a key
+ * is the one left in the table when loading. The key of the start state
+ * tells if the file was made with the same {@link Zobrist} keys, and the
+ * fingerprint ({@link MinMaxPlayer#getEvalFingerprint()}) if its scores came
+ * from the same evaluation, weights and noise: a file is only loaded by a
+ * player which would have found the same scores.
+ * <p>
+ * A file is written to a temporary file first and then moved over the old
+ * one, so that a crash while saving leaves the previous file usable. This
+ * makes it safe to save a long analysis now and then as a checkpoint.
+ * <p>
+ * With {@code -Dcheckers.table.file=path}, every search player loads the file
+ * before its first search and the tables of the players still in use are
+ * saved to it when the program exits, but those of the players adding noise
+ * to their evaluation, whose scores no other player shares.
+ */
+public final class TableFile {
+
+	/** The system property naming the file loaded and saved automatically. */
+	public static final String FILE_PROPERTY = "checkers.table.file";
+
+	/** The first bytes of a file, "CKTT". */
+	public static final int MAGIC = 0x434B5454;
+
+	/** The version of the format. */
+	public static final int VERSION = 2;
+
+	/** The flag set if the keys are canonical keys. */
+	private static final int CANONICAL = 1;
+
+	/** The number of bytes of the header. */
+	private static final int HEADER_BYTES = 40;
+
+	/** The number of bytes of an entry. */
+	private static final int ENTRY_BYTES = 16;
+
+	/** The most entries a file can hold, in a single mapping. */
+	private static final long MAX_ENTRIES =
+			(Integer.MAX_VALUE - HEADER_BYTES) / ENTRY_BYTES;
+
+	/** The players whose tables are saved on exit, and to which file. */
+	private static final Map<MinMaxPlayer, Path> autoSaved =
+			Collections.synchronizedMap(new WeakHashMap<>());
+
+	/** Whether the shutdown hook saving {@link #autoSaved} was added. */
+	private static boolean hookAdded;
+
+	private TableFile() {}
+
+	/**
+	 * Saves the deepest entries of some tables.
+	 *
+	 * @param file			the file to write.
+	 * @param canonical		true if the tables use canonical keys.
+	 * @param fingerprint	the fingerprint of the evaluation of the scores.
+	 * @param maxEntries	the maximum number of entries to save.
+	 * @param tables		the tables to save.
+	 * @return the number of entries saved.
+	 * @throws IOException if the file could not be written.
+	 */
+	public static long save(Path file, boolean canonical, long fingerprint,
+			long maxEntries, TranspositionTable... tables) throws IOException {
+
+		// Count the entries of each depth, to keep the deepest ones
+		long[] counts = new long[256];
+		for (TranspositionTable table : tables) {
+			table.forEach((key, depth, value) -> counts[depth & 0xFF] ++);
+		}
+		long[] kept = new long[256];
+		long left = Math.min(maxEntries, MAX_ENTRIES);
+		for (int depth = 255; depth >= 0 && left > 0; depth --) {
+			kept[depth] = Math.min(counts[depth], left);
+			left -= kept[depth];
+		}
+
+		// Sort them by depth, shallowest first. The tables could change
+		// meanwhile, so no more than counted are taken
+		int[] start = new int[257];
+		for (int depth = 0; depth < 256; depth ++) {
+			start[depth + 1] = start[depth] + (int) kept[depth];
+		}
+		int[] filled = start.clone();
+		long[] keys = new long[start[256]];
+		int[] values = new int[start[256]];
+		for (TranspositionTable table : tables) {
+			table.forEach((key, depth, value) -> {
+				int d = depth & 0xFF;
+				if (filled[d] < start[d + 1]) {
+					keys[filled[d]] = key;
+					values[filled[d] ++] = value;
+				}
+			});
+		}
+
+		// Write them next to the file, then replace it
+		Path absolute = file.toAbsolutePath();
+		Path temp = Files.createTempFile(absolute.getParent(),
+				absolute.getFileName().toString(), ".tmp");
+		try {
+			long count = write(temp, canonical, fingerprint, start, filled,
+					keys, values);
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			return count;
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	private static long write(Path file, boolean canonical, long fingerprint,
+			int[] start, int[] filled, long[] keys, int[] values)
+			throws IOException {
+		long count = 0;
+		for (int depth = 0; depth < 256; depth ++) {
+			count += filled[depth] - start[depth];
+		}
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0,
+					HEADER_BYTES + count * ENTRY_BYTES);
+			buffer.position(HEADER_BYTES);
+			for (int depth = 0; depth < 256; depth ++) {
+				for (int i = start[depth]; i < filled[depth]; i ++) {
+					buffer.putLong(keys[i]).putInt(values[i]).putInt(depth);
+				}
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.slice(HEADER_BYTES, (int) count * ENTRY_BYTES));
+			buffer.putInt(0, MAGIC).putInt(4, VERSION)
+					.putInt(8, canonical? CANONICAL : 0)
+					.putInt(12, (int) crc.getValue())
+					.putLong(16, startKey()).putLong(24, count)
+					.putLong(32, fingerprint);
+			buffer.force();
+		}
+		return count;
+	}
+
+	/**
+	 * Loads the entries of a file into a table.
+	 *
+	 * @param file		the file to read.
+	 * @param canonical		true if the table uses canonical keys.
+	 * @param fingerprint	the fingerprint of the evaluation of the table.
+	 * @param table			the table to add the entries to.
+	 * @return the number of entries loaded.
+	 * @throws IOException if the file could not be read, is corrupted or was
+	 * made for other keys or another evaluation.
+	 */
+	public static long load(Path file, boolean canonical, long fingerprint,
+			TranspositionTable table) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException(file + ": not a table file");
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + ": not a table file");
+			}
+			if (buffer.getInt(4) != VERSION) {
+				throw new IOException(file + ": unsupported version "
+						+ buffer.getInt(4));
+			}
+			if ((buffer.getInt(8) == CANONICAL) != canonical
+					|| buffer.getLong(16) != startKey()) {
+				throw new IOException(file + ": made for other keys");
+			}
+			if (buffer.getLong(32) != fingerprint) {
+				throw new IOException(file + ": made with another evaluation");
+			}
+			long count = buffer.getLong(24);
+			if (count < 0 || HEADER_BYTES + count * ENTRY_BYTES != size) {
+				throw new IOException(file + ": truncated");
+			}
+			CRC32 crc = new CRC32();
+			crc.update(buffer.slice(HEADER_BYTES, (int) count * ENTRY_BYTES));
+			if ((int) crc.getValue() != buffer.getInt(12)) {
+				throw new IOException(file + ": bad checksum");
+			}
+
+			buffer.position(HEADER_BYTES);
+			for (long i = 0; i < count; i ++) {
+				long key = buffer.getLong();
+				int value = buffer.getInt();
+				table.add(key, buffer.getInt(), value);
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Loads the file named by {@link #FILE_PROPERTY}, if any, into the table
+	 * of a player, and saves the table to it when the program exits. Errors
+	 * are reported on the standard error stream. It is called before the
+	 * first search, once the evaluation of the player is set, and does
+	 * nothing for a player with noise, whose scores are its own.
+	 *
+	 * @param player	the player whose table to keep between sessions.
+	 */
+	static void warmStart(MinMaxPlayer player) {
+		String name = System.getProperty(FILE_PROPERTY);
+		if (name == null || name.isEmpty() || player.getEvalNoise() > 0) {
+			return;
+		}
+		Path file = Paths.get(name);
+		if (Files.exists(file)) {
+			try {
+				player.loadTable(file);
+			} catch (IOException e) {
+				System.err.println("Table not loaded: " + e.getMessage());
+			}
+		}
+		saveOnExit(player, file);
+	}
+
+	/**
+	 * Saves the table of a player to a file when the program exits, unless
+	 * the player is no longer used by then or adds noise to its evaluation.
+	 * The tables of all the players of a file are saved together, if they
+	 * share their evaluation: otherwise only those of the first one are.
+	 *
+	 * @param player	the player whose table to save.
+	 * @param file		the file to write.
+	 */
+	public static synchronized void saveOnExit(MinMaxPlayer player, Path file) {
+		autoSaved.put(player, file);
+		if (!hookAdded) {
+			Runtime.getRuntime().addShutdownHook(
+					new Thread(TableFile::saveAll, "table-save"));
+			hookAdded = true;
+		}
+	}
+
+	/**
+	 * Saves the tables of the players given to
+	 * {@link #saveOnExit(MinMaxPlayer, Path)}. Their searches may still run
+	 * on daemon threads, so they are paused while the tables are read.
+	 */
+	private static void saveAll() {
+		// The views of a shared table are equal, so it is saved once
+		Map<Path, Set<TranspositionTable>> files = new HashMap<>();
+		Map<Path, Long> fingerprints = new HashMap<>();
+		List<MinMaxPlayer> players = new ArrayList<>();
+		synchronized (autoSaved) {
+			for (Map.Entry<MinMaxPlayer, Path> entry : autoSaved.entrySet()) {
+				MinMaxPlayer player = entry.getKey();
+				if (player == null || !player.isCanonicalKeys()
+						|| player.getEvalNoise() > 0) {
+					continue;
+				}
+				Path file = entry.getValue();
+				long fingerprint = player.getEvalFingerprint();
+				if (fingerprints.computeIfAbsent(file, f -> fingerprint)
+						!= fingerprint) {
+					System.err.println("Table not saved: " + file + " is used"
+							+ " by players of another evaluation");
+					continue;
+				}
+				files.computeIfAbsent(file, f -> new LinkedHashSet<>())
+						.add(player.getTranspositionTable());
+				players.add(player);
+			}
+		}
+		List<MinMaxPlayer> paused = new ArrayList<>();
+		try {
+			for (MinMaxPlayer player : players) {
+				player.pauseSearches();
+				paused.add(player);
+			}
+			for (Map.Entry<Path, Set<TranspositionTable>> entry
+					: files.entrySet()) {
+				try {
+					save(entry.getKey(), true, fingerprints.get(entry.getKey()),
+							MinMaxPlayer.TABLE_LIMIT,
+							entry.getValue().toArray(new TranspositionTable[0]));
+				} catch (IOException e) {
+					System.err.println("Table not saved: " + e.getMessage());
+				}
+			}
+		} finally {
+			for (MinMaxPlayer player : paused) {
+				player.resumeSearches();
+			}
+		}
+	}
+
+	/**
+	 * @return the key of the start state, which only changes with the keys.
+	 */
+	private static long startKey() {
+		return new Game().getKey();
+	}
+}
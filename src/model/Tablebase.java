@@ -0,0 +1,531 @@
+/* Name: Tablebase
+ * Description: This class gives the exact result of the endgames with few
+ * pieces, read from a compressed file made by the TablebaseGenerator.
+ */
+
+package src.model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import src.logic.Bitboard;
+
+/**
+ * The {@code Tablebase} class holds the value of every state with up to
+ * {@link #getMaxPieces()} pieces and both players on the board, for the
+ * player to move:
+ * <ul>
+ * <li>a positive value {@code n}: the player wins in {@code n} turns;</li>
+ * <li>a negative value {@code -n-1}: the player loses in {@code n} turns,
+ * {@code -1} if it can't move;</li>
+ * <li>0: a draw with the best play of both players.</li>
+ * </ul>
+ * A turn is a simple move or a whole sequence of skips. The draws by
+ * repetition or by lack of progress are not taken into account.
+ * <p>
+ * The states are split in slices of the same number of checkers and kings of
+ * each colour. In a slice, a state is numbered by the rank of the
+ * combination of tiles of each kind of piece among the tiles left free by the
+ * kinds before it, see {@link #index(Bitboard)}. The file starts with a
+ * header:
+ * <pre>
+ * int  magic ("CKEG")      int  version
+ * int  most pieces         int  number of slices
+ * int  states per block    int  number of blocks
+ * long reserved
+ * </pre>
+ * followed by each slice (an {@code int} material, see
+ * {@link #material(int, int, int, int)}, an {@code int} first block and a
+ * {@code long} number of states), the offset of each block and of the end of
+ * the last one as {@code long}s, and the blocks. A block holds the values of
+ * {@link #BLOCK_STATES} states, a byte each, compressed by {@link Deflater}.
+ * <p>
+ * The file is memory-mapped and the blocks are decompressed when first used,
+ * then kept in a cache of the least recently used ones, of
+ * {@code -Dcheckers.tablebase.cache.mb} megabytes (16 by default) within the
+ * {@link MemoryBudget}.
+ * <p>
+ * With {@code -Dcheckers.tablebase=path}, every search player uses the file.
+ */
+public final class Tablebase implements MemoryBudget.Cache {
+
+	/** The system property naming the file of the search players. */
+	public static final String FILE_PROPERTY = "checkers.tablebase";
+
+	/** The system property giving the size of the block cache, in MB. */
+	public static final String CACHE_PROPERTY = "checkers.tablebase.cache.mb";
+
+	/** The first bytes of a file, "CKEG". */
+	public static final int MAGIC = 0x434B4547;
+
+	/** The version of the format. */
+	public static final int VERSION = 1;
+
+	/** The number of states of a block. */
+	public static final int BLOCK_STATES = 1 << 16;
+
+	/** The number of bytes of the header. */
+	private static final int HEADER_BYTES = 32;
+
+	/** The number of bytes of a slice in the file. */
+	private static final int SLICE_BYTES = 16;
+
+	/** The size of the cache if none is given, in MB. */
+	private static final int DEFAULT_CACHE_MB = 16;
+
+	/** The number of combinations of k tiles among n. */
+	private static final long[][] CHOOSE = new long[33][13];
+
+	static {
+		for (int n = 0; n <= 32; n ++) {
+			CHOOSE[n][0] = 1;
+			for (int k = 1; k <= Math.min(n, 12); k ++) {
+				CHOOSE[n][k] = CHOOSE[n - 1][k - 1] + CHOOSE[n - 1][k];
+			}
+		}
+	}
+
+	/** The tablebase of {@link #FILE_PROPERTY}, once opened. */
+	private static Tablebase defaultTablebase;
+
+	/** Whether {@link #defaultTablebase} was opened, or failed to. */
+	private static boolean defaultOpened;
+
+	/** The content of the file. */
+	private final MappedByteBuffer buffer;
+
+	/** The most pieces of a state in the tablebase. */
+	private final int maxPieces;
+
+	/** The first block of each slice, by material. */
+	private final Map<Integer, Integer> firstBlocks = new HashMap<>();
+
+	/** The position in the file of the offsets of the blocks. */
+	private final int offsets;
+
+	/** The decompressed blocks, the least recently used first. */
+	private final LinkedHashMap<Integer, byte[]> blocks =
+			new LinkedHashMap<>(16, 0.75f, true);
+
+	/** The number of blocks the cache may hold, and would hold if it could. */
+	private int cacheBlocks, wantedBlocks;
+
+	/** The number of lookups, and how many of them found a value. */
+	private final LongAdder probes = new LongAdder(), hits = new LongAdder();
+
+	private Tablebase(MappedByteBuffer buffer, int maxPieces, int slices,
+			int cacheBlocks) {
+		this.buffer = buffer;
+		this.maxPieces = maxPieces;
+		for (int i = 0; i < slices; i ++) {
+			int slice = HEADER_BYTES + i * SLICE_BYTES;
+			firstBlocks.put(buffer.getInt(slice), buffer.getInt(slice + 4));
+		}
+		this.offsets = HEADER_BYTES + slices * SLICE_BYTES;
+		this.cacheBlocks = cacheBlocks;
+		this.wantedBlocks = cacheBlocks;
+	}
+
+	/**
+	 * Opens a tablebase. Only the header and the slices are read.
+	 *
+	 * @param file	the file of the tablebase.
+	 * @return the tablebase.
+	 * @throws IOException if the file could not be read or is not a
+	 * tablebase.
+	 */
+	public static Tablebase open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException(file + ": not a tablebase");
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + ": not a tablebase");
+			}
+			if (buffer.getInt(4) != VERSION
+					|| buffer.getInt(16) != BLOCK_STATES) {
+				throw new IOException(file + ": unsupported version "
+						+ buffer.getInt(4));
+			}
+			int slices = buffer.getInt(12), blocks = buffer.getInt(20);
+			long end = HEADER_BYTES + (long) slices * SLICE_BYTES
+					+ (blocks + 1L) * 8;
+			if (slices < 0 || blocks < 0 || end > size || buffer.getLong(
+					(int) end - 8) != size) {
+				throw new IOException(file + ": truncated");
+			}
+			String mb = System.getProperty(CACHE_PROPERTY);
+			long cache = (mb != null? Long.parseLong(mb.trim())
+					: DEFAULT_CACHE_MB) << 20;
+			Tablebase tablebase = new Tablebase(buffer, buffer.getInt(8),
+					slices, (int) Math.max(1, cache / BLOCK_STATES));
+			MemoryBudget.get().register(tablebase);
+			return tablebase;
+		}
+	}
+
+	/**
+	 * Gets the tablebase named by {@link #FILE_PROPERTY}, opening it the
+	 * first time. An error is reported once on the standard error stream.
+	 *
+	 * @return the tablebase, or null if there is none.
+	 */
+	public static synchronized Tablebase getDefault() {
+		if (!defaultOpened) {
+			defaultOpened = true;
+			String name = System.getProperty(FILE_PROPERTY);
+			if (name != null && !name.isEmpty()) {
+				try {
+					defaultTablebase = open(Paths.get(name));
+				} catch (IOException e) {
+					System.err.println("Tablebase not opened: "
+							+ e.getMessage());
+				}
+			}
+		}
+		return defaultTablebase;
+	}
+
+	public int getMaxPieces() {
+		return maxPieces;
+	}
+
+	/**
+	 * Gets the value of a game state, see {@link Tablebase}.
+	 *
+	 * @param game	the game state.
+	 * @return the value for the player to move, or null if the state is not
+	 * in the tablebase: too many pieces, a skip to go on with, or a player
+	 * with no pieces left.
+	 */
+	public Integer probe(Game game) {
+		if (game.getSkipIndex() >= 0 || game.getPieceCount() > maxPieces) {
+			return null;
+		}
+		return probe(Bitboard.of(game));
+	}
+
+	/**
+	 * Same as {@link #probe(Game)}, for a bitboard.
+	 */
+	public Integer probe(Bitboard state) {
+		probes.increment();
+		if (state.getSkipIndex() >= 0 || state.getPieceCount() > maxPieces
+				|| (state.getBlackCheckers() | state.getBlackKings()) == 0
+				|| (state.getWhiteCheckers() | state.getWhiteKings()) == 0) {
+			return null;
+		}
+		Integer first = firstBlocks.get(material(state));
+		if (first == null) {
+			return null;
+		}
+		long index = index(state);
+		byte[] block = getBlock(first + (int) (index / BLOCK_STATES));
+		hits.increment();
+		return (int) block[(int) (index % BLOCK_STATES)];
+	}
+
+	/**
+	 * Gets a block from the cache, decompressing it if needed.
+	 */
+	private synchronized byte[] getBlock(int block) {
+		byte[] values = blocks.get(block);
+		if (values != null) {
+			return values;
+		}
+		int start = (int) buffer.getLong(offsets + block * 8);
+		int end = (int) buffer.getLong(offsets + block * 8 + 8);
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(buffer.slice(start, end - start));
+			byte[] data = new byte[BLOCK_STATES];
+			int length = 0;
+			while (!inflater.finished() && length < data.length) {
+				int n = inflater.inflate(data, length, data.length - length);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += n;
+			}
+			values = data;
+		} catch (DataFormatException e) {
+			throw new IllegalStateException("Corrupted tablebase block "
+					+ block, e);
+		} finally {
+			inflater.end();
+		}
+		blocks.put(block, values);
+		trim();
+		return values;
+	}
+
+	/**
+	 * Removes the least recently used blocks over the size of the cache.
+	 */
+	private void trim() {
+		Iterator<byte[]> it = blocks.values().iterator();
+		while (blocks.size() > cacheBlocks && it.hasNext()) {
+			it.next();
+			it.remove();
+		}
+	}
+
+	@Override
+	public synchronized long getBytes() {
+		return (long) cacheBlocks * BLOCK_STATES;
+	}
+
+	@Override
+	public synchronized long getWantedBytes() {
+		return (long) wantedBlocks * BLOCK_STATES;
+	}
+
+	/**
+	 * Changes the size of the cache, dropping blocks right away if it
+	 * shrinks: the blocks are read again when needed.
+	 */
+	@Override
+	public synchronized void resize(long bytes) {
+		this.cacheBlocks = (int) Math.max(1, Math.min(wantedBlocks,
+				bytes / BLOCK_STATES));
+		trim();
+	}
+
+	public long getProbes() {
+		return probes.sum();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * Encodes the number of pieces of each kind.
+	 */
+	public static int material(int blackCheckers, int blackKings,
+			int whiteCheckers, int whiteKings) {
+		return blackCheckers | blackKings << 4 | whiteCheckers << 8
+				| whiteKings << 12;
+	}
+
+	/**
+	 * @return the material of a state.
+	 */
+	public static int material(Bitboard state) {
+		return material(Integer.bitCount(state.getBlackCheckers()),
+				Integer.bitCount(state.getBlackKings()),
+				Integer.bitCount(state.getWhiteCheckers()),
+				Integer.bitCount(state.getWhiteKings()));
+	}
+
+	/**
+	 * Gets the counts of a material in the order of the index: black
+	 * checkers, white checkers, black kings, white kings.
+	 */
+	private static int[] counts(int material) {
+		return new int[] {material & 15, (material >> 8) & 15,
+				(material >> 4) & 15, (material >> 12) & 15};
+	}
+
+	/**
+	 * @return the number of states of a slice.
+	 */
+	public static long size(int material) {
+		long size = 2;
+		int free = 32;
+		for (int count : counts(material)) {
+			size *= CHOOSE[free][count];
+			free -= count;
+		}
+		return size;
+	}
+
+	/**
+	 * Numbers a state in its slice. The kinds of pieces are placed in turn,
+	 * each as a combination of the tiles the kinds before left free, and the
+	 * player to move is the lowest digit.
+	 *
+	 * @param state	a state with no skip to go on with.
+	 * @return the index of the state in the slice of its material.
+	 */
+	public static long index(Bitboard state) {
+		int[] masks = {state.getBlackCheckers(), state.getWhiteCheckers(),
+				state.getBlackKings(), state.getWhiteKings()};
+		long index = 0;
+		int occupied = 0, free = 32;
+		for (int mask : masks) {
+			int count = Integer.bitCount(mask);
+			index = index * CHOOSE[free][count] + rank(mask, occupied);
+			occupied |= mask;
+			free -= count;
+		}
+		return index * 2 + (state.isP2Turn()? 1 : 0);
+	}
+
+	/**
+	 * Gets the state of an index in a slice, the inverse of
+	 * {@link #index(Bitboard)}.
+	 *
+	 * @param material	the material of the slice.
+	 * @param index		the index of the state.
+	 * @return the state.
+	 */
+	public static Bitboard state(int material, long index) {
+		boolean isP2Turn = (index & 1) != 0;
+		index >>= 1;
+
+		// Split the index in the rank of each kind, the last one lowest
+		int[] counts = counts(material);
+		int[] free = new int[4];
+		long[] ranks = new long[4];
+		free[0] = 32;
+		for (int i = 1; i < 4; i ++) {
+			free[i] = free[i - 1] - counts[i - 1];
+		}
+		for (int i = 3; i >= 0; i --) {
+			long combinations = CHOOSE[free[i]][counts[i]];
+			ranks[i] = index % combinations;
+			index /= combinations;
+		}
+
+		// Then place the kinds in turn
+		int[] masks = new int[4];
+		int occupied = 0;
+		for (int i = 0; i < 4; i ++) {
+			masks[i] = unrank(ranks[i], counts[i], occupied);
+			occupied |= masks[i];
+		}
+		return new Bitboard(masks[0], masks[2], masks[1], masks[3], isP2Turn,
+				-1);
+	}
+
+	/**
+	 * Ranks the tiles of a mask among the tiles not occupied, in the
+	 * combinatorial number system.
+	 */
+	private static long rank(int mask, int occupied) {
+		long rank = 0;
+		int k = 1;
+		for (; mask != 0; mask &= mask - 1) {
+			int tile = Integer.numberOfTrailingZeros(mask);
+			int position = tile - Integer.bitCount(occupied & ((1 << tile) - 1));
+			rank += CHOOSE[position][k ++];
+		}
+		return rank;
+	}
+
+	/**
+	 * Gets the tiles of a rank, the inverse of {@link #rank(int, int)}.
+	 */
+	private static int unrank(long rank, int count, int occupied) {
+		int mask = 0;
+		for (int k = count; k > 0; k --) {
+			int position = k - 1;
+			while (CHOOSE[position + 1][k] <= rank) {
+				position ++;
+			}
+			rank -= CHOOSE[position][k];
+
+			// The position-th free tile
+			int tile = -1;
+			for (int left = position; left >= 0; ) {
+				tile ++;
+				if ((occupied & (1 << tile)) == 0) {
+					left --;
+				}
+			}
+			mask |= 1 << tile;
+		}
+		return mask;
+	}
+
+	/**
+	 * Writes a tablebase to a temporary file, then moves it over the file.
+	 *
+	 * @param file		the file to write.
+	 * @param maxPieces	the most pieces of the states.
+	 * @param slices	the values of the states of each material, in the
+	 * order of {@link #index(Bitboard)}.
+	 * @return the size of the file, in bytes.
+	 * @throws IOException if the file could not be written.
+	 */
+	public static long write(Path file, int maxPieces,
+			Map<Integer, byte[]> slices) throws IOException {
+
+		// Compress the blocks of each slice
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		int blocks = 0;
+		for (byte[] values : slices.values()) {
+			blocks += (values.length + BLOCK_STATES - 1) / BLOCK_STATES;
+		}
+		long[] offsets = new long[blocks + 1];
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES
+				+ slices.size() * SLICE_BYTES + offsets.length * 8);
+		header.putInt(MAGIC).putInt(VERSION).putInt(maxPieces)
+				.putInt(slices.size()).putInt(BLOCK_STATES).putInt(blocks)
+				.putLong(0);
+		Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+		byte[] chunk = new byte[BLOCK_STATES + 1024];
+		int block = 0;
+		for (Map.Entry<Integer, byte[]> slice : slices.entrySet()) {
+			byte[] values = slice.getValue();
+			header.putInt(slice.getKey()).putInt(block).putLong(values.length);
+			for (int start = 0; start < values.length; start += BLOCK_STATES) {
+				offsets[block ++] = header.capacity() + data.size();
+				deflater.reset();
+				deflater.setInput(values, start,
+						Math.min(BLOCK_STATES, values.length - start));
+				deflater.finish();
+				while (!deflater.finished()) {
+					data.write(chunk, 0, deflater.deflate(chunk));
+				}
+			}
+		}
+		deflater.end();
+		offsets[blocks] = header.capacity() + data.size();
+		for (long offset : offsets) {
+			header.putLong(offset);
+		}
+		header.flip();
+
+		Path absolute = file.toAbsolutePath();
+		Path temp = Files.createTempFile(absolute.getParent(),
+				absolute.getFileName().toString(), ".tmp");
+		try {
+			try (FileChannel channel = FileChannel.open(temp,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				ByteBuffer content = ByteBuffer.wrap(data.toByteArray());
+				while (header.hasRemaining() || content.hasRemaining()) {
+					channel.write(new ByteBuffer[] {header, content});
+				}
+				channel.force(true);
+			}
+			Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			return offsets[blocks];
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+}
@@ -0,0 +1,336 @@
+/* Name: TablebaseGenerator
+ * Description: This class computes the values of all the endgame states with
+ * few pieces by retrograde analysis, for the Tablebase.
+ */
+
+package src.model;
+
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import src.logic.Bitboard;
+
+/**
+ * The {@code TablebaseGenerator} class solves the slices of a
+ * {@link Tablebase} one after the other, fewest pieces first, and for the
+ * same number of pieces fewest checkers first: a skip leads to a slice with
+ * fewer pieces and a new king to one with fewer checkers, so these slices are
+ * solved when needed.
+ * <p>
+ * In a slice, each state is first looked at once: the turns leading out of
+ * the slice (skips and new kings) get their value from the slices solved
+ * before, and the turns staying in the slice are counted. Then the values
+ * spread backwards, one turn per pass: the states from which a move leads to
+ * a lost state are won one turn later, and the states whose moves all lead
+ * to won states are lost once the last of them is known. The states left
+ * with no value at the end are draws. Each pass goes through the states from
+ * the threads of the common fork/join pool, with atomic updates of the states
+ * of the positions.
+ */
+public class TablebaseGenerator {
+
+	/** The value of a state not solved yet, or of no turn out of the slice. */
+	private static final byte UNKNOWN = Byte.MIN_VALUE;
+
+	/** The longest win or loss a value can hold. */
+	private static final int MAX_DISTANCE = 126;
+
+	/** Reads and updates the states of the positions atomically. */
+	private static final VarHandle INTS =
+			MethodHandles.arrayElementVarHandle(int[].class);
+
+	/** The most pieces of the states. */
+	private final int maxPieces;
+
+	/** The values of the slices solved so far, by material. */
+	private final Map<Integer, byte[]> solved = new LinkedHashMap<>();
+
+	public TablebaseGenerator(int maxPieces) {
+		if (maxPieces < 2 || maxPieces > 12) {
+			throw new IllegalArgumentException("Pieces: " + maxPieces);
+		}
+		this.maxPieces = maxPieces;
+	}
+
+	/**
+	 * Solves all the slices.
+	 *
+	 * @param log	receives a line for each slice solved, may be null.
+	 * @return the values of each slice, in the order they were solved.
+	 */
+	public Map<Integer, byte[]> generate(PrintStream log) {
+		for (int material : getMaterials(maxPieces)) {
+			long start = System.nanoTime();
+			byte[] values = solve(material);
+			solved.put(material, values);
+			if (log != null) {
+				int[] counts = count(values);
+				log.printf("%s: %d states, %d wins, %d losses, %d draws,"
+						+ " longest %d turns, %d ms%n", name(material),
+						values.length, counts[0], counts[1], counts[2],
+						counts[3], (System.nanoTime() - start) / 1_000_000);
+			}
+		}
+		return solved;
+	}
+
+	/**
+	 * Lists the materials with both players on the board, in the order they
+	 * can be solved.
+	 *
+	 * @param maxPieces	the most pieces.
+	 * @return the materials, see {@link Tablebase#material(int, int, int, int)}.
+	 */
+	public static List<Integer> getMaterials(int maxPieces) {
+		List<Integer> materials = new ArrayList<>();
+		for (int pieces = 2; pieces <= maxPieces; pieces ++) {
+			for (int checkers = 0; checkers <= pieces; checkers ++) {
+				for (int black = 1; black < pieces; black ++) {
+					int white = pieces - black;
+					for (int bc = 0; bc <= Math.min(black, checkers); bc ++) {
+						int wc = checkers - bc;
+						if (wc <= white && wc >= 0) {
+							materials.add(Tablebase.material(bc, black - bc,
+									wc, white - wc));
+						}
+					}
+				}
+			}
+		}
+		return materials;
+	}
+
+	/**
+	 * Computes the values of the states of a slice.
+	 */
+	private byte[] solve(int material) {
+		long size = Tablebase.size(material);
+		if (size > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException(name(material) + " is too large");
+		}
+		int[] states = new int[(int) size];
+		AtomicInteger longest = new AtomicInteger();
+
+		IntStream.range(0, states.length).parallel().forEach(i ->
+				start(material, i, states, longest));
+		for (int pass = 0; pass <= longest.get(); pass ++) {
+			int distance = pass;
+
+			// The wins out of the slice at this distance
+			if (distance % 2 == 1) {
+				IntStream.range(0, states.length).parallel().forEach(i -> {
+					int state = states[i];
+					if (value(state) == UNKNOWN && outcome(state) == distance) {
+						INTS.compareAndSet(states, i, state,
+								withValue(state, distance));
+					}
+				});
+			}
+
+			// Then spread the values found at this distance
+			IntStream.range(0, states.length).parallel().forEach(i -> {
+				byte value = value((int) INTS.getVolatile(states, i));
+				if (value != UNKNOWN && value != 0
+						&& distance(value) == distance) {
+					retract(value, Tablebase.state(material, i), states,
+							longest);
+				}
+			});
+		}
+
+		byte[] values = new byte[states.length];
+		for (int i = 0; i < values.length; i ++) {
+			byte value = value(states[i]);
+			values[i] = (value == UNKNOWN)? 0 : value;
+		}
+		return values;
+	}
+
+	/**
+	 * Looks at the turns of a state for the first time.
+	 */
+	private void start(int material, int i, int[] states,
+			AtomicInteger longest) {
+		Bitboard state = Tablebase.state(material, i);
+
+		// A checker can't be on the row where it becomes a king
+		if ((state.getBlackCheckers() & Bitboard.BLACK_CROWN) != 0
+				|| (state.getWhiteCheckers() & Bitboard.WHITE_CROWN) != 0) {
+			states[i] = 0;
+			return;
+		}
+
+		int[] inside = {0};
+		byte[] best = {UNKNOWN};
+		state.forEachTurn(next -> {
+			if (Tablebase.material(next) == material) {
+				inside[0] ++;
+			} else {
+				best[0] = better(best[0], negate(getValue(next)));
+			}
+		});
+
+		if (inside[0] == 0) {
+			// No turn, or none staying in the slice: the value is known
+			byte value = (best[0] == UNKNOWN)? -1 : best[0];
+			states[i] = value & 0xFF;
+			longest.accumulateAndGet(distance(value), Math::max);
+		} else {
+			states[i] = (UNKNOWN & 0xFF) | inside[0] << 8
+					| (best[0] & 0xFF) << 16;
+			if (best[0] != UNKNOWN && best[0] > 0) {
+				longest.accumulateAndGet(best[0], Math::max);
+			}
+		}
+	}
+
+	/**
+	 * Gives the value of a state to the states of the slice leading to it.
+	 */
+	private static void retract(byte value, Bitboard state, int[] states,
+			AtomicInteger longest) {
+		int next = distance(value) + 1;
+		if (next > MAX_DISTANCE) {
+			throw new IllegalStateException("Endgame longer than "
+					+ MAX_DISTANCE + " turns");
+		}
+		state.forEachUnmove(previous -> {
+			int p = (int) Tablebase.index(previous);
+			int word, update;
+			do {
+				word = (int) INTS.getVolatile(states, p);
+				if (value(word) != UNKNOWN) {
+					return;
+				}
+				if (value < 0) {
+					// A move to a lost state wins
+					update = withValue(word, next);
+				} else {
+					// All the moves in the slice lose once the last one is
+					// known, unless a turn out of the slice does better
+					int count = ((word >>> 8) & 0xFF) - 1;
+					byte outcome = outcome(word);
+					update = (word & ~0xFF00) | count << 8;
+					if (count == 0 && (outcome == UNKNOWN || outcome < 0)) {
+						int distance = Math.max(next,
+								outcome == UNKNOWN? 0 : distance(outcome));
+						update = withValue(update, -distance - 1);
+					}
+				}
+			} while (!INTS.compareAndSet(states, p, word, update));
+			byte found = value(update);
+			if (found != UNKNOWN) {
+				longest.accumulateAndGet(distance(found), Math::max);
+			}
+		});
+	}
+
+	/**
+	 * The state of a position during the analysis is an {@code int}: its
+	 * value in the low byte, the number of turns staying in the slice whose
+	 * value is not known yet in the next one, and the best value of the turns
+	 * out of the slice in the third one. They are updated together
+	 * atomically.
+	 */
+	private static byte value(int state) {
+		return (byte) state;
+	}
+
+	private static byte outcome(int state) {
+		return (byte) (state >>> 16);
+	}
+
+	private static int withValue(int state, int value) {
+		return (state & ~0xFF) | (value & 0xFF);
+	}
+
+	/**
+	 * Gets the value of a state after a turn out of the slice.
+	 */
+	private int getValue(Bitboard state) {
+		int own = state.isP2Turn()? state.getBlackCheckers()
+				| state.getBlackKings() : state.getWhiteCheckers()
+				| state.getWhiteKings();
+		if (own == 0) {
+			return -1;
+		}
+		return solved.get(Tablebase.material(state))[(int) Tablebase.index(
+				state)];
+	}
+
+	/**
+	 * Turns the value of the state after a turn into the value of the turn
+	 * for the player making it: one turn further, for the other side.
+	 */
+	private static byte negate(int value) {
+		if (value == 0) {
+			return 0;
+		} else if (value < 0) {
+			return (byte) -value;
+		} else if (value + 2 > MAX_DISTANCE + 1) {
+			throw new IllegalStateException("Endgame longer than "
+					+ MAX_DISTANCE + " turns");
+		}
+		return (byte) (-value - 2);
+	}
+
+	/**
+	 * Picks the better of two values: the quickest win, then a draw, then
+	 * the slowest loss. {@link #UNKNOWN} is worse than anything.
+	 */
+	private static byte better(byte a, byte b) {
+		return rank(a) >= rank(b)? a : b;
+	}
+
+	private static int rank(byte value) {
+		if (value == UNKNOWN) {
+			return Integer.MIN_VALUE;
+		}
+		return value > 0? 1000 - value : value < 0? -1000 - value : 0;
+	}
+
+	/**
+	 * @return the number of turns to the end of a won or lost state.
+	 */
+	private static int distance(byte value) {
+		return value > 0? value : -value - 1;
+	}
+
+	/**
+	 * Counts the wins, losses and draws of a slice, and its longest win.
+	 */
+	private static int[] count(byte[] values) {
+		int[] counts = new int[4];
+		for (byte value : values) {
+			counts[value > 0? 0 : value < 0? 1 : 2] ++;
+			counts[3] = Math.max(counts[3], distance(value));
+		}
+		return counts;
+	}
+
+	/**
+	 * Names a material, e.g. "1bc 1bk v 2wk" for a black checker and king
+	 * against two white kings.
+	 */
+	public static String name(int material) {
+		String[] kinds = {"bc", "bk", "wc", "wk"};
+		String name = "";
+		for (int kind = 0; kind < 4; kind ++) {
+			int count = (material >> (4 * kind)) & 15;
+			if (kind == 2) {
+				name += " v";
+			}
+			if (count > 0) {
+				name += " " + count + kinds[kind];
+			}
+		}
+		return name.trim();
+	}
+}
@@ -0,0 +1,330 @@
+/* Name: TrainingData
+ * Description: This class reads and writes the files of positions labelled
+ * by self-play, used to tune and train the evaluations.
+ */
+
+package src.model;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import src.logic.Bitboard;
+
+/**
+ * The {@code TrainingData} class is a file of labelled positions, read
+ * through a memory mapping so that a record costs a few absolute reads. The
+ * file starts with a header:
+ * <pre>
+ * int  magic ("CKSP")      int  version
+ * int  bytes per record    int  reserved
+ * </pre>
+ * followed by records of {@link #RECORD_BYTES} bytes:
+ * <pre>
+ * int   black checkers     int   black kings
+ * int   white checkers     int   white kings
+ * short score of the search, for the player to move
+ * byte  1 if black is to move, 0 otherwise
+ * byte  result of the game for the player to move: 1, 0 (draw) or -1
+ * short ply of the game    short reserved
+ * </pre>
+ * The files are written by a {@link Writer}, which starts a new file every so
+ * many records.
+ */
+public final class TrainingData {
+
+	/** The first bytes of a file, "CKSP". */
+	public static final int MAGIC = 0x434B5350;
+
+	/** The version of the format. */
+	public static final int VERSION = 1;
+
+	/** The number of bytes of the header. */
+	public static final int HEADER_BYTES = 16;
+
+	/** The number of bytes of a record. */
+	public static final int RECORD_BYTES = 24;
+
+	/** The extension of the complete files. */
+	public static final String EXTENSION = ".bin";
+
+	/** The extension of the file being written. */
+	private static final String PART = ".part";
+
+	/** The records of the file. */
+	private final MappedByteBuffer buffer;
+
+	/** The number of records. */
+	private final int count;
+
+	private TrainingData(MappedByteBuffer buffer, int count) {
+		this.buffer = buffer;
+		this.count = count;
+	}
+
+	/**
+	 * Opens a file of records.
+	 *
+	 * @param file	the file.
+	 * @return the records of the file.
+	 * @throws IOException if the file could not be read or is not a file of
+	 * records.
+	 */
+	public static TrainingData open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file,
+				StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+				throw new IOException(file + ": not a file of records");
+			}
+
+			// The mapping stays valid once the channel is closed
+			MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, size);
+			if (buffer.getInt(0) != MAGIC) {
+				throw new IOException(file + ": not a file of records");
+			}
+			if (buffer.getInt(4) != VERSION
+					|| buffer.getInt(8) != RECORD_BYTES) {
+				throw new IOException(file + ": unsupported version "
+						+ buffer.getInt(4));
+			}
+			return new TrainingData(buffer,
+					(int) ((size - HEADER_BYTES) / RECORD_BYTES));
+		}
+	}
+
+	/**
+	 * Lists the complete files of a directory, in the order they were
+	 * written.
+	 *
+	 * @param directory	the directory of a {@link Writer}.
+	 * @return the files, sorted by name.
+	 * @throws IOException if the directory could not be read.
+	 */
+	public static List<Path> list(Path directory) throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (Stream<Path> entries = Files.list(directory)) {
+			entries.filter(f -> f.getFileName().toString().endsWith(EXTENSION))
+					.forEach(files::add);
+		}
+		Collections.sort(files);
+		return files;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	private int offset(int record) {
+		return HEADER_BYTES + record * RECORD_BYTES;
+	}
+
+	/**
+	 * Gets the position of a record.
+	 *
+	 * @param record	the index of the record.
+	 * @return the position, never in the middle of a turn.
+	 */
+	public Bitboard getState(int record) {
+		int offset = offset(record);
+		return new Bitboard(buffer.getInt(offset), buffer.getInt(offset + 4),
+				buffer.getInt(offset + 8), buffer.getInt(offset + 12),
+				isP2Turn(record), -1);
+	}
+
+	public int getBlackCheckers(int record) {
+		return buffer.getInt(offset(record));
+	}
+
+	public int getBlackKings(int record) {
+		return buffer.getInt(offset(record) + 4);
+	}
+
+	public int getWhiteCheckers(int record) {
+		return buffer.getInt(offset(record) + 8);
+	}
+
+	public int getWhiteKings(int record) {
+		return buffer.getInt(offset(record) + 12);
+	}
+
+	/**
+	 * @return the score of the search for the player to move.
+	 */
+	public int getScore(int record) {
+		return buffer.getShort(offset(record) + 16);
+	}
+
+	public boolean isP2Turn(int record) {
+		return buffer.get(offset(record) + 18) != 0;
+	}
+
+	/**
+	 * @return the result of the game for the player to move: 1 for a win, 0
+	 * for a draw and -1 for a loss.
+	 */
+	public int getResult(int record) {
+		return buffer.get(offset(record) + 19);
+	}
+
+	public int getPly(int record) {
+		return buffer.getShort(offset(record) + 20);
+	}
+
+	/**
+	 * The {@code Writer} class appends records to the files of a directory,
+	 * named {@code prefix-00000.bin} and on. Once a file holds its number of
+	 * records, it is closed and the next one started. A file is written as
+	 * {@code .part} and renamed when complete, so the {@code .bin} files can
+	 * be read while the writer goes on. The records go through a buffer and
+	 * are written to the file channel when it is full.
+	 * <p>
+	 * The writer may be shared by several threads.
+	 */
+	public static final class Writer implements Closeable {
+
+		/** The directory of the files. */
+		private final Path directory;
+
+		/** The start of the names of the files. */
+		private final String prefix;
+
+		/** The number of records of a complete file. */
+		private final long recordsPerFile;
+
+		/** The records waiting to be written. */
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+
+		/** The number of the next file. */
+		private int nextFile;
+
+		/** The file being written, null before the first record. */
+		private FileChannel channel;
+
+		private Path current;
+
+		/** The records in the current file, and in all of them. */
+		private long inFile, written;
+
+		/**
+		 * Creates a writer, which starts after the files already in the
+		 * directory.
+		 *
+		 * @param directory			the directory, created if needed.
+		 * @param prefix			the start of the names of the files.
+		 * @param recordsPerFile	the number of records of a file.
+		 * @throws IOException if the directory could not be created.
+		 */
+		public Writer(Path directory, String prefix, long recordsPerFile)
+				throws IOException {
+			this.directory = Files.createDirectories(directory);
+			this.prefix = prefix;
+			this.recordsPerFile = Math.max(1, Math.min(recordsPerFile,
+					(Integer.MAX_VALUE - HEADER_BYTES) / RECORD_BYTES));
+			while (Files.exists(file(nextFile, EXTENSION))) {
+				nextFile ++;
+			}
+		}
+
+		private Path file(int number, String extension) {
+			return directory.resolve(String.format("%s-%05d%s", prefix,
+					number, extension));
+		}
+
+		/**
+		 * Appends a record.
+		 *
+		 * @param state		the position, not in the middle of a turn.
+		 * @param score		the score of the search for the player to move,
+		 * clipped to a {@code short}.
+		 * @param result	the result for the player to move, 1, 0 or -1.
+		 * @param ply		the ply of the game.
+		 * @throws IOException if the record could not be written.
+		 */
+		public synchronized void add(Bitboard state, int score, int result,
+				int ply) throws IOException {
+			if (channel == null) {
+				start();
+			}
+			if (buffer.remaining() < RECORD_BYTES) {
+				flush();
+			}
+			buffer.putInt(state.getBlackCheckers())
+					.putInt(state.getBlackKings())
+					.putInt(state.getWhiteCheckers())
+					.putInt(state.getWhiteKings())
+					.putShort((short) Math.max(Short.MIN_VALUE,
+							Math.min(Short.MAX_VALUE, score)))
+					.put((byte) (state.isP2Turn()? 1 : 0))
+					.put((byte) Integer.signum(result))
+					.putShort((short) Math.min(Short.MAX_VALUE, ply))
+					.putShort((short) 0);
+			this.written ++;
+			if (++ inFile == recordsPerFile) {
+				finish();
+			}
+		}
+
+		public synchronized long getWritten() {
+			return written;
+		}
+
+		/**
+		 * Starts the next file with its header.
+		 */
+		private void start() throws IOException {
+			this.current = file(nextFile ++, PART);
+			this.channel = FileChannel.open(current, StandardOpenOption.CREATE,
+					StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			this.inFile = 0;
+			buffer.putInt(MAGIC).putInt(VERSION).putInt(RECORD_BYTES)
+					.putInt(0);
+		}
+
+		/**
+		 * Writes the buffer to the current file.
+		 */
+		private void flush() throws IOException {
+			buffer.flip();
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Completes the current file and gives it its final name.
+		 */
+		private void finish() throws IOException {
+			flush();
+			channel.close();
+			this.channel = null;
+			String name = current.getFileName().toString();
+			Files.move(current, current.resolveSibling(name.substring(0,
+					name.length() - PART.length()) + EXTENSION),
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		/**
+		 * Completes the last file, even if it holds fewer records.
+		 */
+		@Override
+		public synchronized void close() throws IOException {
+			if (channel != null) {
+				finish();
+			}
+		}
+	}
+}
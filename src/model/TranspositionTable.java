@@ -0,0 +1,180 @@
+/* Name: TranspositionTable
+ * Description: This interface is a table of searched game states, and creates
+ * the table configured for the process.
+ */
+
+package src.model;
+
+/**
+ * The {@code TranspositionTable} interface maps the keys of game states (see
+ * {@link Game#getKey()}) to the value they were searched to and the depth of
+ * that search. The search players only use this interface, so the storage
+ * can be changed by configuration with {@link #create(int)}:
+ * <ul>
+ * <li>{@code -Dcheckers.table=heap} (the default): a {@link StateSet} on the
+ * Java heap, holding the number of entries asked for.</li>
+ * <li>{@code -Dcheckers.table=offheap}: a view of the {@link OffHeapTable}
+ * of the process, outside of the heap, of {@code -Dcheckers.table.mb}
+ * megabytes, on huge pages if {@code -Dcheckers.table.hugepages=true}. Large
+ * tables there do not add to the garbage collection pauses nor to the heap
+ * size. All the players use the same table, see {@link SharedTable}, so that
+ * the memory given is that of the process, however many players there
+ * are.</li>
+ * </ul>
+ * With {@code -Dcheckers.table.shared=true}, all the tables created are views
+ * of the off-heap table of the process, whatever their kind.
+ */
+public interface TranspositionTable {
+
+	/** The system property picking the kind of table. */
+	String KIND_PROPERTY = "checkers.table";
+
+	/** The system property giving the size of the off-heap table, in MB. */
+	String SIZE_PROPERTY = "checkers.table.mb";
+
+	/** The system property aligning off-heap tables to huge pages. */
+	String HUGE_PAGES_PROPERTY = "checkers.table.hugepages";
+
+	/** The system property making all the tables share their entries. */
+	String SHARED_PROPERTY = "checkers.table.shared";
+
+	/**
+	 * The value returned by {@link #probe(long, int)} for a state which is
+	 * not in the table. It can't be stored.
+	 */
+	int MISSING = Integer.MIN_VALUE;
+
+	/**
+	 * Stores the value of a state searched to the given depth.
+	 *
+	 * @param key	the key of the state.
+	 * @param depth	the depth the state was searched to, from 0 to 255.
+	 * @param value	the value of the state.
+	 */
+	void add(long key, int depth, int value);
+
+	/**
+	 * @return the value stored for the state if it was searched at least to
+	 * the given depth, null otherwise.
+	 */
+	default Integer getValue(long key, int depth) {
+		int value = probe(key, depth);
+		return value == MISSING? null : value;
+	}
+
+	/**
+	 * Same as {@link #getValue(long, int)}, without boxing the value, so that
+	 * a probe allocates nothing.
+	 *
+	 * @param key	the key of the state.
+	 * @param depth	the depth the state must have been searched to.
+	 * @return the value stored for the state, or {@link #MISSING}.
+	 */
+	int probe(long key, int depth);
+
+	/**
+	 * Removes all the entries.
+	 */
+	void clear();
+
+	/**
+	 * Tells the table that a new search starts, for the tables that age
+	 * their entries. Does nothing by default.
+	 */
+	default void newSearch() {}
+
+	/**
+	 * Tells the table which evaluation the values stored from now on come
+	 * from, for the tables whose entries are shared with players of other
+	 * evaluations. Does nothing by default, as the owner of a table of its
+	 * own clears it instead.
+	 *
+	 * @param fingerprint	the fingerprint of the evaluation, see
+	 * {@link MinMaxPlayer#getEvalFingerprint()}.
+	 */
+	default void setEvaluation(long fingerprint) {}
+
+	/**
+	 * Calls the visitor with each entry of the table, in no particular order.
+	 * The table must not be modified meanwhile.
+	 *
+	 * @param visitor	the visitor of the entries.
+	 */
+	void forEach(Visitor visitor);
+
+	/**
+	 * @return the number of entries, which may take a scan of the table.
+	 */
+	long size();
+
+	/**
+	 * @return the number of entries the table can hold.
+	 */
+	long getCapacity();
+
+	/**
+	 * @return the number of calls to {@link #probe(long, int)}.
+	 */
+	long getProbes();
+
+	/**
+	 * @return the number of calls to {@link #probe(long, int)} that
+	 * returned a value.
+	 */
+	long getHits();
+
+	/**
+	 * The {@code Visitor} interface receives the entries of a table from
+	 * {@link TranspositionTable#forEach(Visitor)}.
+	 */
+	@FunctionalInterface
+	interface Visitor {
+
+		/**
+		 * @param key	the key of the state, as given to
+		 * {@link TranspositionTable#add(long, int, int)}.
+		 * @param depth	the depth the state was searched to.
+		 * @param value	the value of the state.
+		 */
+		void visit(long key, int depth, int value);
+	}
+
+	/**
+	 * Creates the kind of table configured by the system properties.
+	 *
+	 * @param entries	the number of entries of a table on the heap.
+	 * @return the new, empty table, or a new view of the off-heap table.
+	 * @throws IllegalArgumentException if the configuration is not valid.
+	 */
+	static TranspositionTable create(int entries) {
+		if (Boolean.getBoolean(SHARED_PROPERTY)) {
+			return new SharedTable();
+		}
+		String kind = System.getProperty(KIND_PROPERTY, "heap");
+		switch (kind) {
+		case "heap":
+			return new StateSet(entries, true);
+		case "offheap":
+			return new SharedTable();
+		default:
+			throw new IllegalArgumentException(
+					"Unknown " + KIND_PROPERTY + ": " + kind);
+		}
+	}
+
+	/**
+	 * Creates an off-heap table configured by the system properties. It is
+	 * only called once per process, for the table of {@link SharedTable}.
+	 *
+	 * @param entries	the number of entries, if no size is configured.
+	 * @return the new, empty table.
+	 */
+	static OffHeapTable createOffHeap(long entries) {
+		long bytes = entries * OffHeapTable.ENTRY_BYTES;
+		String mb = System.getProperty(SIZE_PROPERTY);
+		if (mb != null) {
+			bytes = Long.parseLong(mb.trim()) << 20;
+		}
+		return new OffHeapTable(bytes, Boolean.getBoolean(HUGE_PAGES_PROPERTY));
+	}
+}
@@ -0,0 +1,49 @@
+/* Name: Variation
+ * Description: This class represents a move found by a search, with its score
+ * and the line of play expected after it.
+ */
+
+package src.model;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@code Variation} class is one of the lines returned by an analysis: a
+ * root move, its score and the principal variation starting with it.
+ */
+public class Variation {
+
+	/** The score of the line, from the point of view of the searching player. */
+	private final int score;
+	
+	/** The moves of the line, starting with the root move. */
+	private final List<Move> line;
+	
+	public Variation(int score, List<Move> line) {
+		this.score = score;
+		this.line = Collections.unmodifiableList(line);
+	}
+	
+	public Move getMove() {
+		return line.get(0);
+	}
+	
+	public int getScore() {
+		return score;
+	}
+	
+	public List<Move> getLine() {
+		return line;
+	}
+	
+	@Override
+	public String toString() {
+		String moves = "";
+		for (Move move : line) {
+			moves += " " + (move.getStartIndex() + 1) + "-"
+					+ (move.getEndIndex() + 1);
+		}
+		return score + ":" + moves;
+	}
+}
@@ -0,0 +1,169 @@
+/* Name: Zobrist
+ * Description: This class holds the random keys used to hash game states into
+ * 64-bit Zobrist keys.
+ */
+
+package src.model;
+
+/**
+ * The {@code Zobrist} class hashes a game state into a 64-bit key by XOR-ing
+ * one random key per occupied tile, one for the side to move and one for the
+ * tile of a pending multi-skip. Since XOR is its own inverse, a move only has
+ * to XOR in and out the few keys it changes, which is what {@link Game} does
+ * to keep its key up to date.
+ * <p>
+ * The mirror key of a state is the key of the same state rotated by 180
+ * degrees with the colours swapped and the other player to move. Under the
+ * rules of checkers both states are the same position seen from the other
+ * side of the board, so they can share {@link #canonical(long, long)} entries
+ * in the tables, with their score negated.
+ * <p>
+ * The keys come from a fixed seed so that a state hashes to the same key in
+ * every run of the program.
+ */
+public final class Zobrist {
+
+	/** The seed of the random keys. Changing it changes every key. */
+	private static final long SEED = 0x436865636B657273L;
+
+	/** The increment of the SplitMix64 generator producing the keys. */
+	private static final long GAMMA = 0x9E3779B97F4A7C15L;
+
+	/** The keys of each tile ID (0 to 7) on each of the 32 tiles. */
+	private static final long[][] PIECES = new long[8][32];
+
+	/** The key XOR-ed in when it is player 2's turn. */
+	private static final long SIDE;
+
+	/** The keys of the pending skip index, offset by one for no skip. */
+	private static final long[] SKIP = new long[33];
+
+	static {
+		long seed = SEED;
+		for (int id = 0; id < PIECES.length; id ++) {
+			for (int i = 0; i < 32; i ++) {
+				seed += GAMMA;
+				PIECES[id][i] = id == Board.EMPTY? 0 : mix(seed);
+			}
+		}
+		seed += GAMMA;
+		SIDE = mix(seed);
+		for (int i = 1; i < SKIP.length; i ++) {
+			seed += GAMMA;
+			SKIP[i] = mix(seed);
+		}
+	}
+
+	private Zobrist() {}
+
+	/**
+	 * Computes the key of a game state from scratch.
+	 *
+	 * @param board		the checker board.
+	 * @param isP2Turn	true if it is player 2's turn.
+	 * @param skipIndex	the index of the pending skip, or -1 if none.
+	 * @return the 64-bit key of the state.
+	 */
+	public static long hash(Board board, boolean isP2Turn, int skipIndex) {
+		long key = 0;
+		for (int i = 0; i < 32; i ++) {
+			key ^= piece(board.get(i), i);
+		}
+		return key ^ side(isP2Turn) ^ skip(skipIndex);
+	}
+
+	/**
+	 * Computes the mirror key of a game state from scratch, i.e. the key of
+	 * the mirrored state.
+	 *
+	 * @param board		the checker board.
+	 * @param isP2Turn	true if it is player 2's turn.
+	 * @param skipIndex	the index of the pending skip, or -1 if none.
+	 * @return the 64-bit key of the mirrored state.
+	 */
+	public static long mirrorHash(Board board, boolean isP2Turn,
+			int skipIndex) {
+		long key = 0;
+		for (int i = 0; i < 32; i ++) {
+			key ^= mirrorPiece(board.get(i), i);
+		}
+		return key ^ mirrorSide(isP2Turn) ^ mirrorSkip(skipIndex);
+	}
+
+	/**
+	 * Picks the key shared by a state and its mirror.
+	 *
+	 * @param key		the key of a state.
+	 * @param mirrorKey	the key of the mirrored state.
+	 * @return the smaller of the two keys.
+	 */
+	public static long canonical(long key, long mirrorKey) {
+		return Math.min(key, mirrorKey);
+	}
+
+	/**
+	 * Gets the key of a tile ID on a tile. Empty tiles have a key of 0.
+	 *
+	 * @param id	the tile ID.
+	 * @param index	the index of the tile.
+	 * @return the key of the tile ID on the tile.
+	 */
+	public static long piece(int id, int index) {
+		if (id <= Board.EMPTY || !Board.isValidIndex(index)) {
+			return 0;
+		}
+		return PIECES[id][index];
+	}
+
+	public static long side(boolean isP2Turn) {
+		return isP2Turn? SIDE : 0;
+	}
+
+	public static long skip(int skipIndex) {
+		return Board.isValidIndex(skipIndex)? SKIP[skipIndex + 1] : 0;
+	}
+
+	/**
+	 * Gets the key that a tile ID on a tile has in the mirrored state: the
+	 * other colour, on the tile rotated by 180 degrees.
+	 *
+	 * @param id	the tile ID.
+	 * @param index	the index of the tile.
+	 * @return the key of the mirrored tile ID on the mirrored tile.
+	 */
+	public static long mirrorPiece(int id, int index) {
+		if (id <= Board.EMPTY || !Board.isValidIndex(index)) {
+			return 0;
+		}
+		return PIECES[id ^ (Board.BLACK_CHECKER ^ Board.WHITE_CHECKER)][31 - index];
+	}
+
+	public static long mirrorSide(boolean isP2Turn) {
+		return side(!isP2Turn);
+	}
+
+	public static long mirrorSkip(int skipIndex) {
+		return Board.isValidIndex(skipIndex)? skip(31 - skipIndex) : 0;
+	}
+
+	/**
+	 * Adds a value to a hash, for the fingerprints of the evaluations.
+	 *
+	 * @param hash	the hash of the values so far.
+	 * @param value	the next value.
+	 * @return the hash of the values and this one.
+	 */
+	static long combine(long hash, long value) {
+		return mix((hash + GAMMA) ^ value);
+	}
+
+	/**
+	 * The SplitMix64 output function, which is enough to get well-distributed
+	 * keys from a counter.
+	 */
+	static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,275 @@
+/* Name: AllocationGate
+ * Description: This class is a command line tool measuring the memory the
+ * parts of the search allocate per node, and failing above a budget.
+ */
+
+package src.tools;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import src.model.AlphaBetaPlayer;
+import src.model.Game;
+import src.model.Move;
+
+/**
+ * The {@code AllocationGate} class measures, with the allocation counter of
+ * the thread ({@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes
+ * (long)}), the bytes allocated per operation by the parts of the search of
+ * an {@link AlphaBetaPlayer}, through the methods the search itself calls:
+ * <ul>
+ * <li>movegen: the ordered moves of a state, {@code getMoves(Game)};</li>
+ * <li>eval: the score of a leaf, {@code evaluate(Game)}, with the evaluator
+ * of the player and its cache emptied beforehand;</li>
+ * <li>probe: a lookup of the transposition table, {@code probe(Game, int)},
+ * the table being filled beforehand;</li>
+ * <li>search: a search to the given depth, per node.</li>
+ * </ul>
+ * The first three run on the states {@link #LEAF_DEPTH} moves after those
+ * of {@link Positions}, the search on the states of {@link Positions}. Each
+ * part runs {@link #WARMUPS} times to be compiled, then once measured.
+ * <p>
+ * Each part is held to its budget in {@link #BUDGETS}. The budgets are a
+ * ratchet: they sit just above what the parts allocate now, and are lowered
+ * in the same change which removes an allocation, so that it can't come
+ * back unnoticed. A part which no longer allocates anything gets a budget
+ * of 1 byte, as any object allocated per operation costs at least 16.
+ * <p>
+ * The tool exits with 1 if a part allocates more than its budget.
+ * <p>
+ * Usage: {@code java src.tools.AllocationGate [depth] [--budget part
+ * bytes]...}, by default depth 6 and the budgets of {@link #BUDGETS}. A
+ * negative budget only reports the part.
+ */
+public class AllocationGate {
+
+	/** The parts measured, in order. */
+	private static final String[] PARTS = {"movegen", "eval", "probe",
+			"search"};
+
+	/**
+	 * The most bytes each part of {@link #PARTS} may allocate per operation.
+	 * Lower them as the allocations are removed, never raise them. The
+	 * evaluation still finds the pieces as lists of points, a search copies
+	 * a {@code Game} per node, and a probe boxes its value.
+	 */
+	private static final double[] BUDGETS = {608, 5632, 2, 4608};
+
+	/** The number of moves from the states of the corpus to the leaves. */
+	private static final int LEAF_DEPTH = 2;
+
+	/** The number of runs of a part before it is measured. */
+	private static final int WARMUPS = 4;
+
+	/** The number of times the leaves are gone through by a part. */
+	private static final int PASSES = 20;
+
+	/** The counter of the allocations of the threads. */
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean)
+			ManagementFactory.getThreadMXBean();
+
+	/** The states of the corpus. */
+	private final List<Game> games;
+
+	/** The states {@link #LEAF_DEPTH} moves after those of the corpus. */
+	private final Game[] leaves;
+
+	/** The depth of the searches. */
+	private final int depth;
+
+	/**
+	 * The players of each colour, white first, without noise, node budget,
+	 * book nor tablebase.
+	 */
+	private final Player[] players = {new Player(false), new Player(true)};
+
+	/** The operations of the current part, and a sum which keeps them. */
+	private long operations, sum;
+
+	public static void main(String[] args) {
+
+		int depth = 6;
+		double[] budgets = BUDGETS.clone();
+		for (int i = 0; i < args.length; i ++) {
+			if (args[i].equals("--budget")) {
+				String part = args[++ i];
+				int p = List.of(PARTS).indexOf(part);
+				if (p < 0) {
+					System.err.println("Unknown part: " + part);
+					System.exit(2);
+				}
+				budgets[p] = Double.parseDouble(args[++ i]);
+			} else {
+				depth = Integer.parseInt(args[i]);
+			}
+		}
+		if (!THREADS.isThreadAllocatedMemorySupported()) {
+			System.err.println("The allocations of the threads are not"
+					+ " measured by this JVM");
+			System.exit(2);
+		}
+		THREADS.setThreadAllocatedMemoryEnabled(true);
+
+		AllocationGate gate = new AllocationGate(Positions.all(), depth);
+		System.out.printf("%-12s %12s %14s %10s %8s%n", "part", "operations",
+				"bytes", "bytes/op", "budget");
+		boolean failed = false;
+		failed |= gate.measure(PARTS[0], budgets[0], () -> gate.generate());
+		failed |= gate.measure(PARTS[1], budgets[1], () -> gate.evaluate());
+		gate.store();
+		failed |= gate.measure(PARTS[2], budgets[2], () -> gate.probe());
+		failed |= gate.measure(PARTS[3], budgets[3], () -> gate.search());
+		System.exit(failed? 1 : 0);
+	}
+
+	private AllocationGate(List<Game> games, int depth) {
+		this.games = games;
+		this.depth = depth;
+		for (Player player : players) {
+			player.setOpeningBook(null);
+			player.setTablebase(null);
+			player.setNodeBudget(0);
+			player.setEvalNoise(0);
+		}
+		List<Game> found = new ArrayList<>();
+		for (Game game : games) {
+			Game root = game.copy();
+			players[0].getEvaluator().attach(root);
+			expand(root, LEAF_DEPTH, found);
+		}
+		this.leaves = found.toArray(new Game[0]);
+	}
+
+	/**
+	 * Adds the states some moves after a state, or the last ones before the
+	 * end of the game.
+	 */
+	private void expand(Game game, int moves, List<Game> found) {
+		List<Move> next = playerOf(game).moves(game);
+		if (moves == 0 || next.isEmpty()) {
+			found.add(game);
+			return;
+		}
+		for (Move move : next) {
+			Game child = game.copy();
+			child.move(move);
+			expand(child, moves - 1, found);
+		}
+	}
+
+	/**
+	 * Runs a part to have it compiled, then measures it.
+	 *
+	 * @param name		the name of the part.
+	 * @param budget	the most bytes it may allocate per operation, or a
+	 * negative number to only report them.
+	 * @param part		the part, which sets the operations it made.
+	 * @return true if the part allocates more than its budget.
+	 */
+	private boolean measure(String name, double budget, Runnable part) {
+		for (int i = 0; i < WARMUPS; i ++) {
+			part.run();
+		}
+		long id = Thread.currentThread().getId();
+		long before = THREADS.getThreadAllocatedBytes(id);
+		part.run();
+		long bytes = THREADS.getThreadAllocatedBytes(id) - before;
+		double perOperation = bytes / (double) Math.max(1, operations);
+		boolean failed = budget >= 0 && perOperation > budget;
+		System.out.printf("%-12s %12d %14d %10.3f %8s%s%n", name, operations,
+				bytes, perOperation, budget >= 0? String.format("%.1f", budget)
+				: "-", failed? "  FAILED" : "");
+		return failed;
+	}
+
+	private void generate() {
+		this.operations = 0;
+		for (int r = 0; r < PASSES; r ++) {
+			for (Game leaf : leaves) {
+				sum += playerOf(leaf).moves(leaf).size();
+				operations ++;
+			}
+		}
+	}
+
+	private void evaluate() {
+		this.operations = 0;
+		for (int r = 0; r < PASSES; r ++) {
+			for (Player player : players) {
+				player.getEvalCache().clear();
+			}
+			for (Game leaf : leaves) {
+				sum += playerOf(leaf).score(leaf);
+				operations ++;
+			}
+		}
+	}
+
+	/**
+	 * Fills the transposition tables with the leaves.
+	 */
+	private void store() {
+		for (Game leaf : leaves) {
+			Player player = playerOf(leaf);
+			player.keep(leaf, depth, player.score(leaf));
+		}
+	}
+
+	private void probe() {
+		this.operations = 0;
+		for (int r = 0; r < PASSES; r ++) {
+			for (Game leaf : leaves) {
+				Integer value = playerOf(leaf).lookup(leaf, depth);
+				if (value != null) {
+					sum += value;
+				}
+				operations ++;
+			}
+		}
+	}
+
+	/**
+	 * Searches the states of the corpus to a depth.
+	 */
+	private void search() {
+		this.operations = 0;
+		for (Game game : games) {
+			Player player = playerOf(game);
+			player.clearTables();
+			player.analyse(game, depth, 1);
+			operations += player.getNodes();
+		}
+	}
+
+	private Player playerOf(Game game) {
+		return players[game.isP2Turn()? 1 : 0];
+	}
+
+	/**
+	 * An AlphaBetaPlayer whose parts of the search can be called directly.
+	 */
+	private static final class Player extends AlphaBetaPlayer {
+
+		Player(boolean player) {
+			super(player);
+		}
+
+		List<Move> moves(Game game) {
+			return getMoves(game);
+		}
+
+		int score(Game game) {
+			return evaluate(game);
+		}
+
+		void keep(Game game, int depth, int score) {
+			store(game, depth, score);
+		}
+
+		Integer lookup(Game game, int depth) {
+			return probe(game, depth);
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/* Name: Analyse
+ * Description: This class is a command line tool printing the best lines of a
+ * game state.
+ */
+
+package src.tools;
+
+import src.model.AlphaBetaPlayer;
+import src.model.Analysis;
+import src.model.Game;
+
+/**
+ * The {@code Analyse} class prints the best lines found by
+ * {@link AlphaBetaPlayer#analyse(Game, int, int)} for a game state, along with
+ * the cost of the multi-line search relative to a single-line one.
+ * <p>
+ * Usage: {@code java src.tools.Analyse [depth] [lines] [state]} where the state
+ * is in the format of {@link Game#getGameState()} (the start position by
+ * default).
+ */
+public class Analyse {
+
+	public static void main(String[] args) {
+		
+		int depth = args.length > 0? Integer.parseInt(args[0]) : 9;
+		int lines = args.length > 1? Integer.parseInt(args[1]) : 3;
+		Game game = args.length > 2? new Game(args[2]) : new Game();
+		
+		// Warm the JIT up first, then give each search fresh tables so that
+		// the costs compare
+		new AlphaBetaPlayer(game.isP2Turn()).analyse(game,
+				Math.min(depth, 6), lines);
+		Analysis single = new AlphaBetaPlayer(game.isP2Turn())
+				.analyse(game, depth, 1);
+		Analysis multi = new AlphaBetaPlayer(game.isP2Turn())
+				.analyse(game, depth, lines);
+		
+		System.out.println(multi);
+		System.out.printf("single line: %d nodes, %d ms%n",
+				single.getNodes(), single.getElapsedMillis());
+		System.out.printf("%d lines: %.2fx the nodes, %.2fx the time%n", lines,
+				(double) multi.getNodes() / Math.max(1, single.getNodes()),
+				(double) multi.getElapsedMillis()
+				/ Math.max(1, single.getElapsedMillis()));
+	}
+}
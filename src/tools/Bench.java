@@ -0,0 +1,368 @@
+/* Name: Bench
+ * Description: This class is a command line tool timing the searches of the
+ * AI players on a fixed set of positions, and comparing them to a baseline.
+ */
+
+package src.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import src.model.AlphaBetaPlayer;
+import src.model.Game;
+import src.model.MinMaxPlayer;
+import src.model.Move;
+import src.model.SearchInfo;
+import src.model.SearchListener;
+
+/**
+ * The {@code Bench} class runs the searches of {@link MinMaxPlayer} and
+ * {@link AlphaBetaPlayer} to a fixed depth on the start position and the
+ * states of {@link Positions}, taken from self-play games, or with
+ * {@code --games file} on states sampled from recorded games (see
+ * {@link Positions#sample(Path, int)}), {@code --sample n} of them. The
+ * players have no node budget, opening book, tablebase nor noise, and their
+ * tables are cleared before each search, so a search visits the same nodes
+ * on every run and every machine. A baseline must have been run on the same
+ * states.
+ * <p>
+ * For each player and position, a line of the CSV file gives the nodes, the
+ * time and the nodes per second of the search, the move chosen and its score,
+ * then the time and the nodes it took to complete each depth. The fastest of
+ * the runs of a search is kept. The last line is the signature of the
+ * searches, a hash of the nodes of each depth and of the moves: any change of
+ * the search, the move ordering or the evaluation changes it, while a change
+ * which only makes the engine faster keeps it.
+ * <p>
+ * With {@code --baseline}, the searches are compared to those of an earlier
+ * file: the positions whose nodes or move changed are listed, and the total
+ * time of each player. The tool exits with 2 if the signature differs, 1 if
+ * a player is slower than the baseline by more than the threshold ( 5% by
+ * default ) and 0 otherwise.
+ * <p>
+ * Usage: {@code java src.tools.Bench [file] [--minmax depth]
+ * [--alphabeta depth] [--runs n] [--warmup n] [--games file] [--sample n]
+ * [--baseline file] [--threshold percent]}, by default {@code bench.csv},
+ * depth 4 for minimax, 6 for alpha-beta, 3 runs, a warm-up pass and as many
+ * sampled states as {@link Positions} has.
+ */
+public class Bench {
+
+	/** The columns of the file. */
+	private static final String HEADER = "player,position,state,depth,nodes,"
+			+ "millis,nps,move,score,depth_millis,depth_nodes";
+
+	/** The start of the signature line. */
+	private static final String SIGNATURE = "# signature=";
+
+	/** The names of the players, in the order of the lines. */
+	private static final String[] PLAYERS = {"minmax", "alphabeta"};
+
+	public static void main(String[] args) throws IOException {
+
+		Path file = Paths.get("bench.csv");
+		Path baseline = null, recorded = null;
+		int[] depths = {4, 6};
+		int runs = 3, warmup = 1, sample = Positions.SIZE;
+		double threshold = 5;
+		for (int i = 0; i < args.length; i ++) {
+			switch (args[i]) {
+			case "--minmax": depths[0] = Integer.parseInt(args[++ i]); break;
+			case "--alphabeta": depths[1] = Integer.parseInt(args[++ i]);
+				break;
+			case "--runs": runs = Math.max(1, Integer.parseInt(args[++ i]));
+				break;
+			case "--warmup": warmup = Integer.parseInt(args[++ i]); break;
+			case "--games": recorded = Paths.get(args[++ i]); break;
+			case "--sample": sample = Integer.parseInt(args[++ i]); break;
+			case "--baseline": baseline = Paths.get(args[++ i]); break;
+			case "--threshold": threshold = Double.parseDouble(args[++ i]);
+				break;
+			default: file = Paths.get(args[i]);
+			}
+		}
+
+		List<Game> games = new ArrayList<>();
+		games.add(new Game());
+		games.addAll(recorded != null? Positions.sample(recorded, sample)
+				: Positions.all());
+		Searcher[] searchers = {new Searcher(0, depths[0]),
+				new Searcher(1, depths[1])};
+
+		// Let the JIT compile the search before anything is timed
+		for (int w = 0; w < warmup; w ++) {
+			for (Searcher searcher : searchers) {
+				for (Game game : games) {
+					searcher.run(game);
+				}
+			}
+		}
+
+		List<Result> results = new ArrayList<>();
+		for (Searcher searcher : searchers) {
+			long nodes = 0, nanos = 0;
+			for (int p = 0; p < games.size(); p ++) {
+				Result result = searcher.run(games.get(p));
+				for (int r = 1; r < runs; r ++) {
+					Result again = searcher.run(games.get(p));
+					if (again.nodes != result.nodes) {
+						System.err.printf("%s %d: %d nodes, then %d: the search"
+								+ " is not deterministic%n",
+								PLAYERS[searcher.player], p, result.nodes,
+								again.nodes);
+					}
+					if (again.nanos < result.nanos) {
+						result = again;
+					}
+				}
+				result.position = p;
+				result.state = games.get(p).getGameState();
+				results.add(result);
+				nodes += result.nodes;
+				nanos += result.nanos;
+			}
+			System.out.printf("%-9s depth %d: %d nodes in %d ms, %.0f nodes per"
+					+ " second%n", PLAYERS[searcher.player],
+					depths[searcher.player], nodes, nanos / 1_000_000,
+					nodes * 1e9 / Math.max(1, nanos));
+		}
+		long signature = signature(results);
+		write(file, results, signature);
+		System.out.printf("signature %016x, written to %s%n", signature, file);
+
+		if (baseline != null) {
+			System.exit(compare(results, signature, baseline, threshold));
+		}
+	}
+
+	/**
+	 * Computes the signature of the searches: a hash of the nodes of each
+	 * depth and of the move of each search, in order.
+	 */
+	private static long signature(List<Result> results) {
+		long hash = 0;
+		for (Result result : results) {
+			hash = mix(hash ^ result.player);
+			for (long nodes : result.depthNodes) {
+				hash = mix(hash ^ nodes);
+			}
+			hash = mix(hash ^ result.move.hashCode());
+		}
+		return hash;
+	}
+
+	/**
+	 * Mixes the bits of a value, as SplitMix64.
+	 */
+	private static long mix(long z) {
+		z += 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	private static void write(Path file, List<Result> results, long signature)
+			throws IOException {
+		try (BufferedWriter writer = Files.newBufferedWriter(file,
+				StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			for (Result result : results) {
+				writer.write(result.toString());
+				writer.newLine();
+			}
+			writer.write(String.format("%s%016x", SIGNATURE, signature));
+			writer.newLine();
+		}
+	}
+
+	/**
+	 * Compares the searches to those of a baseline file.
+	 *
+	 * @return the exit status: 2 if the signature differs, 1 if a player is
+	 * slower by more than the threshold, 0 otherwise.
+	 */
+	private static int compare(List<Result> results, long signature,
+			Path baseline, double threshold) throws IOException {
+		Map<String, String[]> before = new HashMap<>();
+		String baseSignature = null;
+		for (String line : Files.readAllLines(baseline,
+				StandardCharsets.UTF_8)) {
+			if (line.startsWith(SIGNATURE)) {
+				baseSignature = line.substring(SIGNATURE.length()).trim();
+			} else if (!line.isEmpty() && !line.equals(HEADER)) {
+				String[] columns = line.split(",");
+				before.put(columns[0] + "," + columns[1], columns);
+			}
+		}
+
+		int status = 0;
+		long[] nanos = new long[PLAYERS.length];
+		double[] baseMillis = new double[PLAYERS.length];
+		for (Result result : results) {
+			String[] base = before.get(PLAYERS[result.player] + ","
+					+ result.position);
+			if (base == null) {
+				System.out.printf("%s %d: not in the baseline%n",
+						PLAYERS[result.player], result.position);
+				continue;
+			}
+			nanos[result.player] += result.nanos;
+			baseMillis[result.player] += Double.parseDouble(base[5]);
+			if (!base[2].equals(result.state)) {
+				System.out.printf("%s %d: another position in the baseline%n",
+						PLAYERS[result.player], result.position);
+			} else if (Long.parseLong(base[4]) != result.nodes
+					|| !base[7].equals(result.move)) {
+				System.out.printf("%s %d: %s nodes and move %s, now %d and"
+						+ " %s%n", PLAYERS[result.player], result.position,
+						base[4], base[7], result.nodes, result.move);
+			}
+		}
+		String now = String.format("%016x", signature);
+		if (!now.equals(baseSignature)) {
+			System.out.printf("signature %s, %s in the baseline: the searches"
+					+ " changed%n", now, baseSignature);
+			status = 2;
+		}
+		for (int i = 0; i < PLAYERS.length; i ++) {
+			double millis = nanos[i] / 1e6;
+			double change = baseMillis[i] > 0?
+					(millis / baseMillis[i] - 1) * 100 : 0;
+			System.out.printf("%-9s %.1f ms, %.1f ms in the baseline: %+.1f%%"
+					+ "%n", PLAYERS[i], millis, baseMillis[i], change);
+			if (change > threshold && status == 0) {
+				System.out.printf("%s is slower than the threshold of %.1f%%%n",
+						PLAYERS[i], threshold);
+				status = 1;
+			}
+		}
+		return status;
+	}
+
+	/**
+	 * The {@code Searcher} class runs the searches of a player of each
+	 * colour, and records the depths they complete.
+	 */
+	private static final class Searcher implements SearchListener {
+
+		/** The index of the player in {@link #PLAYERS}. */
+		final int player;
+
+		/** The depth of the searches. */
+		final int depth;
+
+		/** The players of each colour, white first. */
+		final MinMaxPlayer[] players = new MinMaxPlayer[2];
+
+		/** The depths completed by the current search. */
+		final List<SearchInfo> iterations = new ArrayList<>();
+
+		Searcher(int player, int depth) {
+			this.player = player;
+			this.depth = depth;
+			for (int i = 0; i < 2; i ++) {
+				MinMaxPlayer p = player == 0? new FixedDepth(i == 1)
+						: new AlphaBetaPlayer(i == 1);
+				p.setOpeningBook(null);
+				p.setTablebase(null);
+				p.setNodeBudget(0);
+				p.setEvalNoise(0);
+				p.setMaxDepth(depth);
+				p.setSearchListener(this);
+				players[i] = p;
+			}
+		}
+
+		Result run(Game game) {
+			MinMaxPlayer p = players[game.isP2Turn()? 1 : 0];
+			p.clearTables();
+			iterations.clear();
+			long start = System.nanoTime();
+			Move move = p instanceof FixedDepth? ((FixedDepth) p).search(game)
+					: ((AlphaBetaPlayer) p).analyse(game, depth, 1)
+					.getBestMove();
+			long nanos = System.nanoTime() - start;
+
+			Result result = new Result();
+			result.player = player;
+			result.nodes = p.getNodes();
+			result.nanos = nanos;
+			result.move = move.getStartIndex() + "-" + move.getEndIndex();
+			result.depthNanos = new long[iterations.size()];
+			result.depthNodes = new long[iterations.size()];
+			for (int i = 0; i < iterations.size(); i ++) {
+				SearchInfo info = iterations.get(i);
+				result.depth = info.getDepth();
+				result.score = info.getScore();
+				result.depthNanos[i] = info.getElapsedNanos();
+				result.depthNodes[i] = info.getNodes();
+			}
+			return result;
+		}
+
+		@Override
+		public void searchProgress(SearchInfo info) {
+		}
+
+		@Override
+		public void iterationCompleted(SearchInfo info) {
+			iterations.add(info);
+		}
+	}
+
+	/**
+	 * A MinMaxPlayer whose search can be called directly, to the depth it
+	 * is given.
+	 */
+	private static final class FixedDepth extends MinMaxPlayer {
+
+		FixedDepth(boolean player) {
+			super(player);
+		}
+
+		@Override
+		public Move search(Game game) {
+			return super.search(game);
+		}
+	}
+
+	/**
+	 * The {@code Result} class is a line of the file: a search of a
+	 * position.
+	 */
+	private static final class Result {
+
+		int player, position, depth, score;
+		String state, move;
+		long nodes, nanos;
+
+		/** The time and the nodes to complete each depth. */
+		long[] depthNanos, depthNodes;
+
+		@Override
+		public String toString() {
+			StringBuilder millis = new StringBuilder();
+			StringBuilder nodes = new StringBuilder();
+			for (int i = 0; i < depthNodes.length; i ++) {
+				String separator = i > 0? ";" : "";
+				millis.append(separator).append(String.format(Locale.ROOT, "%.3f",
+						depthNanos[i] / 1e6));
+				nodes.append(separator).append(depthNodes[i]);
+			}
+			return String.format(Locale.ROOT, "%s,%d,%s,%d,%d,%.3f,%.0f,%s,%d,"
+					+ "%s,%s", PLAYERS[player], position, state, depth,
+					this.nodes, nanos / 1e6, this.nodes * 1e9 / Math.max(1,
+					nanos), move, score, millis, nodes);
+		}
+	}
+}
@@ -0,0 +1,228 @@
+/* Name: BuildBook
+ * Description: This class is a command line tool making an opening book from
+ * searches of the first states of the game or from recorded games.
+ */
+
+package src.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+
+import src.logic.MoveLogic;
+import src.model.AlphaBetaPlayer;
+import src.model.Analysis;
+import src.model.Board;
+import src.model.Game;
+import src.model.Move;
+import src.model.OpeningBook;
+import src.model.Variation;
+
+/**
+ * The {@code BuildBook} class writes an {@link OpeningBook} in one of two
+ * ways:
+ * <ul>
+ * <li>{@code java src.tools.BuildBook book [plies] [depth] [lines]} searches
+ * the start state for its best {@code lines} moves, then the states these
+ * moves lead to, and so on for {@code plies} plies. A move is kept if it
+ * scores within {@link #MARGIN} of the best one, and weighs more the closer
+ * it is.</li>
+ * <li>{@code java src.tools.BuildBook book --games file [plies]} reads
+ * recorded games, one per line in the standard notation such as
+ * {@code 11-15 24-20 15-18 22x15} (one move per jump), and weighs the moves
+ * of their first {@code plies} plies by how often they were played. Lines
+ * starting with {@code #}, and the games with a move that is not legal, are
+ * skipped.</li>
+ * </ul>
+ * The notation numbers the squares from 1 to 32 from the side of black,
+ * which moves first on squares 1 to 12. Here white moves first, from the
+ * tiles 20 to 31, so a square {@code s} is the tile {@code 32 - s}: the
+ * board seen from the other side, with the colours swapped. The moves of
+ * {@link #EXAMPLE} are read and written back before the games, so that the
+ * tool stops if the two no longer agree.
+ */
+public class BuildBook {
+
+	/** The most a searched move may score below the best one to be kept. */
+	private static final int MARGIN = 20;
+
+	/** An opening in the notation of the recorded games, with a jump. */
+	static final String EXAMPLE = "11-15 24-20 15-18 22x15";
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length == 0) {
+			System.err.println("Usage: BuildBook book [plies] [depth] [lines]"
+					+ " | BuildBook book --games file [plies]");
+			System.exit(2);
+		}
+		Path file = Paths.get(args[0]);
+		OpeningBook.Builder builder = new OpeningBook.Builder();
+		long start = System.nanoTime();
+		if (args.length > 2 && args[1].equals("--games")) {
+			int plies = args.length > 3? Integer.parseInt(args[3]) : 16;
+			String example = format(parse(new Game(), EXAMPLE, Integer.MAX_VALUE));
+			if (!example.equals(EXAMPLE)) {
+				System.err.printf("%s read back as %s%n", EXAMPLE, example);
+				System.exit(1);
+			}
+			readGames(Paths.get(args[2]), plies, builder);
+		} else {
+			int plies = args.length > 1? Integer.parseInt(args[1]) : 8;
+			int depth = args.length > 2? Integer.parseInt(args[2]) : 8;
+			int lines = args.length > 3? Integer.parseInt(args[3]) : 2;
+			search(plies, depth, lines, builder);
+		}
+		int records = builder.write(file);
+		System.out.printf("%d states, %d moves written to %s in %d ms%n",
+				builder.getStates(), records, file,
+				(System.nanoTime() - start) / 1_000_000);
+
+		// Read the start of the book back
+		OpeningBook book = OpeningBook.open(file);
+		for (OpeningBook.Entry entry : book.probe(new Game())) {
+			System.out.println("  " + entry);
+		}
+	}
+
+	/**
+	 * Searches the states reached by the good moves of the states before,
+	 * breadth first, each state and its mirror once.
+	 */
+	private static void search(int plies, int depth, int lines,
+			OpeningBook.Builder builder) {
+		AlphaBetaPlayer[] players = {
+				new AlphaBetaPlayer(false), new AlphaBetaPlayer(true)};
+		for (AlphaBetaPlayer player : players) {
+			player.setOpeningBook(null);
+		}
+		Queue<Game> states = new ArrayDeque<>();
+		Queue<Integer> statePlies = new ArrayDeque<>();
+		Set<Long> seen = new HashSet<>();
+		states.add(new Game());
+		statePlies.add(0);
+		while (!states.isEmpty()) {
+			Game game = states.poll();
+			int ply = statePlies.poll();
+			if (ply >= plies || !seen.add(game.getCanonicalKey())) {
+				continue;
+			}
+			Analysis analysis = players[game.isP2Turn()? 1 : 0]
+					.analyse(game, depth, lines);
+			List<Variation> found = analysis.getLines();
+			if (found.isEmpty()) {
+				continue;
+			}
+			int best = found.get(0).getScore();
+			for (Variation variation : found) {
+				if (variation.getScore() < best - MARGIN) {
+					break;
+				}
+				builder.add(game, variation.getMove(),
+						MARGIN + 1 - (best - variation.getScore()),
+						variation.getScore());
+				Game next = game.copy();
+				next.move(variation.getMove());
+				if (!next.isGameOver()) {
+					states.add(next);
+					statePlies.add(ply + 1);
+				}
+			}
+			if (seen.size() % 100 == 0) {
+				System.out.printf("%d states searched%n", seen.size());
+			}
+		}
+	}
+
+	/**
+	 * Adds the first moves of recorded games.
+	 */
+	private static void readGames(Path games, int plies,
+			OpeningBook.Builder builder) throws IOException {
+		int number = 0;
+		for (String line : Files.readAllLines(games)) {
+			number ++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			Game game = new Game();
+			try {
+				for (Move move : parse(game.copy(), line, plies)) {
+					builder.add(game, move, 1, 0);
+					game.move(move);
+				}
+			} catch (IllegalArgumentException e) {
+				System.err.printf("%s:%d: %s%n", games, number, e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Reads the first moves of a game in the standard notation, playing them.
+	 *
+	 * @param game	the state before the moves, which they change.
+	 * @param line	the moves, separated by spaces.
+	 * @param plies	the number of moves to read at most.
+	 * @return the moves read.
+	 * @throws IllegalArgumentException if a move is not legal or can't be
+	 * read.
+	 */
+	static List<Move> parse(Game game, String line, int plies) {
+		List<Move> moves = new ArrayList<>();
+		String[] texts = line.trim().split("\\s+");
+		for (int ply = 0; ply < texts.length && ply < plies; ply ++) {
+			String[] squares = texts[ply].split("[-x]");
+			int start, end;
+			try {
+				start = toIndex(Integer.parseInt(squares[0]));
+				end = toIndex(Integer.parseInt(squares[squares.length - 1]));
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("unreadable move "
+						+ texts[ply]);
+			}
+			if (squares.length != 2
+					|| !MoveLogic.isValidMove(game, start, end)) {
+				throw new IllegalArgumentException("illegal move "
+						+ texts[ply]);
+			}
+			Move move = new Move(start, end, 0);
+			moves.add(move);
+			game.move(move);
+		}
+		return moves;
+	}
+
+	/**
+	 * Writes moves in the standard notation, as read by
+	 * {@link #parse(Game, String, int)}.
+	 */
+	static String format(List<Move> moves) {
+		StringBuilder text = new StringBuilder();
+		for (Move move : moves) {
+			int start = move.getStartIndex(), end = move.getEndIndex();
+			boolean jump = Board.middle(start, end).x >= 0;
+			text.append(text.length() > 0? " " : "").append(toSquare(start))
+					.append(jump? 'x' : '-').append(toSquare(end));
+		}
+		return text.toString();
+	}
+
+	/**
+	 * @return the tile of a square of the notation, from 1 to 32, or -1.
+	 */
+	private static int toIndex(int square) {
+		return square >= 1 && square <= 32? 32 - square : -1;
+	}
+
+	private static int toSquare(int index) {
+		return 32 - index;
+	}
+}
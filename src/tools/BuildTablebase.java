@@ -0,0 +1,47 @@
+/* Name: BuildTablebase
+ * Description: This class is a command line tool computing the endgame
+ * tablebase and writing it to a file.
+ */
+
+package src.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import src.model.Tablebase;
+import src.model.TablebaseGenerator;
+
+/**
+ * The {@code BuildTablebase} class solves all the endgames with up to a
+ * number of pieces with a {@link TablebaseGenerator} and writes them to a
+ * {@link Tablebase} file.
+ * <p>
+ * Usage: {@code java src.tools.BuildTablebase [pieces] [file]}, 4 pieces and
+ * {@code endgames.tb} by default. Each piece more takes about 20 times the
+ * time and memory: 5 pieces need a heap of 1 GB.
+ */
+public class BuildTablebase {
+
+	public static void main(String[] args) throws IOException {
+
+		int pieces = args.length > 0? Integer.parseInt(args[0]) : 4;
+		Path file = Paths.get(args.length > 1? args[1] : "endgames.tb");
+
+		long start = System.nanoTime();
+		Map<Integer, byte[]> slices = new TablebaseGenerator(pieces)
+				.generate(System.out);
+		long states = 0;
+		for (byte[] values : slices.values()) {
+			states += values.length;
+		}
+		long solved = System.nanoTime();
+		long bytes = Tablebase.write(file, pieces, slices);
+		System.out.printf("%d slices, %d states solved in %d ms%n",
+				slices.size(), states, (solved - start) / 1_000_000);
+		System.out.printf("%s: %d bytes (%.2f bits per state), written in"
+				+ " %d ms%n", file, bytes, 8.0 * bytes / Math.max(1, states),
+				(System.nanoTime() - solved) / 1_000_000);
+	}
+}
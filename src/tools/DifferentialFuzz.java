@@ -0,0 +1,403 @@
+/* Name: DifferentialFuzz
+ * Description: This class is a command line tool playing random games with
+ * the rules of the game and with the bitboards at once, to check that they
+ * agree.
+ */
+
+package src.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import src.logic.Bitboard;
+import src.logic.MoveGenerator;
+import src.logic.MoveLogic;
+import src.model.Board;
+import src.model.Game;
+
+/**
+ * The {@code DifferentialFuzz} class plays random games through the two
+ * implementations of the rules: {@link Game#move(int, int)}, which checks
+ * the moves with {@link MoveLogic} and finds the skips with
+ * {@link MoveGenerator}, and {@link Bitboard}, used by the search. At every
+ * ply of a game it checks that:
+ * <ul>
+ * <li>both have the same state, player to move and checker which must skip
+ * again;</li>
+ * <li>the moves {@link MoveLogic#isValidMove(Game, int, int)} accepts, those
+ * {@link MoveGenerator} finds and those of {@link Bitboard#getMoves(int[])}
+ * are the same: the skips only when there are any, and only those of the
+ * checker which skipped last in the middle of a turn;</li>
+ * <li>each of these moves leads to the same state, so that a crowning ends
+ * the turn and a skip goes on when another is possible in both;</li>
+ * <li>both tell whether the game is over. The draws are left out, as the
+ * bitboards have no history: a game stops at its first draw.</li>
+ * </ul>
+ * Threads share the games, each played from its own seed so that a game can
+ * be played again alone. At the first difference, every thread stops and the
+ * state is written to a file, after removing the pieces whose removal still
+ * leaves a difference: the first line of the file is the smallest such
+ * state, in the format of {@link Game#getGameState()}, followed by comments
+ * on what differs and how the game got there.
+ * <p>
+ * Each game checked is then replayed by each implementation alone, finding
+ * the moves, making the chosen one and checking the end of the game at each
+ * ply, to compare their speeds.
+ * <p>
+ * Usage: {@code java src.tools.DifferentialFuzz [games] [threads] [seed]
+ * [--out file]}, by default 100000 games, a thread per processor, a random
+ * seed and {@code divergence.txt}.
+ */
+public class DifferentialFuzz {
+
+	/** The games still going after this number of plies are stopped. */
+	private static final int MAX_PLIES = 400;
+
+	/** The seed of the games. */
+	private final long seed;
+
+	/** The file of the first difference. */
+	private final Path out;
+
+	/** The next game to play. */
+	private final AtomicLong next = new AtomicLong();
+
+	/** Whether a difference was found. */
+	private final AtomicBoolean diverged = new AtomicBoolean();
+
+	/** The games and plies checked. */
+	private final LongAdder games = new LongAdder(), plies = new LongAdder();
+
+	/** The time each implementation took to replay the games. */
+	private final LongAdder legacyNanos = new LongAdder(),
+			bitboardNanos = new LongAdder();
+
+	/** A sum of the replays, which keeps them from being optimised away. */
+	private final LongAdder sink = new LongAdder();
+
+	public static void main(String[] args) throws Exception {
+
+		Path out = Paths.get("divergence.txt");
+		long count = 100_000;
+		int threads = Runtime.getRuntime().availableProcessors();
+		long seed = System.nanoTime();
+		int positional = 0;
+		for (int i = 0; i < args.length; i ++) {
+			if (args[i].equals("--out")) {
+				out = Paths.get(args[++ i]);
+				continue;
+			}
+			switch (positional ++) {
+			case 0: count = Long.parseLong(args[i]); break;
+			case 1: threads = Math.max(1, Integer.parseInt(args[i])); break;
+			default: seed = Long.parseLong(args[i]);
+			}
+		}
+		System.out.printf("%d games on %d threads, seed %d%n", count, threads,
+				seed);
+
+		DifferentialFuzz fuzz = new DifferentialFuzz(seed, out);
+		long games = count;
+		long start = System.nanoTime();
+		Thread[] workers = new Thread[threads];
+		for (int i = 0; i < threads; i ++) {
+			workers[i] = new Thread(() -> fuzz.run(games), "fuzz-" + i);
+			workers[i].start();
+		}
+
+		// Report now and then until the games are over
+		for (Thread worker : workers) {
+			while (worker.isAlive()) {
+				worker.join(10_000);
+				fuzz.report(start);
+			}
+		}
+		if (fuzz.diverged.get()) {
+			System.out.println("The implementations differ, see " + out);
+			System.exit(1);
+		}
+		System.out.println("No difference");
+	}
+
+	private DifferentialFuzz(long seed, Path out) {
+		this.seed = seed;
+		this.out = out;
+	}
+
+	/**
+	 * Plays the games left until they are over or a difference is found.
+	 */
+	private void run(long count) {
+		for (long game; !diverged.get()
+				&& (game = next.getAndIncrement()) < count; ) {
+			int[] moves = play(game);
+			if (moves == null) {
+				return;
+			}
+			games.increment();
+			plies.add(moves.length);
+
+			// Replay the game with each implementation alone
+			long start = System.nanoTime();
+			long legacy = replayLegacy(moves);
+			long middle = System.nanoTime();
+			long bitboard = replayBitboard(moves);
+			long end = System.nanoTime();
+			legacyNanos.add(middle - start);
+			bitboardNanos.add(end - middle);
+			sink.add(legacy + bitboard);
+		}
+	}
+
+	/**
+	 * Plays a random game with both implementations, checking them at each
+	 * ply.
+	 *
+	 * @param number	the number of the game, which gives its seed.
+	 * @return the moves of the game, or null if the implementations differ.
+	 */
+	private int[] play(long number) {
+		SplittableRandom random = new SplittableRandom(seed
+				^ number * 0x9E3779B97F4A7C15L);
+		Game game = new Game();
+		Bitboard state = Bitboard.of(game);
+		int[] moves = new int[MAX_PLIES];
+		int[] list = new int[Bitboard.MAX_MOVES];
+		int ply = 0;
+		for (; ply < MAX_PLIES && !game.isDraw(); ply ++) {
+			String difference = Bitboard.of(game).equals(state)? check(game)
+					: "the game is in " + game.getGameState()
+					+ ", the bitboard in " + state;
+			if (difference != null) {
+				diverge(game, difference, number, Arrays.copyOf(moves, ply));
+				return null;
+			}
+			int count = state.getMoves(list);
+			if (count == 0) {
+				break;
+			}
+			int move = list[random.nextInt(count)];
+			game.move(Bitboard.getStart(move), Bitboard.getEnd(move));
+			state.play(move);
+			moves[ply] = move;
+		}
+		return Arrays.copyOf(moves, ply);
+	}
+
+	/**
+	 * Checks the two implementations on a state.
+	 *
+	 * @param game	the state, not a draw.
+	 * @return what differs, or null if nothing does.
+	 */
+	private static String check(Game game) {
+		Bitboard state = Bitboard.of(game);
+		int[] list = new int[Bitboard.MAX_MOVES];
+		int[] bitboard = Arrays.copyOf(list, state.getMoves(list));
+		Arrays.sort(bitboard);
+		int[] valid = validMoves(game);
+		if (!Arrays.equals(valid, bitboard)) {
+			return "moves " + format(valid) + " by MoveLogic, "
+					+ format(bitboard) + " by the bitboard";
+		}
+		int[] generated = generatedMoves(game);
+		if (!Arrays.equals(generated, bitboard)) {
+			return "moves " + format(generated) + " by MoveGenerator, "
+					+ format(bitboard) + " by the bitboard";
+		}
+		if (game.isGameOver() != state.isGameOver()) {
+			return "the game is " + (game.isGameOver()? "" : "not ")
+					+ "over, the bitboard's is " + (state.isGameOver()? ""
+					: "not ") + "over";
+		}
+		for (int move : bitboard) {
+			int start = Bitboard.getStart(move), end = Bitboard.getEnd(move);
+			Game after = game.copy();
+			if (!after.move(start, end)) {
+				return "move " + start + "-" + end + " rejected by the game";
+			}
+			Bitboard played = state.copy();
+			played.play(move);
+			if (!Bitboard.of(after).equals(played)) {
+				return "after " + start + "-" + end + ", the game is in "
+						+ after.getGameState() + ", the bitboard in " + played;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Finds the moves {@link MoveLogic} accepts: from each piece, to each
+	 * tile one or two steps away diagonally.
+	 *
+	 * @return the moves, sorted.
+	 */
+	private static int[] validMoves(Game game) {
+		Board board = game.getBoard();
+		int[] moves = new int[32 * 8];
+		int count = 0;
+		for (int start = 0; start < 32; start ++) {
+			if (board.get(start) == Board.EMPTY) {
+				continue;
+			}
+			for (int d = 0; d < 4; d ++) {
+				int step = Bitboard.getStep(start, d);
+				if (step < 0) {
+					continue;
+				}
+				if (MoveLogic.isValidMove(game, start, step)) {
+					moves[count ++] = start | step << 5;
+				}
+				int jump = Bitboard.getStep(step, d);
+				if (jump >= 0 && MoveLogic.isValidMove(game, start, jump)) {
+					moves[count ++] = start | jump << 5;
+				}
+			}
+		}
+		moves = Arrays.copyOf(moves, count);
+		Arrays.sort(moves);
+		return moves;
+	}
+
+	/**
+	 * Finds the moves with {@link MoveGenerator}, as the first players did.
+	 *
+	 * @return the moves, sorted.
+	 */
+	private static int[] generatedMoves(Game game) {
+		List<int[]> list = Perft.rootMoves(game, true);
+		int[] moves = new int[list.size()];
+		for (int i = 0; i < moves.length; i ++) {
+			moves[i] = list.get(i)[0] | list.get(i)[1] << 5;
+		}
+		Arrays.sort(moves);
+		return moves;
+	}
+
+	private static String format(int[] moves) {
+		StringBuilder s = new StringBuilder("[");
+		for (int move : moves) {
+			s.append(s.length() > 1? " " : "").append(Bitboard.getStart(move))
+					.append('-').append(Bitboard.getEnd(move));
+		}
+		return s.append(']').toString();
+	}
+
+	/**
+	 * Removes the pieces of a state one at a time, as long as the
+	 * implementations still differ without them. The checker which must
+	 * skip again is kept.
+	 *
+	 * @param game	a state where the implementations differ.
+	 * @return a state without any piece that could be removed.
+	 */
+	private static Game minimize(Game game) {
+		char[] state = game.getGameState().toCharArray();
+		char empty = Character.forDigit(Board.EMPTY, 10);
+		boolean removed = true;
+		while (removed) {
+			removed = false;
+			for (int i = 0; i < 32; i ++) {
+				if (state[i] == empty || i == game.getSkipIndex()) {
+					continue;
+				}
+				char piece = state[i];
+				state[i] = empty;
+				if (check(new Game(new String(state))) != null) {
+					removed = true;
+				} else {
+					state[i] = piece;
+				}
+			}
+		}
+		return new Game(new String(state));
+	}
+
+	/**
+	 * Stops the games and writes the first difference found.
+	 */
+	private void diverge(Game game, String difference, long number,
+			int[] moves) {
+		if (!diverged.compareAndSet(false, true)) {
+			return;
+		}
+		Game minimal = minimize(game);
+		StringBuilder line = new StringBuilder();
+		for (int move : moves) {
+			line.append(' ').append(Bitboard.getStart(move)).append('-')
+					.append(Bitboard.getEnd(move));
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(out,
+				StandardCharsets.UTF_8)) {
+			writer.write(minimal.getGameState());
+			writer.newLine();
+			writer.write("# " + check(minimal));
+			writer.newLine();
+			writer.write(String.format("# game %d of seed %d, ply %d: %s%n",
+					number, seed, moves.length, game.getGameState()));
+			writer.write("# " + difference);
+			writer.newLine();
+			writer.write("# moves from the start:" + line);
+			writer.newLine();
+		} catch (IOException e) {
+			System.err.println("Difference not written: " + e.getMessage());
+		}
+		System.out.printf("game %d, ply %d: %s%nsmallest state %s%n", number,
+				moves.length, difference, minimal.getGameState());
+	}
+
+	/**
+	 * Replays a game with {@link Game} and {@link MoveGenerator}.
+	 *
+	 * @return a sum of the moves found.
+	 */
+	private static long replayLegacy(int[] moves) {
+		Game game = new Game();
+		long sum = 0;
+		for (int move : moves) {
+			sum += Perft.rootMoves(game, true).size();
+			sum += game.isGameOver()? 1 : 0;
+			game.move(Bitboard.getStart(move), Bitboard.getEnd(move));
+		}
+		return sum;
+	}
+
+	/**
+	 * Replays a game with {@link Bitboard}.
+	 *
+	 * @return a sum of the moves found.
+	 */
+	private static long replayBitboard(int[] moves) {
+		Bitboard state = Bitboard.of(new Game());
+		int[] list = new int[Bitboard.MAX_MOVES];
+		long sum = 0;
+		for (int move : moves) {
+			sum += state.getMoves(list);
+			sum += state.isGameOver()? 1 : 0;
+			state.play(move);
+		}
+		return sum;
+	}
+
+	private void report(long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		long p = plies.sum();
+		double legacy = p * 1e9 / Math.max(1, legacyNanos.sum());
+		double bitboard = p * 1e9 / Math.max(1, bitboardNanos.sum());
+		System.out.printf("%d games, %d plies in %.1f s: %.0f games per"
+				+ " second; replayed at %.0f plies per second by the game,"
+				+ " %.0f by the bitboard, %.1f times faster%n", games.sum(),
+				p, seconds, games.sum() / seconds, legacy, bitboard,
+				bitboard / Math.max(1e-9, legacy));
+	}
+}
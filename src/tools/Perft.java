@@ -0,0 +1,407 @@
+/* Name: Perft
+ * Description: This class is a command line tool counting the move sequences
+ * of a given length from a game state, to check and time the move
+ * generation.
+ */
+
+package src.tools;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import src.logic.Bitboard;
+import src.logic.MoveGenerator;
+import src.model.Board;
+import src.model.Game;
+
+/**
+ * The {@code Perft} class counts the leaves of the tree of moves to a given
+ * depth, the perft of chess programs. Two move generations count the same
+ * trees, so any difference shows a bug in one of them:
+ * <ul>
+ * <li>{@link Bitboard#getMoves(int[])} and {@link Bitboard#play(int)}, used
+ * by the search, by default;</li>
+ * <li>{@link MoveGenerator} and {@link Game#move(int, int)}, used by the
+ * game and the first players, with {@code --legacy}.</li>
+ * </ul>
+ * A ply is a step, as for {@link Game#move(int, int)}: each skip of a
+ * sequence is one. With {@code --turns}, a whole sequence of skips is one
+ * move instead, as in the perft numbers published for checkers. The draws by
+ * repetition or lack of progress are not taken into account.
+ * <p>
+ * At the last ply, the moves are counted without being made (bulk
+ * counting), unless {@code --no-bulk}. {@code --divide} prints the count
+ * under each first move; {@code --threads} shares the first moves between
+ * threads; {@code --hash} keeps the counts of the subtrees in a table of that
+ * many MB, shared by the threads, so that a state reached again is not
+ * counted again.
+ * <p>
+ * Usage: {@code java src.tools.Perft [depth] [state] [--divide]
+ * [--threads n] [--hash mb] [--no-bulk] [--turns] [--legacy]}, by default
+ * depth 8 from the start, in the format of {@link Game#getGameState()}.
+ */
+public class Perft {
+
+	/** The longest sequence of plies counted. */
+	private static final int MAX_DEPTH = 64;
+
+	/** The options. */
+	private final boolean bulk, turns, legacy;
+
+	/** The counts of the subtrees, or null. */
+	private final Table table;
+
+	/**
+	 * The moves of each level of the bitboard count: a ply, or a skip in a
+	 * sequence which is not a ply when counting turns. There are at most 24
+	 * skips in a game.
+	 */
+	private final int[][] moves = new int[MAX_DEPTH + 25][Bitboard.MAX_MOVES];
+
+	/** The level of the bitboard count. */
+	private int level;
+
+	public static void main(String[] args) {
+
+		int depth = 8;
+		Game game = new Game();
+		boolean divide = false, bulk = true, turns = false, legacy = false;
+		int threads = 1;
+		long hashMb = 0;
+		List<String> positional = new ArrayList<>();
+		for (int i = 0; i < args.length; i ++) {
+			switch (args[i]) {
+			case "--divide": divide = true; break;
+			case "--no-bulk": bulk = false; break;
+			case "--turns": turns = true; break;
+			case "--legacy": legacy = true; break;
+			case "--threads": threads = Integer.parseInt(args[++ i]); break;
+			case "--hash": hashMb = Long.parseLong(args[++ i]); break;
+			default: positional.add(args[i]);
+			}
+		}
+		if (positional.size() > 0) {
+			depth = Integer.parseInt(positional.get(0));
+		}
+		if (positional.size() > 1) {
+			game = new Game(positional.get(1));
+		}
+		depth = Math.max(0, Math.min(depth, MAX_DEPTH));
+		threads = Math.max(1, threads);
+		Table table = hashMb > 0? new Table(hashMb << 20) : null;
+
+		long start = System.nanoTime();
+		long[] counts = divide(game, depth, threads, bulk, turns, legacy,
+				table);
+		long nodes = 0;
+		List<int[]> roots = rootMoves(game, legacy);
+		for (int i = 0; i < counts.length; i ++) {
+			if (divide) {
+				System.out.printf("%d-%d: %d%n", roots.get(i)[0],
+						roots.get(i)[1], counts[i]);
+			}
+			nodes += counts[i];
+		}
+		if (depth == 0) {
+			nodes = 1;
+		}
+		long nanos = Math.max(1, System.nanoTime() - start);
+		System.out.printf("perft %d: %d nodes in %d ms, %.2f M nodes per"
+				+ " second%s%n", depth, nodes, nanos / 1_000_000,
+				nodes * 1e3 / nanos, table == null? ""
+				: String.format(", %.1f%% of the subtrees from the table",
+				table.getHitRate() * 100));
+	}
+
+	/**
+	 * Counts the leaves under each move of a state.
+	 *
+	 * @param game		the state.
+	 * @param depth		the number of plies, or turns, to count.
+	 * @param threads	the number of threads sharing the first moves.
+	 * @param bulk		true to count the moves of the last ply without
+	 * making them.
+	 * @param turns		true to count whole turns rather than plies.
+	 * @param legacy	true to use {@link MoveGenerator} rather than
+	 * {@link Bitboard}.
+	 * @param table		the counts of the subtrees, or null.
+	 * @return the count under each move, in the order of
+	 * {@link #rootMoves(Game, boolean)}.
+	 */
+	public static long[] divide(Game game, int depth, int threads,
+			boolean bulk, boolean turns, boolean legacy, Table table) {
+		List<int[]> roots = rootMoves(game, legacy);
+		long[] counts = new long[roots.size()];
+		if (depth == 0) {
+			return counts;
+		}
+
+		// Each thread takes the next first move left
+		AtomicInteger next = new AtomicInteger();
+		Runnable worker = () -> {
+			Perft perft = new Perft(bulk, turns, legacy, table);
+			for (int i; (i = next.getAndIncrement()) < counts.length; ) {
+				int[] move = roots.get(i);
+				counts[i] = legacy? perft.countAfter(game, move[0], move[1],
+						depth) : perft.countAfter(Bitboard.of(game),
+						move[0] | move[1] << 5, depth);
+			}
+		};
+		Thread[] workers = new Thread[Math.min(threads, counts.length) - 1];
+		for (int t = 0; t < workers.length; t ++) {
+			workers[t] = new Thread(worker, "perft-" + t);
+			workers[t].start();
+		}
+		worker.run();
+		for (Thread t : workers) {
+			try {
+				t.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Lists the moves of a state as start and end indices.
+	 *
+	 * @param game		the state.
+	 * @param legacy	true to use {@link MoveGenerator} rather than
+	 * {@link Bitboard}.
+	 * @return the moves, in the order of the generation.
+	 */
+	public static List<int[]> rootMoves(Game game, boolean legacy) {
+		if (legacy) {
+			return legacyMoves(game);
+		}
+		int[] moves = new int[Bitboard.MAX_MOVES];
+		int count = Bitboard.of(game).getMoves(moves);
+		List<int[]> list = new ArrayList<>(count);
+		for (int i = 0; i < count; i ++) {
+			list.add(new int[] {Bitboard.getStart(moves[i]),
+					Bitboard.getEnd(moves[i])});
+		}
+		return list;
+	}
+
+	private Perft(boolean bulk, boolean turns, boolean legacy, Table table) {
+		this.bulk = bulk;
+		this.turns = turns;
+		this.legacy = legacy;
+		this.table = table;
+	}
+
+	/**
+	 * Counts the leaves after a move of the bitboard generation. A skip
+	 * followed by another is not a ply of its own when counting turns.
+	 */
+	private long countAfter(Bitboard state, int move, int depth) {
+		Bitboard next = state.copy();
+		next.play(move);
+		boolean sameTurn = turns && next.isP2Turn() == state.isP2Turn();
+		return count(next, sameTurn? depth : depth - 1);
+	}
+
+	private long count(Bitboard state, int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+		long key = 0;
+		if (table != null) {
+			key = Table.key(state, depth);
+			long known = table.get(key);
+			if (known >= 0) {
+				return known;
+			}
+		}
+		int[] list = moves[level ++];
+		int n = state.getMoves(list);
+		long leaves = 0;
+		if (depth == 1 && bulk && (!turns || n == 0
+				|| !Bitboard.isSkip(list[0]))) {
+			leaves = n;
+		} else {
+			for (int i = 0; i < n; i ++) {
+				leaves += countAfter(state, list[i], depth);
+			}
+		}
+		level --;
+		if (table != null) {
+			table.put(key, leaves);
+		}
+		return leaves;
+	}
+
+	/**
+	 * Same as {@link #countAfter(Bitboard, int, int)}, with the game and
+	 * {@link MoveGenerator}.
+	 */
+	private long countAfter(Game game, int start, int end, int depth) {
+		Game next = game.copy();
+		if (!next.move(start, end)) {
+			throw new IllegalStateException("invalid move " + start + "-"
+					+ end + " in " + game.getGameState());
+		}
+		boolean sameTurn = turns && next.isP2Turn() == game.isP2Turn();
+		return count(next, sameTurn? depth : depth - 1);
+	}
+
+	private long count(Game game, int depth) {
+		if (depth == 0) {
+			return 1;
+		}
+		long key = 0;
+		if (table != null) {
+			key = Table.key(Bitboard.of(game), depth);
+			long known = table.get(key);
+			if (known >= 0) {
+				return known;
+			}
+		}
+		List<int[]> list = legacyMoves(game);
+		long leaves = 0;
+		if (depth == 1 && bulk && (!turns || list.isEmpty()
+				|| !isSkip(list.get(0)))) {
+			leaves = list.size();
+		} else {
+			for (int[] move : list) {
+				leaves += countAfter(game, move[0], move[1], depth);
+			}
+		}
+		if (table != null) {
+			table.put(key, leaves);
+		}
+		return leaves;
+	}
+
+	/**
+	 * Finds the moves of the player to move with {@link MoveGenerator}, as
+	 * the first computer player did: the skips if there are any, the simple
+	 * moves otherwise.
+	 */
+	private static List<int[]> legacyMoves(Game game) {
+		Board board = game.getBoard();
+		List<int[]> moves = new ArrayList<>();
+		if (game.getSkipIndex() >= 0) {
+			for (Point end : MoveGenerator.getSkips(board,
+					game.getSkipIndex())) {
+				moves.add(new int[] {game.getSkipIndex(), Board.toIndex(end)});
+			}
+			return moves;
+		}
+		List<Point> pieces = new ArrayList<>();
+		if (game.isP2Turn()) {
+			pieces.addAll(board.find(Board.BLACK_CHECKER));
+			pieces.addAll(board.find(Board.BLACK_KING));
+		} else {
+			pieces.addAll(board.find(Board.WHITE_CHECKER));
+			pieces.addAll(board.find(Board.WHITE_KING));
+		}
+		for (Point piece : pieces) {
+			int index = Board.toIndex(piece);
+			for (Point end : MoveGenerator.getSkips(board, index)) {
+				moves.add(new int[] {index, Board.toIndex(end)});
+			}
+		}
+		if (!moves.isEmpty()) {
+			return moves;
+		}
+		for (Point piece : pieces) {
+			int index = Board.toIndex(piece);
+			for (Point end : MoveGenerator.getMoves(board, index)) {
+				moves.add(new int[] {index, Board.toIndex(end)});
+			}
+		}
+		return moves;
+	}
+
+	private static boolean isSkip(int[] move) {
+		return Math.abs(Board.toPoint(move[0]).y
+				- Board.toPoint(move[1]).y) == 2;
+	}
+
+	/**
+	 * The {@code Table} class keeps the leaf counts of subtrees, one per
+	 * slot, the newest replacing the oldest. A slot holds the key xor the
+	 * count, then the count, so that two threads writing the same slot at
+	 * once leave a slot that does not match any key rather than a wrong
+	 * count.
+	 */
+	public static final class Table {
+
+		/** The entries, two longs per slot. */
+		private final long[] entries;
+
+		/** The number of slots minus one. */
+		private final int mask;
+
+		/** The lookups and how many found a count, roughly. */
+		private long probes, hits;
+
+		/**
+		 * Creates an empty table.
+		 *
+		 * @param bytes	the most memory the table may take.
+		 */
+		public Table(long bytes) {
+			long slots = Long.highestOneBit(Math.max(1, Math.min(bytes / 16,
+					1 << 29)));
+			this.entries = new long[(int) slots * 2];
+			this.mask = (int) slots - 1;
+		}
+
+		/**
+		 * Computes the key of a state and a depth.
+		 */
+		static long key(Bitboard state, int depth) {
+			long pieces = mix((long) state.getBlackCheckers() << 32
+					| state.getBlackKings() & 0xFFFFFFFFL);
+			pieces = mix(pieces ^ ((long) state.getWhiteCheckers() << 32
+					| state.getWhiteKings() & 0xFFFFFFFFL));
+			return mix(pieces ^ (state.isP2Turn()? 1 : 2)
+					^ (long) (state.getSkipIndex() + 1) << 2
+					^ (long) depth << 8);
+		}
+
+		/**
+		 * Mixes the bits of a value, as SplitMix64.
+		 */
+		private static long mix(long z) {
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			return z ^ (z >>> 31);
+		}
+
+		/**
+		 * @return the count of the key, or -1 if it is not in the table.
+		 */
+		long get(long key) {
+			int slot = 2 * ((int) key & mask);
+			long count = entries[slot + 1];
+			probes ++;
+			if ((entries[slot] ^ count) == key && count >= 0) {
+				hits ++;
+				return count;
+			}
+			return -1;
+		}
+
+		void put(long key, long count) {
+			int slot = 2 * ((int) key & mask);
+			entries[slot] = key ^ count;
+			entries[slot + 1] = count;
+		}
+
+		/**
+		 * @return the share of the lookups which found a count. The
+		 * statistics are not synchronised, so this is only an estimate when
+		 * several threads share the table.
+		 */
+		public double getHitRate() {
+			return probes == 0? 0 : (double) hits / probes;
+		}
+	}
+}
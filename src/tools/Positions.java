@@ -0,0 +1,180 @@
+/* Name: Positions
+ * Description: This class holds a corpus of game states reached in
+ * self-play games, to measure and compare the speed of the engine.
+ */
+
+package src.tools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import src.model.Game;
+import src.model.Move;
+
+/**
+ * The {@code Positions} class lists game states of three phases, in the
+ * format of {@link Game#getGameState()}. They were taken from games between
+ * two {@code AlphaBetaPlayer}s with a few thousand nodes per move, after 4
+ * random moves: an opening state from the ply 6 to 14 of each game, a
+ * middlegame state from the ply 20 with 11 to 18 pieces and an endgame state
+ * with 5 to 8 pieces. None of them is in the middle of a turn nor over.
+ * They are not from games between people, but the random start spreads
+ * them over openings the engine would not pick itself.
+ * <p>
+ * The benchmarks run on them so that their numbers mean the same from one
+ * version of the engine to the next. States reached by people can be
+ * sampled from recorded games instead, see {@link #sample(Path, int)}.
+ */
+public final class Positions {
+
+	/** The states of the openings, most pieces still on the board. */
+	public static final List<String> OPENING = List.of(
+			"666606660606000000006444004444441-1",
+			"666666606006000000044600440444440-1",
+			"666666660060660000044400464444440-1",
+			"666666060666006040404404004444440-1",
+			"666666660066460000044040440444441-1",
+			"666666666460000040044000404444441-1",
+			"666660666006066000404440440444441-1",
+			"666660606664446000400004444044441-1",
+			"666666006066000000444400000444441-1",
+			"666660666060006004004440400444441-1",
+			"666666606600006600004444404444440-1",
+			"666666066066000004000404440444441-1",
+			"666606666646000004004044040444441-1",
+			"666666066006006004004400440444440-1",
+			"666666606466000004044000440444441-1",
+			"666660066666000004004004440444440-1",
+			"666666646006060000004004444444441-1",
+			"666666666060000060464040444444440-1",
+			"666666066666400000404040444044441-1",
+			"666660660066060004004004044444440-1");
+
+	/** The states of the middlegames, with 11 to 18 pieces. */
+	public static final List<String> MIDDLEGAME = List.of(
+			"000006060666004640466044044000001-1",
+			"666600000060460600044004000040441-1",
+			"666600000604066000404400004040000-1",
+			"600606400040000060606000040040041-1",
+			"606600066066060000440404000444041-1",
+			"600600000406600000664000444440000-1",
+			"666660000004400400000007406004400-1",
+			"660660000060644000000460000444400-1",
+			"666606000604040006004000440040441-1",
+			"600600600006066000404000000404441-1",
+			"666600600006000000004046000044440-1",
+			"660600060600060600044040000044440-1",
+			"660600600066060000444400000040441-1",
+			"666000000604060046064040004044000-1",
+			"666060006004060000404460000044040-1",
+			"666640600000000000660004440444401-1",
+			"066660000640000000004000000044441-1",
+			"666600000606000604404000440004041-1",
+			"666660000600400440004460000440041-1",
+			"006650000006040406604000006044440-1",
+			"006606000066000004666000000444440-1",
+			"666660000600400604000004004004441-1",
+			"606006000466000004046004000044700-1",
+			"666000004600066000060404000044440-1");
+
+	/** The states of the endgames, with 5 to 8 pieces. */
+	public static final List<String> ENDGAME = List.of(
+			"550000060706000040060000000000071-1",
+			"606040404000070000060000000400001-1",
+			"005060006060000040600000004000000-1",
+			"000000050500060000006000000047000-1",
+			"000004006000000460000000006400001-1",
+			"500600000000060000600060000044041-1",
+			"000004050006000070060060000440001-1",
+			"600040060500600000000000006004071-1",
+			"600046440000000000000470000400001-1",
+			"000600006400060000600000000404040-1",
+			"000000040060000000445660000007000-1",
+			"000000060500060000040000040670400-1",
+			"006664000060040000000000070040001-1",
+			"600000000660060000004400000004041-1",
+			"060600004606007000004000000000040-1",
+			"000050000000007000060600000005000-1",
+			"606060007044600000000000000040000-1",
+			"600040000406000000000006407004001-1",
+			"000600400400074000000000000600041-1",
+			"600600000400040600600040000000041-1");
+
+	/** The number of states of the corpus. */
+	public static final int SIZE = OPENING.size() + MIDDLEGAME.size()
+			+ ENDGAME.size();
+
+	private Positions() {
+	}
+
+	/**
+	 * Gets all the states of the corpus, the opening ones first.
+	 *
+	 * @return the states, new games which the caller may change.
+	 */
+	public static List<Game> all() {
+		List<Game> games = new ArrayList<>();
+		for (List<String> phase : List.of(OPENING, MIDDLEGAME, ENDGAME)) {
+			for (String state : phase) {
+				games.add(new Game(state));
+			}
+		}
+		return games;
+	}
+
+	/**
+	 * Samples game states from recorded games. The games are read as by
+	 * {@code BuildBook --games}, one per line in the standard notation, the
+	 * lines starting with {@code #} and the games with a move that is not
+	 * legal being skipped. The states at the start of each turn are kept,
+	 * but for the start state, those seen before and those of a game over,
+	 * then {@code count} of them are taken at regular intervals: the same
+	 * file always gives the same states, from all the phases of the games.
+	 *
+	 * @param file	the recorded games.
+	 * @param count	the number of states to take, all of them if there are
+	 * fewer.
+	 * @return the states, in the order of the file, new games which the
+	 * caller may change.
+	 * @throws IOException if the file can't be read.
+	 */
+	public static List<Game> sample(Path file, int count) throws IOException {
+		Set<String> states = new LinkedHashSet<>();
+		int number = 0;
+		for (String line : Files.readAllLines(file)) {
+			number ++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			List<Move> moves;
+			try {
+				moves = BuildBook.parse(new Game(), line, Integer.MAX_VALUE);
+			} catch (IllegalArgumentException e) {
+				System.err.printf("%s:%d: %s%n", file, number, e.getMessage());
+				continue;
+			}
+			Game game = new Game();
+			for (Move move : moves) {
+				game.move(move);
+				if (game.getSkipIndex() < 0 && !game.isGameOver()) {
+					states.add(game.getGameState());
+				}
+			}
+		}
+
+		List<String> found = new ArrayList<>(states);
+		List<Game> games = new ArrayList<>();
+		int taken = Math.min(count, found.size());
+		for (int i = 0; i < taken; i ++) {
+			games.add(new Game(found.get((int) ((long) i * found.size()
+					/ taken))));
+		}
+		return games;
+	}
+}
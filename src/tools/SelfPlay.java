@@ -0,0 +1,152 @@
+/* Name: SelfPlay
+ * Description: This class is a command line tool playing games between
+ * search players and writing their positions as training records.
+ */
+
+package src.tools;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import src.logic.Bitboard;
+import src.model.AlphaBetaPlayer;
+import src.model.Analysis;
+import src.model.Game;
+import src.model.Move;
+import src.model.TrainingData;
+
+/**
+ * The {@code SelfPlay} class generates labelled positions for tuning and
+ * training: threads play games between two {@link AlphaBetaPlayer}s with a
+ * node budget per move, after a few random moves so that the games differ,
+ * and every position reached at the start of a turn becomes a record of
+ * {@link TrainingData} with the score of the search and the result of the
+ * game. The records go to rolling files of a directory.
+ * <p>
+ * Usage: {@code java src.tools.SelfPlay [directory] [games] [threads]
+ * [nodes] [random] [records]}, by default {@code selfplay}, 100 games, a
+ * thread per processor, 5000 nodes per move, 6 random moves and 1000000
+ * records per file.
+ */
+public class SelfPlay {
+
+	/** The games still going after this number of moves are draws. */
+	private static final int MAX_PLIES = 300;
+
+	public static void main(String[] args) throws Exception {
+
+		Path directory = Paths.get(args.length > 0? args[0] : "selfplay");
+		int games = args.length > 1? Integer.parseInt(args[1]) : 100;
+		int threads = args.length > 2? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		long nodes = args.length > 3? Long.parseLong(args[3]) : 5000;
+		int random = args.length > 4? Integer.parseInt(args[4]) : 6;
+		long perFile = args.length > 5? Long.parseLong(args[5]) : 1_000_000;
+
+		long start = System.nanoTime();
+		AtomicInteger left = new AtomicInteger(games);
+		AtomicInteger[] results = {new AtomicInteger(), new AtomicInteger(),
+				new AtomicInteger()};
+		try (TrainingData.Writer writer = new TrainingData.Writer(directory,
+				"selfplay", perFile)) {
+			Thread[] workers = new Thread[threads];
+			for (int i = 0; i < threads; i ++) {
+				long seed = start + i;
+				workers[i] = new Thread(() -> {
+					Random r = new Random(seed);
+					AlphaBetaPlayer black = newPlayer(true);
+					AlphaBetaPlayer white = newPlayer(false);
+					while (left.getAndDecrement() > 0) {
+						int result = play(black, white, nodes, random, r,
+								writer);
+						results[result + 1].incrementAndGet();
+					}
+				}, "self-play-" + i);
+				workers[i].start();
+			}
+
+			// Report now and then until the games are over
+			for (Thread worker : workers) {
+				while (worker.isAlive()) {
+					worker.join(10_000);
+					report(writer.getWritten(), results[0].get()
+							+ results[1].get() + results[2].get(), threads,
+							start);
+				}
+			}
+			report(writer.getWritten(), games, threads, start);
+		}
+		System.out.printf("black won %d, drew %d, lost %d%n",
+				results[2].get(), results[1].get(), results[0].get());
+	}
+
+	private static AlphaBetaPlayer newPlayer(boolean black) {
+		AlphaBetaPlayer player = new AlphaBetaPlayer(black);
+		player.setOpeningBook(null);
+		return player;
+	}
+
+	/**
+	 * Plays a game and writes its records.
+	 *
+	 * @return the result for black: 1, 0 or -1.
+	 */
+	private static int play(AlphaBetaPlayer black, AlphaBetaPlayer white,
+			long nodes, int random, Random r, TrainingData.Writer writer) {
+		Game game = new Game();
+		int[] moves = new int[Bitboard.MAX_MOVES];
+		int ply = 0;
+		for (; ply < random && !game.isGameOver(); ply ++) {
+			int count = Bitboard.of(game).getMoves(moves);
+			int move = moves[r.nextInt(count)];
+			game.move(Bitboard.getStart(move), Bitboard.getEnd(move));
+		}
+
+		List<Bitboard> states = new ArrayList<>();
+		List<int[]> labels = new ArrayList<>();
+		for (; ply < MAX_PLIES && !game.isGameOver(); ply ++) {
+			AlphaBetaPlayer player = game.isP2Turn()? black : white;
+			Analysis analysis = player.analyse(game, Integer.MAX_VALUE, 1,
+					nodes);
+			Move move = analysis.getBestMove();
+			if (game.getSkipIndex() < 0) {
+				states.add(Bitboard.of(game));
+				labels.add(new int[] {analysis.getLines().get(0).getScore(),
+						ply});
+			}
+			game.move(move);
+		}
+
+		// The player who can't move lost
+		int result = 0;
+		if (game.isGameOver() && !game.isDraw()) {
+			result = game.isP2Turn()? -1 : 1;
+		}
+		try {
+			for (int i = 0; i < states.size(); i ++) {
+				Bitboard state = states.get(i);
+				writer.add(state, labels.get(i)[0],
+						state.isP2Turn()? result : -result, labels.get(i)[1]);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return result;
+	}
+
+	private static void report(long positions, int games, int threads,
+			long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		int cores = Math.min(threads,
+				Runtime.getRuntime().availableProcessors());
+		System.out.printf("%d games, %d positions in %.1f s: %.0f positions"
+				+ " per second, %.0f per core%n", games, positions, seconds,
+				positions / seconds, positions / seconds / cores);
+	}
+}
@@ -0,0 +1,41 @@
+/* Name: Solve
+ * Description: This class is a command line tool proving the value of a game
+ * state with the proof-number solver.
+ */
+
+package src.tools;
+
+import src.model.Deadline;
+import src.model.Game;
+import src.model.Proof;
+import src.model.ProofSolver;
+
+/**
+ * The {@code Solve} class proves whether the player to move in a game state
+ * wins, loses or draws with a {@link ProofSolver}, and prints the proof line.
+ * <p>
+ * Usage: {@code java src.tools.Solve [state] [seconds] [threads] [nodes]}
+ * where the state is in the format of {@link Game#getGameState()} (the start
+ * position by default), with 60 seconds, a thread per processor and no node
+ * limit by default. The endgames of {@code -Dcheckers.tablebase} are used as
+ * known leaves.
+ */
+public class Solve {
+
+	public static void main(String[] args) {
+
+		Game game = args.length > 0? new Game(args[0]) : new Game();
+		long seconds = args.length > 1? Long.parseLong(args[1]) : 60;
+		int threads = args.length > 2? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		long nodes = args.length > 3? Long.parseLong(args[3]) : 0;
+
+		ProofSolver solver = new ProofSolver(threads, 256);
+		Proof proof = solver.solve(game, nodes,
+				Deadline.in(seconds * 1000));
+		System.out.println(proof);
+		System.out.printf("%d threads, %.0f nodes per second%n", threads,
+				proof.getNodes() * 1000.0
+				/ Math.max(1, proof.getElapsedMillis()));
+	}
+}
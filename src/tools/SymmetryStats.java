@@ -0,0 +1,152 @@
+/* Name: SymmetryStats
+ * Description: This class is a command line tool measuring what canonical
+ * keys gain in the transposition table and the evaluation cache.
+ */
+
+package src.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import src.logic.MoveLogic;
+import src.model.AlphaBetaPlayer;
+import src.model.Analysis;
+import src.model.Game;
+import src.model.Move;
+
+/**
+ * The {@code SymmetryStats} class plays a few games of the computer against
+ * itself, then searches every position of these games again with canonical
+ * keys (see {@link Game#getCanonicalKey()}) and prints the hit rates of the
+ * transposition table and the evaluation cache with and without them.
+ * <p>
+ * Each game starts with a few random moves so that the games differ. Both
+ * runs use one player per colour that is kept for the whole game, as in a
+ * real game, and search each position to the same depth, so the node counts
+ * compare too.
+ * <p>
+ * Usage: {@code java src.tools.SymmetryStats [games] [depth] [plies]}.
+ */
+public class SymmetryStats {
+
+	/** The number of random moves starting each game. */
+	private static final int RANDOM_PLIES = 4;
+
+	public static void main(String[] args) {
+
+		int games = args.length > 0? Integer.parseInt(args[0]) : 8;
+		int depth = args.length > 1? Integer.parseInt(args[1]) : 7;
+		int plies = args.length > 2? Integer.parseInt(args[2]) : 40;
+
+		// Play the games with plain keys, then replay them with canonical keys
+		Random random = new Random(0);
+		Stats plain = new Stats(), canonical = new Stats();
+		for (int i = 0; i < games; i ++) {
+			List<Move> moves = new ArrayList<>();
+			play(random, depth, plies, moves, plain);
+			replay(depth, moves, canonical);
+		}
+
+		System.out.printf("%d games, %d positions searched to depth %d%n",
+				games, plain.positions, depth);
+		plain.print("plain keys");
+		canonical.print("canonical keys");
+		System.out.printf("table hits: %.2fx, cache hits: %.2fx, nodes: %.2fx%n",
+				(double) canonical.tableHits / Math.max(1, plain.tableHits),
+				(double) canonical.cacheHits / Math.max(1, plain.cacheHits),
+				(double) canonical.nodes / Math.max(1, plain.nodes));
+	}
+
+	/**
+	 * Plays a game and records its moves.
+	 */
+	private static void play(Random random, int depth, int plies,
+			List<Move> moves, Stats stats) {
+		AlphaBetaPlayer[] players = createPlayers(false);
+		Game game = new Game();
+		while (!game.isGameOver() && moves.size() < plies) {
+			Move move;
+			if (moves.size() < RANDOM_PLIES) {
+				List<Move> legal = getLegalMoves(game);
+				move = legal.get(random.nextInt(legal.size()));
+			} else {
+				move = search(players, game, depth, stats);
+			}
+			moves.add(move);
+			game.move(move);
+		}
+		stats.add(players);
+	}
+
+	/**
+	 * Searches the positions of a recorded game again.
+	 */
+	private static void replay(int depth, List<Move> moves, Stats stats) {
+		AlphaBetaPlayer[] players = createPlayers(true);
+		Game game = new Game();
+		for (int i = 0; i < moves.size(); i ++) {
+			if (i >= RANDOM_PLIES) {
+				search(players, game, depth, stats);
+			}
+			game.move(moves.get(i));
+		}
+		stats.add(players);
+	}
+
+	private static List<Move> getLegalMoves(Game game) {
+		List<Move> moves = new ArrayList<>();
+		for (int start = 0; start < 32; start ++) {
+			for (int end = 0; end < 32; end ++) {
+				if (MoveLogic.isValidMove(game, start, end)) {
+					moves.add(new Move(start, end, 0));
+				}
+			}
+		}
+		return moves;
+	}
+
+	private static AlphaBetaPlayer[] createPlayers(boolean canonical) {
+		AlphaBetaPlayer[] players = {
+				new AlphaBetaPlayer(false), new AlphaBetaPlayer(true)};
+		for (AlphaBetaPlayer player : players) {
+			player.setCanonicalKeys(canonical);
+		}
+		return players;
+	}
+
+	private static Move search(AlphaBetaPlayer[] players, Game game, int depth,
+			Stats stats) {
+		Analysis analysis = players[game.isP2Turn()? 1 : 0]
+				.analyse(game, depth, 1);
+		stats.positions ++;
+		stats.nodes += analysis.getNodes();
+		return analysis.getBestMove();
+	}
+
+	/**
+	 * The totals of one run.
+	 */
+	private static class Stats {
+
+		private long positions, nodes;
+		private long tableProbes, tableHits, cacheProbes, cacheHits;
+
+		private void add(AlphaBetaPlayer[] players) {
+			for (AlphaBetaPlayer player : players) {
+				tableProbes += player.getTranspositionTable().getProbes();
+				tableHits += player.getTranspositionTable().getHits();
+				cacheProbes += player.getEvalCache().getProbes();
+				cacheHits += player.getEvalCache().getHits();
+			}
+		}
+
+		private void print(String name) {
+			System.out.printf("%-15s table %5.1f%% of %d probes, "
+					+ "cache %5.1f%% of %d probes, %d nodes%n", name,
+					100.0 * tableHits / Math.max(1, tableProbes), tableProbes,
+					100.0 * cacheHits / Math.max(1, cacheProbes), cacheProbes,
+					nodes);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+/* Name: TrainNetwork
+ * Description: This class is a command line tool training a network to
+ * evaluate the game states and writing it to a file.
+ */
+
+package src.tools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import src.logic.Bitboard;
+import src.model.Board;
+import src.model.Game;
+import src.model.Network;
+
+/**
+ * The {@code TrainNetwork} class trains a {@link Network} to give the scores
+ * of {@link Game#goodHeuristic(boolean)}, so that a search with the network
+ * plays about as well as with the handcrafted evaluation, and writes it to a
+ * file for {@code -Dcheckers.network}. It is a starting point to train the
+ * network further on the results of games.
+ * <p>
+ * The states come from games whose moves are picked by a one-ply search with
+ * some randomness. The network is trained in floating point by stochastic
+ * gradient descent on the squared error, then rounded to its integers.
+ * <p>
+ * Usage: {@code java src.tools.TrainNetwork [file] [states] [epochs]
+ * [hidden] [dense]}, by default {@code network.nn}, 200000 states, 8 epochs,
+ * 64 and 16 neurons.
+ */
+public class TrainNetwork {
+
+	/** The targets are divided by this while training. */
+	private static final float TARGET_SCALE = 100;
+
+	/**
+	 * The targets are clipped to this: past it the game is decided, and the
+	 * few huge scores would take most of the training.
+	 */
+	private static final int MAX_TARGET = 1000;
+
+	/** The learning rate at the first epoch. */
+	private static final float LEARNING_RATE = 0.005f;
+
+	private final int hidden, dense;
+
+	private final float[] w1, b1, w2, b2, w3;
+
+	private float b3;
+
+	/** The activations and gradients of the current state. */
+	private final float[] us, them, z2, h2, gUs, gThem, gZ2;
+
+	public static void main(String[] args) throws IOException {
+
+		Path file = Paths.get(args.length > 0? args[0] : "network.nn");
+		int states = args.length > 1? Integer.parseInt(args[1]) : 200_000;
+		int epochs = args.length > 2? Integer.parseInt(args[2]) : 8;
+		int hidden = args.length > 3? Integer.parseInt(args[3]) : 64;
+		int dense = args.length > 4? Integer.parseInt(args[4]) : 16;
+
+		Random random = new Random(1);
+		long start = System.nanoTime();
+		List<Game> games = new ArrayList<>();
+		List<Integer> targets = new ArrayList<>();
+		collect(states, random, games, targets);
+		System.out.printf("%d states in %d ms%n", games.size(),
+				(System.nanoTime() - start) / 1_000_000);
+
+		// The inputs of each state for each player, ended by -1
+		int[][] inputs = new int[games.size()][];
+		for (int i = 0; i < inputs.length; i ++) {
+			inputs[i] = getInputs(games.get(i));
+		}
+		int test = inputs.length / 10;
+
+		TrainNetwork trainer = new TrainNetwork(hidden, dense, random);
+		int[] order = new int[inputs.length - test];
+		for (int i = 0; i < order.length; i ++) {
+			order[i] = test + i;
+		}
+		for (int epoch = 1; epoch <= epochs; epoch ++) {
+			shuffle(order, random);
+			float rate = LEARNING_RATE / (1 + 0.5f * (epoch - 1));
+			double loss = 0;
+			for (int i : order) {
+				loss += trainer.train(inputs[i],
+						targets.get(i) / TARGET_SCALE, rate);
+			}
+			System.out.printf("epoch %d: training error %.1f, test error"
+					+ " %.1f%n", epoch, TARGET_SCALE * Math.sqrt(2 * loss
+					/ order.length), trainer.getError(inputs, targets, test));
+		}
+
+		Network network = trainer.toNetwork();
+		double error = 0;
+		for (int i = 0; i < test; i ++) {
+			Game game = games.get(i);
+			double e = network.evaluate(game, game.isP2Turn())
+					- targets.get(i);
+			error += e * e;
+		}
+		System.out.printf("rounded network: test error %.1f%n",
+				Math.sqrt(error / Math.max(1, test)));
+		network.write(file);
+		System.out.printf("%s written, %d ms in all%n", file,
+				(System.nanoTime() - start) / 1_000_000);
+	}
+
+	/**
+	 * Plays games picking the moves by a one-ply search, with a random move
+	 * now and then, and keeps their states with the handcrafted score for
+	 * the player to move.
+	 */
+	private static void collect(int count, Random random, List<Game> games,
+			List<Integer> targets) {
+		int[] moves = new int[Bitboard.MAX_MOVES];
+		while (games.size() < count) {
+			Game game = new Game();
+			for (int ply = 0; ply < 200 && !game.isGameOver(); ply ++) {
+				Bitboard state = Bitboard.of(game);
+				int n = state.getMoves(moves);
+				int move = moves[random.nextInt(n)];
+				if (random.nextInt(4) != 0) {
+					int best = Integer.MIN_VALUE;
+					for (int i = 0; i < n; i ++) {
+						Game copy = game.copy();
+						copy.move(Bitboard.getStart(moves[i]),
+								Bitboard.getEnd(moves[i]));
+						int score = copy.goodHeuristic(game.isP2Turn())
+								+ random.nextInt(20);
+						if (score > best) {
+							best = score;
+							move = moves[i];
+						}
+					}
+				}
+				game.move(Bitboard.getStart(move), Bitboard.getEnd(move));
+				if (game.getSkipIndex() < 0 && !game.isGameOver()) {
+					games.add(game.copy());
+					targets.add(Math.max(-MAX_TARGET, Math.min(MAX_TARGET,
+							game.goodHeuristic(game.isP2Turn()))));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lists the inputs of the player to move, -1, then those of the other.
+	 */
+	private static int[] getInputs(Game game) {
+		Board board = game.getBoard();
+		boolean black = game.isP2Turn();
+		List<Integer> list = new ArrayList<>();
+		for (boolean side : new boolean[] {black, !black}) {
+			for (int i = 0; i < 32; i ++) {
+				int input = Network.getInput(side, board.get(i), i);
+				if (input >= 0) {
+					list.add(input);
+				}
+			}
+			list.add(-1);
+		}
+		int[] inputs = new int[list.size()];
+		for (int i = 0; i < inputs.length; i ++) {
+			inputs[i] = list.get(i);
+		}
+		return inputs;
+	}
+
+	private static void shuffle(int[] values, Random random) {
+		for (int i = values.length - 1; i > 0; i --) {
+			int j = random.nextInt(i + 1), v = values[i];
+			values[i] = values[j];
+			values[j] = v;
+		}
+	}
+
+	private TrainNetwork(int hidden, int dense, Random random) {
+		this.hidden = hidden;
+		this.dense = dense;
+		this.w1 = new float[Network.INPUTS * hidden];
+		this.b1 = new float[hidden];
+		this.w2 = new float[2 * hidden * dense];
+		this.b2 = new float[dense];
+		this.w3 = new float[dense];
+		for (int i = 0; i < w1.length; i ++) {
+			w1[i] = (float) (random.nextGaussian() * 0.1);
+		}
+		for (int i = 0; i < hidden; i ++) {
+			b1[i] = 0.5f;
+		}
+		for (int i = 0; i < w2.length; i ++) {
+			w2[i] = (float) (random.nextGaussian() / Math.sqrt(2 * hidden));
+		}
+		for (int i = 0; i < dense; i ++) {
+			b2[i] = 0.5f;
+			w3[i] = (float) (random.nextGaussian() * 0.5);
+		}
+		this.us = new float[hidden];
+		this.them = new float[hidden];
+		this.z2 = new float[dense];
+		this.h2 = new float[dense];
+		this.gUs = new float[hidden];
+		this.gThem = new float[hidden];
+		this.gZ2 = new float[dense];
+	}
+
+	/**
+	 * Computes the output of the network in floating point for a state.
+	 */
+	private float forward(int[] inputs) {
+		System.arraycopy(b1, 0, us, 0, hidden);
+		System.arraycopy(b1, 0, them, 0, hidden);
+		float[] sums = us;
+		for (int input : inputs) {
+			if (input < 0) {
+				sums = them;
+				continue;
+			}
+			for (int h = 0, w = input * hidden; h < hidden; h ++, w ++) {
+				sums[h] += w1[w];
+			}
+		}
+		float out = b3;
+		for (int j = 0, row = 0; j < dense; j ++, row += 2 * hidden) {
+			float z = b2[j];
+			for (int i = 0; i < hidden; i ++) {
+				z += w2[row + i] * clip(us[i])
+						+ w2[row + hidden + i] * clip(them[i]);
+			}
+			z2[j] = z;
+			h2[j] = clip(z);
+			out += w3[j] * h2[j];
+		}
+		return out;
+	}
+
+	/**
+	 * Makes a step of gradient descent on the squared error of a state.
+	 *
+	 * @return half the squared error before the step.
+	 */
+	private double train(int[] inputs, float target, float rate) {
+		float out = forward(inputs);
+		float g = out - target;
+
+		// Back through the output and the dense layer
+		Arrays.fill(gUs, 0);
+		Arrays.fill(gThem, 0);
+		for (int j = 0, row = 0; j < dense; j ++, row += 2 * hidden) {
+			gZ2[j] = (z2[j] > 0 && z2[j] < 1)? g * w3[j] : 0;
+			w3[j] = limit(w3[j] - rate * g * h2[j], 20);
+			if (gZ2[j] == 0) {
+				continue;
+			}
+			for (int i = 0; i < hidden; i ++) {
+				gUs[i] += gZ2[j] * w2[row + i];
+				gThem[i] += gZ2[j] * w2[row + hidden + i];
+				w2[row + i] = limit(w2[row + i]
+						- rate * gZ2[j] * clip(us[i]), 1.98f);
+				w2[row + hidden + i] = limit(w2[row + hidden + i]
+						- rate * gZ2[j] * clip(them[i]), 1.98f);
+			}
+			b2[j] -= rate * gZ2[j];
+		}
+		b3 -= rate * g;
+
+		// Then through the first layer
+		for (int h = 0; h < hidden; h ++) {
+			gUs[h] = (us[h] > 0 && us[h] < 1)? gUs[h] : 0;
+			gThem[h] = (them[h] > 0 && them[h] < 1)? gThem[h] : 0;
+			b1[h] -= rate * (gUs[h] + gThem[h]);
+		}
+		float[] grads = gUs;
+		for (int input : inputs) {
+			if (input < 0) {
+				grads = gThem;
+				continue;
+			}
+			for (int h = 0, w = input * hidden; h < hidden; h ++, w ++) {
+				w1[w] -= rate * grads[h];
+			}
+		}
+		return 0.5 * g * g;
+	}
+
+	/**
+	 * @return the root mean squared error on the first states, in the units
+	 * of the evaluation.
+	 */
+	private double getError(int[][] inputs, List<Integer> targets, int count) {
+		double error = 0;
+		for (int i = 0; i < count; i ++) {
+			double e = forward(inputs[i]) * TARGET_SCALE - targets.get(i);
+			error += e * e;
+		}
+		return Math.sqrt(error / Math.max(1, count));
+	}
+
+	private Network toNetwork() {
+		float[] w3Scaled = new float[dense];
+		for (int j = 0; j < dense; j ++) {
+			w3Scaled[j] = w3[j] * TARGET_SCALE;
+		}
+		return Network.quantize(hidden, dense, w1, b1, w2, b2, w3Scaled,
+				b3 * TARGET_SCALE);
+	}
+
+	private static float clip(float value) {
+		return Math.max(0, Math.min(1, value));
+	}
+
+	private static float limit(float value, float max) {
+		return Math.max(-max, Math.min(max, value));
+	}
+}
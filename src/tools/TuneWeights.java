@@ -0,0 +1,406 @@
+/* Name: TuneWeights
+ * Description: This class is a command line tool tuning the weights of the
+ * handcrafted evaluation on the results of self-play games.
+ */
+
+package src.tools;
+
+import java.awt.Point;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import src.logic.Bitboard;
+import src.model.Board;
+import src.model.EvalParams;
+import src.model.Game;
+import src.model.TrainingData;
+
+/**
+ * The {@code TuneWeights} class tunes the weights of
+ * {@link Game#goodHeuristic(boolean, EvalParams)} in the way of Texel: the
+ * score of a position is turned into an expected result by a sigmoid, and
+ * the weights are those which make the mean squared error to the results of
+ * the games the smallest.
+ * <p>
+ * The positions are the records of {@link SelfPlay}, without those where the
+ * player to move has a skip. When they are loaded, each one is reduced to the
+ * coefficient of each weight in its score, so that the score for any weights
+ * is a short sum and a position takes 14 bytes in a few primitive arrays:
+ * tens of millions of positions fit in memory. Only the material is not
+ * linear in its weights: it is computed from the number of pieces.
+ * <p>
+ * The scaling of the sigmoid is fitted first, then the weights are searched
+ * one at a time by steps of 1, for as long as a step lowers the error. The
+ * error of each trial is computed by all the processors, each on a share of
+ * the positions. The weights are written after each pass, in the format of
+ * {@link EvalParams}, to be given to the game with
+ * {@code -Dcheckers.weights=path}.
+ * <p>
+ * Usage: {@code java src.tools.TuneWeights [directory] [file] [passes]}, by
+ * default {@code selfplay}, {@code weights.properties} and 100 passes. The
+ * tuning starts from the weights of {@code -Dcheckers.weights} if set.
+ */
+public class TuneWeights {
+
+	/** The weights whose coefficients are kept in a byte per position. */
+	private static final int FIRST_TERM = 2, TERMS = 9;
+
+	/** The weight whose coefficient is kept in a short per position. */
+	private static final int DIST = 11;
+
+	/** The number of positions of a share of the error computation. */
+	private static final int CHUNK = 1 << 16;
+
+	/** The tiles of the checkers, for the terms of goodHeuristic. */
+	private static final int MIDDLE_CENTER = tiles(13, 14, 17, 18),
+			MIDDLE_SIDE = tiles(12, 15, 16, 19),
+			BLACK_SIDE_GOALIES = tiles(0, 3), BLACK_CENTER_GOALIES = tiles(1, 2),
+			BLACK_DOUBLE_CORNER = tiles(0, 4), WHITE_SIDE_GOALIES = tiles(28, 31),
+			WHITE_CENTER_GOALIES = tiles(29, 30),
+			WHITE_DOUBLE_CORNER = tiles(27, 31);
+
+	/** The coefficients of weights 2 to 10 for each position. */
+	private final byte[] terms;
+
+	/** The coefficient of dist_factor for each position. */
+	private final short[] dists;
+
+	/**
+	 * The checkers and kings of the player to move and of the other, 4 bits
+	 * each, for each position.
+	 */
+	private final short[] materials;
+
+	/** The result for the player to move, 0, 1 or 2 for a win. */
+	private final byte[] results;
+
+	/** The number of positions. */
+	private int count;
+
+	public static void main(String[] args) throws IOException {
+
+		Path directory = Paths.get(args.length > 0? args[0] : "selfplay");
+		Path file = Paths.get(args.length > 1? args[1]
+				: "weights.properties");
+		int passes = args.length > 2? Integer.parseInt(args[2]) : 100;
+
+		long start = System.nanoTime();
+		List<Path> files = TrainingData.list(directory);
+		long records = 0;
+		for (Path f : files) {
+			records += TrainingData.open(f).size();
+		}
+		if (records == 0 || records > Integer.MAX_VALUE / TERMS) {
+			System.err.println(directory + ": " + records + " records");
+			System.exit(1);
+		}
+		TuneWeights tuner = new TuneWeights((int) records);
+		for (Path f : files) {
+			tuner.load(TrainingData.open(f));
+		}
+		System.out.printf("%d positions of %d records loaded in %d ms, %d MB%n",
+				tuner.count, records, (System.nanoTime() - start) / 1_000_000,
+				tuner.getBytes() >> 20);
+
+		int[] weights = EvalParams.getDefault().toArray();
+		double k = tuner.fitScale(weights);
+		double error = tuner.getError(weights, k);
+		System.out.printf("scale %.5f, error %.6f%n", k, error);
+
+		for (int pass = 1; pass <= passes; pass ++) {
+			boolean improved = false;
+			for (int w = 0; w < EvalParams.COUNT; w ++) {
+				for (int step : new int[] {1, -1}) {
+					boolean moved = false;
+					while (true) {
+						int[] trial = weights.clone();
+						trial[w] += step;
+						double e = tuner.getError(trial, k);
+						if (e >= error) {
+							break;
+						}
+						weights = trial;
+						error = e;
+						moved = true;
+					}
+					if (moved) {
+						improved = true;
+						break;
+					}
+				}
+			}
+			System.out.printf("pass %d: error %.6f, %s, %d ms%n", pass, error,
+					Arrays.toString(weights),
+					(System.nanoTime() - start) / 1_000_000);
+			EvalParams.of(weights).write(file, String.format("Tuned on %d"
+					+ " positions, error %.6f", tuner.count, error));
+			if (!improved) {
+				break;
+			}
+		}
+		System.out.printf("%s written%n", file);
+	}
+
+	private TuneWeights(int capacity) {
+		this.terms = new byte[capacity * TERMS];
+		this.dists = new short[capacity];
+		this.materials = new short[capacity];
+		this.results = new byte[capacity];
+	}
+
+	private long getBytes() {
+		return (long) terms.length + 2L * dists.length + 2L * materials.length
+				+ results.length;
+	}
+
+	/**
+	 * Adds the quiet positions of a file, reduced by all the processors at
+	 * once.
+	 */
+	private void load(TrainingData data) {
+		int base = count, size = data.size();
+		boolean[] quiet = new boolean[size];
+		IntStream.range(0, size).parallel().forEach(r ->
+				quiet[r] = reduce(data, r, base + r));
+
+		// Close the gaps left by the positions with a skip
+		for (int r = 0; r < size; r ++) {
+			if (quiet[r]) {
+				move(base + r, count ++);
+			}
+		}
+	}
+
+	private void move(int from, int to) {
+		if (from != to) {
+			System.arraycopy(terms, from * TERMS, terms, to * TERMS, TERMS);
+			dists[to] = dists[from];
+			materials[to] = materials[from];
+			results[to] = results[from];
+		}
+	}
+
+	/**
+	 * Computes the coefficients of a record as goodHeuristic would, first
+	 * for black, then for the player to move.
+	 *
+	 * @return false if the player to move has a skip.
+	 */
+	private boolean reduce(TrainingData data, int record, int position) {
+		int bc = data.getBlackCheckers(record), bk = data.getBlackKings(record);
+		int wc = data.getWhiteCheckers(record), wk = data.getWhiteKings(record);
+		boolean black = data.isP2Turn(record);
+		int blackPieces = bc | bk, whitePieces = wc | wk;
+		int empty = ~(blackPieces | whitePieces);
+
+		int[] blackMobility = mobility(bc, bk, whitePieces, empty, true);
+		int[] whiteMobility = mobility(wc, wk, blackPieces, empty, false);
+		if ((black? blackMobility : whiteMobility)[1] > 0) {
+			return false;
+		}
+
+		// The terms of the checkers, for black
+		int[] c = new int[EvalParams.COUNT];
+		c[2] = (blackMobility[1] == 0? blackMobility[0] : 0)
+				- (whiteMobility[1] == 0? whiteMobility[0] : 0);
+		c[3] = blackMobility[1] - whiteMobility[1];
+		c[4] = rowSum(bc) - (7 * Integer.bitCount(wc) - rowSum(wc));
+		c[5] = count(bc, MIDDLE_CENTER) - count(wc, MIDDLE_CENTER);
+		c[6] = count(bc, MIDDLE_SIDE) - count(wc, MIDDLE_SIDE);
+		c[7] = count(bc, BLACK_CENTER_GOALIES)
+				- count(wc, WHITE_CENTER_GOALIES);
+		c[8] = count(bc, BLACK_SIDE_GOALIES) - count(wc, WHITE_SIDE_GOALIES);
+		c[9] = count(bc, BLACK_DOUBLE_CORNER) - count(wc, WHITE_DOUBLE_CORNER);
+
+		// Home free: the checkers at or past the farthest opponent's row
+		int minBlackRow = blackPieces == 0? 8
+				: Integer.numberOfTrailingZeros(blackPieces) / 4;
+		int maxWhiteRow = whitePieces == 0? -1
+				: (31 - Integer.numberOfLeadingZeros(whitePieces)) / 4;
+		for (int i = 0; i < 32; i ++) {
+			if ((bc >>> i & 1) != 0 && i / 4 >= maxWhiteRow) {
+				c[10] ++;
+			}
+			if ((wc >>> i & 1) != 0 && i / 4 <= minBlackRow) {
+				c[10] --;
+			}
+		}
+
+		// The side with more kings chases the other's checkers
+		int outnumber = Integer.bitCount(bk) - Integer.bitCount(wk);
+		boolean end = outnumber > 0? Integer.bitCount(wc) < 5
+				: Integer.bitCount(bc) < 5;
+		if (outnumber != 0 && end) {
+			int dist = outnumber > 0? distance(wc, bk) : distance(bc, wk);
+			c[DIST] = outnumber > 0? -dist : dist;
+		}
+
+		int sign = black? 1 : -1, offset = position * TERMS;
+		for (int t = 0; t < TERMS; t ++) {
+			terms[offset + t] = (byte) (sign * c[FIRST_TERM + t]);
+		}
+		dists[position] = (short) (sign * c[DIST]);
+		int own = black? Integer.bitCount(bc) | Integer.bitCount(bk) << 4
+				: Integer.bitCount(wc) | Integer.bitCount(wk) << 4;
+		int other = black? Integer.bitCount(wc) | Integer.bitCount(wk) << 4
+				: Integer.bitCount(bc) | Integer.bitCount(bk) << 4;
+		materials[position] = (short) (own | other << 8);
+		results[position] = (byte) (data.getResult(record) + 1);
+		return true;
+	}
+
+	/**
+	 * Counts the simple moves and the skips of a player's pieces, as
+	 * {@code Move.getMovesStats}.
+	 *
+	 * @return the moves, then the skips.
+	 */
+	private static int[] mobility(int checkers, int kings, int opponent,
+			int empty, boolean black) {
+		int moves = 0, skips = 0;
+		for (int i = 0; i < 32; i ++) {
+			boolean king = (kings >>> i & 1) != 0;
+			if (!king && (checkers >>> i & 1) == 0) {
+				continue;
+			}
+			for (int d = 0; d < 4; d ++) {
+				if (!king && (d < 2) != black) {
+					continue;
+				}
+				int step = Bitboard.getStep(i, d);
+				if (step < 0) {
+					continue;
+				}
+				if ((empty >>> step & 1) != 0) {
+					moves ++;
+				} else if ((opponent >>> step & 1) != 0) {
+					int jump = Bitboard.getStep(step, d);
+					if (jump >= 0 && (empty >>> jump & 1) != 0) {
+						skips ++;
+					}
+				}
+			}
+		}
+		return new int[] {moves, skips};
+	}
+
+	/**
+	 * Sums the distances from each checker to each king, in the order and the
+	 * precision of goodHeuristic.
+	 */
+	private static int distance(int checkers, int kings) {
+		float dist = 0;
+		for (int i = 0; i < 32; i ++) {
+			if ((checkers >>> i & 1) == 0) {
+				continue;
+			}
+			Point checker = Board.toPoint(i);
+			for (int j = 0; j < 32; j ++) {
+				if ((kings >>> j & 1) != 0) {
+					dist += checker.distance(Board.toPoint(j));
+				}
+			}
+		}
+		return (int) dist;
+	}
+
+	/**
+	 * Sums the rows of the pieces, row {@code y} holding the tiles {@code 4y}
+	 * to {@code 4y + 3}.
+	 */
+	private static int rowSum(int pieces) {
+		int sum = 0;
+		for (int y = 1; y < 8; y ++) {
+			sum += y * Integer.bitCount(pieces & 0xF << 4 * y);
+		}
+		return sum;
+	}
+
+	private static int count(int pieces, int tiles) {
+		return Integer.bitCount(pieces & tiles);
+	}
+
+	private static int tiles(int... indices) {
+		int tiles = 0;
+		for (int i : indices) {
+			tiles |= 1 << i;
+		}
+		return tiles;
+	}
+
+	/**
+	 * Computes the score of a position for the player to move, the same as
+	 * goodHeuristic with these weights.
+	 */
+	private int evaluate(int position, int[] weights) {
+		int offset = position * TERMS, score = 0;
+		for (int t = 0; t < TERMS; t ++) {
+			score += terms[offset + t] * weights[FIRST_TERM + t];
+		}
+		score += dists[position] * weights[DIST];
+
+		// The material difference, scaled by the ratio of the materials
+		int material = materials[position];
+		int own = (material & 0xF) * weights[0]
+				+ (material >> 4 & 0xF) * weights[1];
+		int other = (material >> 8 & 0xF) * weights[0]
+				+ (material >> 12 & 0xF) * weights[1];
+		int max = Math.max(own, other), min = Math.min(own, other);
+		if (min == 0) {
+			min = 1;
+		}
+		return score + (int) ((own - other) * (((float) max) / min));
+	}
+
+	/**
+	 * Computes the mean squared error of the expected results, using all the
+	 * processors. The shares are summed in order, so that the error does not
+	 * depend on the scheduling.
+	 *
+	 * @param weights	the weights of the evaluation.
+	 * @param k			the scaling of the sigmoid.
+	 * @return the mean of the squared errors.
+	 */
+	private double getError(int[] weights, double k) {
+		int chunks = (count + CHUNK - 1) / CHUNK;
+		double[] sums = new double[chunks];
+		IntStream.range(0, chunks).parallel().forEach(c -> {
+			double sum = 0;
+			for (int i = c * CHUNK, end = Math.min(count, i + CHUNK); i < end;
+					i ++) {
+				double expected = 1 / (1 + Math.pow(10,
+						-k * evaluate(i, weights) / 400));
+				double e = 0.5 * results[i] - expected;
+				sum += e * e;
+			}
+			sums[c] = sum;
+		});
+		double sum = 0;
+		for (double s : sums) {
+			sum += s;
+		}
+		return sum / count;
+	}
+
+	/**
+	 * Finds the scaling of the sigmoid fitting best the scores of the
+	 * weights, by a golden section search on its logarithm.
+	 */
+	private double fitScale(int[] weights) {
+		double ratio = (Math.sqrt(5) - 1) / 2;
+		double low = Math.log(0.01), high = Math.log(100);
+		for (int i = 0; i < 30; i ++) {
+			double a = high - ratio * (high - low), b = low + ratio * (high - low);
+			if (getError(weights, Math.exp(a)) < getError(weights, Math.exp(b))) {
+				high = b;
+			} else {
+				low = a;
+			}
+		}
+		return Math.exp((low + high) / 2);
+	}
+}
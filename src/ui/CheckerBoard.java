@@ -17,16 +17,25 @@ import java.awt.RenderingHints;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
 
 import javax.swing.JButton;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 
 import src.logic.MoveGenerator;
 import src.model.Board;
+import src.model.Deadline;
+import src.model.DeadlineExceededException;
 import src.model.Game;
+import src.model.GameSnapshot;
 import src.model.HumanPlayer;
+import src.model.Move;
 import src.model.NetworkPlayer;
 import src.model.Player;
+import src.model.SearchInfo;
+import src.model.SearchListener;
 
 /**
  * The {@code CheckerBoard} class is a graphical user interface component that
@@ -42,6 +51,14 @@ public class CheckerBoard extends JButton {
 	/** The amount of milliseconds before a computer player takes a move. */
 	private static final int TIMER_DELAY = 1000;
 	
+	/** The system property giving the time a computer player has to choose
+	 * its move, in milliseconds, 0 for no limit. */
+	public static final String MOVE_TIME_PROPERTY = "checkers.move.millis";
+	
+	/** The time a computer player has to choose its move if no other is
+	 * given, in milliseconds. */
+	public static final long DEFAULT_MOVE_MILLIS = 10_000;
+	
 	/** The number of pixels of padding between this component's border and the
 	 * actual checker board that is drawn. */
 	private static final int PADDING = 16;
@@ -78,6 +95,27 @@ public class CheckerBoard extends JButton {
 	/** The timer to control how fast a computer player makes a move. */
 	private Timer timer;
 	
+	/** The move of the computer player currently taking its turn. */
+	private CompletableFuture<Move> search;
+	
+	/** Incremented whenever the running search becomes irrelevant, so that a
+	 * late result is not applied to the game. */
+	private int generation;
+	
+	/** The last progress reported by a player's search. */
+	private SearchInfo searchInfo;
+	
+	/** The listener receiving the progress of the players' searches. */
+	private final SearchListener searchListener = new SearchProgressListener();
+	
+	/** The time a computer player has to choose its move, in milliseconds,
+	 * 0 or less for no limit. */
+	private long moveMillis = Long.getLong(MOVE_TIME_PROPERTY,
+			DEFAULT_MOVE_MILLIS);
+	
+	/** The last player which did not choose its move in time, if any. */
+	private String overrun;
+	
 	public CheckerBoard(CheckersWindow window) {
 		this(window, new Game(), null, null);
 	}
@@ -105,17 +143,34 @@ public class CheckerBoard extends JButton {
 	 * Checks if the game is over and redraws the component graphics.
 	 */
 	public void update() {
-		runPlayer();
 		this.isGameOver = game.isGameOver();
+		runPlayer();
 		repaint();
 	}
 	
 	private void runPlayer() {
 		
+		// Let the other player think on this player's time
+		Player opponent = game.isP2Turn()? player2 : player1;
+		if (opponent != null && !isGameOver) {
+			opponent.ponder(game.copy());
+		}
+		
 		// Nothing to do
 		Player player = getCurrentPlayer();
-		if (player == null || player.isHuman() ||
-				player instanceof NetworkPlayer) {
+		if (player == null || isGameOver || player instanceof NetworkPlayer) {
+			return;
+		}
+		
+		// Already waiting for this player
+		if ((timer != null && timer.isRunning()) ||
+				(search != null && !search.isDone())) {
+			return;
+		}
+		
+		// A human player's move comes from the clicks on the board
+		if (player.isHuman()) {
+			startSearch(Deadline.none());
 			return;
 		}
 		
@@ -124,15 +179,79 @@ public class CheckerBoard extends JButton {
 
 			@Override
 			public void actionPerformed(ActionEvent e) {
-				getCurrentPlayer().updateGame(game);
 				timer.stop();
-				//updateNetwork();
-				update();
+				startSearch(moveMillis > 0? Deadline.in(moveMillis)
+						: Deadline.none());
 			}
 		});
 		this.timer.start();
 	}
 	
+	/**
+	 * Asks the current player for its move, which a computer player chooses
+	 * on another thread and a human player by clicking on the board. The move
+	 * is played on the event dispatch thread, unless it was cancelled or the
+	 * game changed in the meantime. A player missing its deadline is reported
+	 * on the board, and asked again without one so that the game goes on.
+	 * 
+	 * @param deadline	the time by which the move has to be chosen.
+	 */
+	private void startSearch(Deadline deadline) {
+		
+		final Player player = getCurrentPlayer();
+		final GameSnapshot snapshot = GameSnapshot.of(game);
+		final int searchGeneration = generation;
+		this.search = player.chooseMove(snapshot, deadline);
+		this.search.whenComplete((move, error) -> {
+			if (error instanceof CancellationException) {
+				return;
+			} else if (error != null
+					&& !(error instanceof DeadlineExceededException)) {
+				error.printStackTrace();
+			}
+			SwingUtilities.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+					if (searchGeneration != generation) {
+						return;
+					} else if (error instanceof DeadlineExceededException) {
+						overrun = (player == player1? "Player 2" : "Player 1")
+								+ " missed its move time "
+								+ player.getDeadlineOverruns() + " time(s)";
+						startSearch(Deadline.none());
+						repaint();
+						return;
+					}
+					if (move == null ||
+							!game.getGameState().equals(snapshot.getState())) {
+						return;
+					}
+					game.move(move);
+					//updateNetwork();
+					update();
+				}
+			});
+		});
+	}
+	
+	/**
+	 * Stops the computer player currently taking its turn. Its move, if it
+	 * still comes, is ignored.
+	 */
+	public void cancelSearch() {
+		this.generation ++;
+		if (timer != null) {
+			timer.stop();
+		}
+		if (search != null) {
+			search.cancel(true);
+			this.search = null;
+		}
+		this.searchInfo = null;
+		this.overrun = null;
+	}
+	
 	public synchronized boolean setGameState(boolean testValue,
 			String newState, String expected) {
 		
@@ -276,10 +395,21 @@ public class CheckerBoard extends JButton {
 		g.setColor(front);
 		g.drawString(msg, W / 2 - width / 2, OFFSET_Y + 8 * BOX_SIZE + 2 + 11);
 		
+		// Draw the progress of the last search, and the last late move
+		SearchInfo info = searchInfo;
+		if (info != null) {
+			g.setColor(Color.BLACK);
+			g.drawString(info.toString(), OFFSET_X, OFFSET_Y - 4);
+		}
+		if (overrun != null) {
+			g.setColor(Color.RED);
+			g.drawString(overrun, OFFSET_X, OFFSET_Y + 8 * BOX_SIZE + 30);
+		}
+		
 		// Draw a game over sign
 		if (isGameOver) {
 			g.setFont(new Font("Arial", Font.BOLD, 20));
-			msg = "Game Over !";
+			msg = game.isDraw()? "Draw !" : "Game Over !";
 			width = g.getFontMetrics().stringWidth(msg);
 			g.setColor(new Color(240, 240, 255));
 			g.fillRoundRect(W / 2 - width / 2 - 5,
@@ -306,12 +436,32 @@ public class CheckerBoard extends JButton {
 		this.window = window;
 	}
 
+	public long getMoveMillis() {
+		return moveMillis;
+	}
+
+	/**
+	 * Sets the time a computer player has to choose its move, from its next
+	 * turn on. The {@code checkers.move.millis} property by default.
+	 * 
+	 * @param moveMillis	the time in milliseconds, 0 or less for no limit.
+	 */
+	public void setMoveMillis(long moveMillis) {
+		this.moveMillis = moveMillis;
+	}
+
 	public Player getPlayer1() {
 		return player1;
 	}
 
 	public void setPlayer1(Player player1) {
+		cancelSearch();
+		if (this.player1 != null) {
+			this.player1.stopPondering();
+			this.player1.setSearchListener(null);
+		}
 		this.player1 = (player1 == null)? new HumanPlayer() : player1;
+		this.player1.setSearchListener(searchListener);
 		if (game.isP2Turn() && !this.player1.isHuman()) {
 			this.selected = null;
 		}
@@ -322,7 +472,13 @@ public class CheckerBoard extends JButton {
 	}
 
 	public void setPlayer2(Player player2) {
+		cancelSearch();
+		if (this.player2 != null) {
+			this.player2.stopPondering();
+			this.player2.setSearchListener(null);
+		}
 		this.player2 = (player2 == null)? new HumanPlayer() : player2;
+		this.player2.setSearchListener(searchListener);
 		if (!game.isP2Turn() && !this.player2.isHuman()) {
 			this.selected = null;
 		}
@@ -364,7 +520,11 @@ public class CheckerBoard extends JButton {
 			return;
 		}
 		
+		// Make sure the player was asked for its move
+		runPlayer();
+		
 		Game copy = game.copy();
+		boolean submitted = false;
 		
 		// Determine what square (if any) was selected
 		final int W = getWidth(), H = getHeight();
@@ -375,15 +535,14 @@ public class CheckerBoard extends JButton {
 		y = (y - OFFSET_Y) / BOX_SIZE;
 		Point sel = new Point(x, y);
 		
-		// Determine if a move should be attempted
+		// Determine if a move should be attempted: the player's request for a
+		// move is completed with it, and the move is played once accepted
 		if (Board.isValidPoint(sel) && Board.isValidPoint(selected)) {
 			boolean change = copy.isP2Turn();
-			String expected = copy.getGameState();
-			boolean move = copy.move(selected, sel);
-			boolean updated = (move?
-					setGameState(true, copy.getGameState(), expected) : false);
-			if (updated) {
-				//updateNetwork();
+			Move move = new Move(Board.toIndex(selected), Board.toIndex(sel), 0);
+			if (copy.move(selected, sel)
+					&& getCurrentPlayer() instanceof HumanPlayer) {
+				submitted = ((HumanPlayer) getCurrentPlayer()).submitMove(move);
 			}
 			change = (copy.isP2Turn() != change);
 			this.selected = change? null : sel;
@@ -395,7 +554,12 @@ public class CheckerBoard extends JButton {
 		this.selectionValid = isValidSelection(
 				copy.getBoard(), copy.isP2Turn(), selected);
 		
-		update();
+		// A submitted move updates the game once played
+		if (submitted) {
+			repaint();
+		} else {
+			update();
+		}
 	}
 	
 	/**
@@ -441,6 +605,25 @@ public class CheckerBoard extends JButton {
 		return true;
 	}
 
+	/**
+	 * The {@code SearchProgressListener} class hands the progress of the
+	 * players' searches over to the event dispatch thread to be drawn.
+	 */
+	private class SearchProgressListener implements SearchListener {
+
+		@Override
+		public void searchProgress(final SearchInfo info) {
+			SwingUtilities.invokeLater(new Runnable() {
+
+				@Override
+				public void run() {
+					searchInfo = info;
+					repaint();
+				}
+			});
+		}
+	}
+
 	/**
 	 * The {@code ClickListener} class is responsible for responding to click
 	 * events on the checker board component. It uses the coordinates of the
@@ -91,6 +91,7 @@ public class CheckersWindow extends JFrame {
 	 * Resets the game of checkers in the window.
 	 */
 	public void restart() {
+		this.board.cancelSearch();
 		this.board.getGame().restart();
 		this.board.update();
 	}